@@ -0,0 +1,833 @@
+package org.restit.processor;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a streaming TypeAdapterFactory for every class annotated with org.restit.objectmapping.RestItModel, and
+ *  lists the factories in the resource META-INF/services/org.restit.objectmapping.RestItModel that
+ *  RestItMapper.registerGeneratedModels() reads. The generated adapters read and write fields directly, or through
+ *  their setters and getters, so no reflection is needed at runtime.
+ * 
+ * The list is merged with the one of an earlier build, so that incremental builds keep the models that were not
+ *  compiled again, and every library that uses the processor has its own list on the class path.
+ * 
+ * The processor only works with names, so it does not depend on the RestIt library or Gson at compile time.
+ *
+ */
+@SupportedAnnotationTypes(RestItModelProcessor.ANNOTATION)
+public class RestItModelProcessor extends AbstractProcessor {
+
+	static final String ANNOTATION = "org.restit.objectmapping.RestItModel";
+	private static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+	private static final String MODELS_RESOURCE = "META-INF/services/" + ANNOTATION;
+	private static final String FACTORY_SUFFIX = "_RestItAdapterFactory";
+	
+	//factories generated so far and their model classes, listed in the models resource in the last round
+	private List<String> generatedFactories = new ArrayList<String>();
+	private List<Element> generatedModels = new ArrayList<Element>();
+	
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+	
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+	{
+		if(roundEnv.processingOver())
+		{
+			if(!this.generatedFactories.isEmpty())
+			{
+				writeModelsResource();
+			}
+			return false;
+		}
+		
+		TypeElement annotation = processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+		if(annotation == null)
+			return false;
+		
+		for(Element element : roundEnv.getElementsAnnotatedWith(annotation))
+		{
+			if(element.getKind() != ElementKind.CLASS)
+			{
+				error(element, "@RestItModel can only be used on classes");
+				continue;
+			}
+			
+			try
+			{
+				ModelClass model = readModel((TypeElement) element);
+				if(model != null)
+				{
+					writeFactory(model);
+					this.generatedFactories.add(model.getFactoryName());
+					this.generatedModels.add(element);
+				}
+				
+			} catch (IOException e) {
+				error(element, "Could not write the RestIt adapter: " + e.getMessage());
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Collect everything needed to generate the adapter of a model class
+	 * @param type The annotated class
+	 * @return The model or null if the class can not be mapped without reflection
+	 */
+	private ModelClass readModel(TypeElement type)
+	{
+		String jsonName = getAnnotationValue(type, ANNOTATION);
+		if(jsonName == null || jsonName.length() == 0)
+		{
+			error(type, "@RestItModel needs a json key name");
+			return null;
+		}
+		
+		if(type.getModifiers().contains(Modifier.ABSTRACT) || (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)))
+		{
+			error(type, "@RestItModel classes must be concrete top level or static nested classes");
+			return null;
+		}
+		
+		if(!type.getTypeParameters().isEmpty())
+		{
+			error(type, "@RestItModel classes can not have type parameters");
+			return null;
+		}
+		
+		String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		ModelClass model = new ModelClass(type, packageName, jsonName);
+		
+		if(!hasDefaultConstructor(type, packageName))
+		{
+			error(type, "@RestItModel classes need a constructor without arguments that is not private");
+			return null;
+		}
+		
+		//walk up the class hierarchy the same way Gson does
+		Set<String> jsonNames = new HashSet<String>();
+		TypeElement current = type;
+		boolean valid = true;
+		while(current != null && !current.getQualifiedName().toString().equals("java.lang.Object"))
+		{
+			for(VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements()))
+			{
+				Set<Modifier> modifiers = field.getModifiers();
+				if(modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT))
+					continue;
+				
+				ModelField modelField = readField(current, field, packageName);
+				if(modelField == null)
+				{
+					valid = false;
+					continue;
+				}
+				
+				if(!jsonNames.add(modelField.jsonName))
+				{
+					error(field, "More than one field is mapped to the json key '" + modelField.jsonName + "'");
+					valid = false;
+					continue;
+				}
+				
+				model.fields.add(modelField);
+			}
+			
+			TypeMirror superclass = current.getSuperclass();
+			current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+		}
+		
+		return valid ? model : null;
+	}
+	
+	/**
+	 * Work out how a field is read and written by the generated adapter
+	 * @param owner The class that declares the field
+	 * @param field
+	 * @param packageName The package the adapter is generated in
+	 * @return The field or null if it can not be accessed without reflection
+	 */
+	private ModelField readField(TypeElement owner, VariableElement field, String packageName)
+	{
+		TypeMirror type = field.asType();
+		if(containsTypeVariable(type))
+		{
+			error(field, "Fields of @RestItModel classes can not use type variables");
+			return null;
+		}
+		
+		String name = field.getSimpleName().toString();
+		String jsonName = getAnnotationValue(field, SERIALIZED_NAME);
+		
+		ModelField modelField = new ModelField(jsonName != null ? jsonName : name, type);
+		
+		if(isAccessible(field, owner, packageName) && !field.getModifiers().contains(Modifier.FINAL))
+		{
+			modelField.setter = name + " = ";
+			modelField.getter = name;
+			return modelField;
+		}
+		
+		//fall back to bean accessors
+		String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		String prefix = type.getKind() == TypeKind.BOOLEAN ? "is" : "get";
+		
+		ExecutableElement setter = findMethod(owner, "set" + capitalized, 1, packageName);
+		ExecutableElement getter = findMethod(owner, prefix + capitalized, 0, packageName);
+		if(getter == null && prefix.equals("is"))
+		{
+			getter = findMethod(owner, "get" + capitalized, 0, packageName);
+		}
+		
+		if(setter == null || getter == null)
+		{
+			error(field, "Field '" + name + "' needs to be accessible from package " + packageName + " or have a setter and getter");
+			return null;
+		}
+		
+		modelField.setter = setter.getSimpleName() + "(";
+		modelField.getter = getter.getSimpleName() + "()";
+		return modelField;
+	}
+	
+	/**
+	 * Write the adapter factory of a model class
+	 * @param model
+	 * @throws IOException
+	 */
+	private void writeFactory(ModelClass model) throws IOException
+	{
+		String modelType = model.type.getQualifiedName().toString();
+		String factoryName = model.getFactorySimpleName();
+		
+		SourceBuilder source = new SourceBuilder();
+		if(model.packageName.length() > 0)
+		{
+			source.line("package " + model.packageName + ";").line();
+		}
+		
+		source.line("import java.io.IOException;")
+			.line("import java.util.HashMap;")
+			.line("import java.util.Map;")
+			.line()
+			.line("import org.restit.objectmapping.RestItMapper;")
+			.line()
+			.line("import com.google.gson.Gson;")
+			.line("import com.google.gson.TypeAdapter;")
+			.line("import com.google.gson.TypeAdapterFactory;")
+			.line("import com.google.gson.reflect.TypeToken;")
+			.line("import com.google.gson.stream.JsonReader;")
+			.line("import com.google.gson.stream.JsonToken;")
+			.line("import com.google.gson.stream.JsonWriter;")
+			.line()
+			.line("/**")
+			.line(" * Generated by " + RestItModelProcessor.class.getName() + " for " + modelType + ". Do not edit.")
+			.line(" */")
+			.open("public final class " + factoryName + " implements TypeAdapterFactory")
+			.line("public static final String JSON_NAME = \"" + escape(model.jsonName) + "\";")
+			.line();
+		
+		//json key to field index
+		source.line("private static final Map<String, Integer> FIELDS = new HashMap<String, Integer>();")
+			.open("static");
+		for(int i = 0; i < model.fields.size(); i++)
+		{
+			source.line("FIELDS.put(\"" + escape(model.fields.get(i).jsonName) + "\", " + i + ");");
+		}
+		source.close().line();
+		
+		source.open("public static void register()")
+			.line("RestItMapper.addClass(JSON_NAME, " + modelType + ".class, new " + factoryName + "());")
+			.close().line();
+		
+		source.line("@SuppressWarnings(\"unchecked\")")
+			.line("@Override")
+			.open("public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)")
+			.line("if(type.getRawType() != " + modelType + ".class)")
+			.line("\treturn null;")
+			.line()
+			.line("return (TypeAdapter<T>) new Adapter(gson);")
+			.close().line();
+		
+		writeAdapter(source, model);
+		
+		source.close();
+		
+		Writer writer = processingEnv.getFiler().createSourceFile(model.getFactoryName(), model.type).openWriter();
+		try
+		{
+			writer.write(source.toString());
+		} finally
+		{
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Write the streaming adapter of a model class
+	 * @param source
+	 * @param model
+	 */
+	private void writeAdapter(SourceBuilder source, ModelClass model)
+	{
+		String modelType = model.type.getQualifiedName().toString();
+		
+		//adapters of nested objects are looked up once, the first time they are needed
+		Map<String, Integer> delegates = new LinkedHashMap<String, Integer>();
+		for(ModelField field : model.fields)
+		{
+			if(getSimpleKind(field.type) == null)
+			{
+				String typeName = boxedName(field.type);
+				if(!delegates.containsKey(typeName))
+				{
+					delegates.put(typeName, delegates.size());
+				}
+				field.delegate = delegates.get(typeName);
+			}
+		}
+		
+		source.open("private static final class Adapter extends TypeAdapter<" + modelType + ">")
+			.line("private final Gson gson;");
+		for(Map.Entry<String, Integer> delegate : delegates.entrySet())
+		{
+			source.line("private TypeAdapter<" + delegate.getKey() + "> adapter" + delegate.getValue() + ";");
+		}
+		source.line()
+			.open("Adapter(Gson gson)")
+			.line("this.gson = gson;")
+			.close().line();
+		
+		for(Map.Entry<String, Integer> delegate : delegates.entrySet())
+		{
+			String name = "adapter" + delegate.getValue();
+			String type = delegate.getKey();
+			String lookup = type.indexOf('<') > -1 ? "new TypeToken<" + type + ">() {}" : type + ".class";
+			
+			source.open("private TypeAdapter<" + type + "> " + name + "()")
+				.line("if(this." + name + " == null)")
+				.line("\tthis." + name + " = this.gson.getAdapter(" + lookup + ");")
+				.line()
+				.line("return this." + name + ";")
+				.close().line();
+		}
+		
+		//read
+		source.line("@Override")
+			.open("public " + modelType + " read(JsonReader in) throws IOException")
+			.open("if(in.peek() == JsonToken.NULL)")
+			.line("in.nextNull();")
+			.line("return null;")
+			.close()
+			.line()
+			.line(modelType + " object = new " + modelType + "();")
+			.line("in.beginObject();")
+			.open("while(in.hasNext())")
+			.line("Integer index = FIELDS.get(in.nextName());")
+			.open("switch(index == null ? -1 : index.intValue())");
+		
+		for(int i = 0; i < model.fields.size(); i++)
+		{
+			ModelField field = model.fields.get(i);
+			boolean primitive = field.type.getKind().isPrimitive();
+			
+			source.line("case " + i + ":")
+				.indent()
+				.open("if(in.peek() == JsonToken.NULL)")
+				.line("in.nextNull();");
+			if(!primitive)
+			{
+				source.line(field.assign("null"));
+			}
+			source.close()
+				.open("else")
+				.line(field.assign(readExpression(field)))
+				.close()
+				.line("break;")
+				.outdent();
+		}
+		
+		source.line("default:")
+			.indent()
+			.line("in.skipValue();")
+			.outdent()
+			.close()
+			.close()
+			.line("in.endObject();")
+			.line()
+			.line("return object;")
+			.close()
+			.line();
+		
+		//write
+		source.line("@Override")
+			.open("public void write(JsonWriter out, " + modelType + " object) throws IOException")
+			.open("if(object == null)")
+			.line("out.nullValue();")
+			.line("return;")
+			.close()
+			.line()
+			.line("out.beginObject();");
+		
+		for(ModelField field : model.fields)
+		{
+			source.line("out.name(\"" + escape(field.jsonName) + "\");");
+			writeValue(source, field);
+		}
+		
+		source.line("out.endObject();")
+			.close()
+			.close();
+	}
+	
+	/**
+	 * Get the expression that reads a non null value of a field from the JsonReader "in"
+	 * @param field
+	 * @return
+	 */
+	private String readExpression(ModelField field)
+	{
+		String kind = getSimpleKind(field.type);
+		if(kind == null)
+			return "adapter" + field.delegate + "().read(in)";
+		
+		String value;
+		if(kind.equals("int"))
+			value = "in.nextInt()";
+		else if(kind.equals("long"))
+			value = "in.nextLong()";
+		else if(kind.equals("double"))
+			value = "in.nextDouble()";
+		else if(kind.equals("float"))
+			value = "(float) in.nextDouble()";
+		else if(kind.equals("short"))
+			value = "(short) in.nextInt()";
+		else if(kind.equals("byte"))
+			value = "(byte) in.nextInt()";
+		else if(kind.equals("char"))
+			value = "in.nextString().charAt(0)";
+		else if(kind.equals("boolean"))
+			value = "(in.peek() == JsonToken.STRING ? Boolean.parseBoolean(in.nextString()) : in.nextBoolean())";
+		else
+			return "(in.peek() == JsonToken.BOOLEAN ? Boolean.toString(in.nextBoolean()) : in.nextString())";
+		
+		if(field.type.getKind().isPrimitive())
+			return value;
+		
+		//box the value for wrapper fields
+		return boxedName(field.type) + ".valueOf(" + value + ")";
+	}
+	
+	/**
+	 * Write the statements that write the value of a field to the JsonWriter "out"
+	 * @param source
+	 * @param field
+	 */
+	private void writeValue(SourceBuilder source, ModelField field)
+	{
+		String value = "object." + field.getter;
+		String kind = getSimpleKind(field.type);
+		
+		if(field.type.getKind().isPrimitive())
+		{
+			if(kind.equals("boolean"))
+				source.line("out.value(" + value + ");");
+			else if(kind.equals("char"))
+				source.line("out.value(String.valueOf(" + value + "));");
+			else if(kind.equals("float") || kind.equals("double"))
+				source.line("out.value(" + boxedName(field.type) + ".valueOf(" + value + "));");
+			else if(kind.equals("long"))
+				source.line("out.value(" + value + ");");
+			else
+				source.line("out.value((long) " + value + ");");
+			
+			return;
+		}
+		
+		if(kind != null && kind.equals("String"))
+		{
+			source.line("out.value(" + value + ");");
+			return;
+		}
+		
+		String local = field.jsonName.replaceAll("[^A-Za-z0-9_]", "_");
+		source.open("")
+			.line(boxedName(field.type) + " " + "value_" + local + " = " + value + ";")
+			.line("if(value_" + local + " == null)")
+			.line("\tout.nullValue();");
+		
+		if(kind == null)
+			source.line("else").line("\tadapter" + field.delegate + "().write(out, value_" + local + ");");
+		else if(kind.equals("boolean"))
+			source.line("else").line("\tout.value(value_" + local + ".booleanValue());");
+		else if(kind.equals("char"))
+			source.line("else").line("\tout.value(String.valueOf(value_" + local + "));");
+		else
+			source.line("else").line("\tout.value(value_" + local + ");");
+		
+		source.close();
+	}
+	
+	/**
+	 * Write the resource that lists every generated factory, one class name per line. Only resources are written in
+	 *  the last round, generated classes would not be processed anymore
+	 */
+	private void writeModelsResource()
+	{
+		Set<String> factories = new LinkedHashSet<String>();
+		
+		//keep the factories of an earlier build, models that no longer exist are skipped when they are registered
+		try
+		{
+			FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", MODELS_RESOURCE);
+			BufferedReader reader = new BufferedReader(existing.openReader(true));
+			try
+			{
+				for(String line = reader.readLine(); line != null; line = reader.readLine())
+				{
+					line = line.trim();
+					if(line.length() > 0 && !line.startsWith("#"))
+					{
+						factories.add(line);
+					}
+				}
+			} finally
+			{
+				reader.close();
+			}
+			
+		} catch (FileNotFoundException e) {
+			//the first build
+		} catch (IOException e) {
+			//some filers can not read their output, the list of this build is written alone
+		} catch (IllegalArgumentException e) {
+			//same
+		}
+		
+		factories.addAll(this.generatedFactories);
+		
+		try
+		{
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", MODELS_RESOURCE,
+					this.generatedModels.toArray(new Element[this.generatedModels.size()]));
+			Writer writer = resource.openWriter();
+			try
+			{
+				for(String factory : factories)
+				{
+					writer.write(factory);
+					writer.write("\n");
+				}
+			} finally
+			{
+				writer.close();
+			}
+			
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write the RestIt model list: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Get the kind of a type that the adapter reads itself
+	 * @param type
+	 * @return The primitive name, or "String", or null if the value is mapped by a Gson adapter
+	 */
+	private String getSimpleKind(TypeMirror type)
+	{
+		if(type.getKind().isPrimitive())
+			return type.getKind().name().toLowerCase();
+		
+		if(type.getKind() != TypeKind.DECLARED)
+			return null;
+		
+		String name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+		if(name.equals("java.lang.String"))
+			return "String";
+		
+		try
+		{
+			TypeKind primitive = processingEnv.getTypeUtils().unboxedType(type).getKind();
+			return primitive.name().toLowerCase();
+			
+		} catch (IllegalArgumentException e) {
+			//not a wrapper type
+			return null;
+		}
+	}
+	
+	/**
+	 * Get the source name of a type, boxing primitives
+	 * @param type
+	 * @return
+	 */
+	private String boxedName(TypeMirror type)
+	{
+		if(type.getKind().isPrimitive())
+			return processingEnv.getTypeUtils().boxedClass((javax.lang.model.type.PrimitiveType) type).getSimpleName().toString();
+		
+		if(type.getKind() == TypeKind.DECLARED && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString().startsWith("java.lang."))
+			return ((DeclaredType) type).asElement().getSimpleName().toString();
+		
+		return type.toString();
+	}
+	
+	private boolean containsTypeVariable(TypeMirror type)
+	{
+		if(type.getKind() == TypeKind.TYPEVAR || type.getKind() == TypeKind.WILDCARD)
+			return true;
+		
+		if(type.getKind() == TypeKind.ARRAY)
+			return containsTypeVariable(((javax.lang.model.type.ArrayType) type).getComponentType());
+		
+		if(type.getKind() == TypeKind.DECLARED)
+		{
+			for(TypeMirror argument : ((DeclaredType) type).getTypeArguments())
+			{
+				if(containsTypeVariable(argument))
+					return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Can the generated adapter reach an element of the model class
+	 * @param element
+	 * @param owner The class that declares the element
+	 * @param packageName The package the adapter is generated in
+	 * @return
+	 */
+	private boolean isAccessible(Element element, TypeElement owner, String packageName)
+	{
+		Set<Modifier> modifiers = element.getModifiers();
+		if(modifiers.contains(Modifier.PRIVATE))
+			return false;
+		
+		if(modifiers.contains(Modifier.PUBLIC))
+			return true;
+		
+		//package private and protected members can only be reached from the same package
+		String ownerPackage = processingEnv.getElementUtils().getPackageOf(owner).getQualifiedName().toString();
+		return ownerPackage.equals(packageName);
+	}
+	
+	private ExecutableElement findMethod(TypeElement owner, String name, int parameterCount, String packageName)
+	{
+		for(ExecutableElement method : ElementFilter.methodsIn(owner.getEnclosedElements()))
+		{
+			if(method.getSimpleName().contentEquals(name) && method.getParameters().size() == parameterCount
+					&& !method.getModifiers().contains(Modifier.STATIC) && isAccessible(method, owner, packageName))
+			{
+				return method;
+			}
+		}
+		
+		return null;
+	}
+	
+	private boolean hasDefaultConstructor(TypeElement type, String packageName)
+	{
+		for(ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements()))
+		{
+			if(constructor.getParameters().isEmpty() && isAccessible(constructor, type, packageName))
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Get the string value of an annotation on an element
+	 * @param element
+	 * @param annotationName The qualified name of the annotation
+	 * @return The value or null if the element is not annotated
+	 */
+	private String getAnnotationValue(Element element, String annotationName)
+	{
+		for(AnnotationMirror mirror : element.getAnnotationMirrors())
+		{
+			if(((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName))
+			{
+				for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet())
+				{
+					if(entry.getKey().getSimpleName().contentEquals("value"))
+					{
+						return String.valueOf(entry.getValue().getValue());
+					}
+				}
+			}
+		}
+		
+		return null;
+	}
+	
+	private static String escape(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+	
+	private void error(Element element, String message)
+	{
+		Messager messager = processingEnv.getMessager();
+		messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+	
+	/**
+	 * An annotated class
+	 */
+	private static class ModelClass {
+		
+		private TypeElement type;
+		private String packageName;
+		private String jsonName;
+		private List<ModelField> fields = new ArrayList<ModelField>();
+		
+		public ModelClass(TypeElement type, String packageName, String jsonName)
+		{
+			this.type = type;
+			this.packageName = packageName;
+			this.jsonName = jsonName;
+		}
+		
+		/**
+		 * The factory is named after the class, with nested class names joined by underscores
+		 */
+		public String getFactorySimpleName()
+		{
+			String qualifiedName = this.type.getQualifiedName().toString();
+			String localName = this.packageName.length() > 0 ? qualifiedName.substring(this.packageName.length() + 1) : qualifiedName;
+			
+			return localName.replace('.', '_') + FACTORY_SUFFIX;
+		}
+		
+		public String getFactoryName()
+		{
+			return this.packageName.length() > 0 ? this.packageName + "." + getFactorySimpleName() : getFactorySimpleName();
+		}
+	}
+	
+	/**
+	 * A mapped field of an annotated class
+	 */
+	private static class ModelField {
+		
+		private String jsonName;
+		private TypeMirror type;
+		private String setter;
+		private String getter;
+		private int delegate = -1;
+		
+		public ModelField(String jsonName, TypeMirror type)
+		{
+			this.jsonName = jsonName;
+			this.type = type;
+		}
+		
+		/**
+		 * Get the statement that stores a value in the field of "object"
+		 */
+		public String assign(String value)
+		{
+			return "object." + this.setter + value + (this.setter.endsWith("(") ? ");" : ";");
+		}
+	}
+	
+	/**
+	 * Builds tab indented java source
+	 */
+	private static class SourceBuilder {
+		
+		private StringBuilder source = new StringBuilder();
+		private int indent;
+		
+		public SourceBuilder line()
+		{
+			this.source.append('\n');
+			return this;
+		}
+		
+		public SourceBuilder line(String line)
+		{
+			for(int i = 0; i < this.indent; i++)
+			{
+				this.source.append('\t');
+			}
+			this.source.append(line).append('\n');
+			return this;
+		}
+		
+		public SourceBuilder open(String line)
+		{
+			if(line.length() > 0)
+			{
+				line(line);
+			}
+			line("{");
+			return indent();
+		}
+		
+		public SourceBuilder close()
+		{
+			outdent();
+			return line("}");
+		}
+		
+		public SourceBuilder indent()
+		{
+			this.indent++;
+			return this;
+		}
+		
+		public SourceBuilder outdent()
+		{
+			this.indent--;
+			return this;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return this.source.toString();
+		}
+	}
+}
@@ -5,6 +5,8 @@ import java.lang.reflect.Type;
 import org.restit.model.ServerError;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 
@@ -12,8 +14,11 @@ public class ServerErrorSerializer implements JsonSerializer<ServerError> {
 
 	@Override
 	public JsonElement serialize(ServerError serverError, Type typeOfSrc, JsonSerializationContext arg2context) {
-		// TODO Auto-generated method stub
-		return null;
+		if(serverError == null || serverError.getMessage() == null)
+			return JsonNull.INSTANCE;
+		
+		//the deserializer reads the message back from a primitive
+		return new JsonPrimitive(serverError.getMessage());
 	}
 
 }
@@ -0,0 +1,148 @@
+package org.restit.network;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import android.util.Log;
+
+/**
+ * A request running on the RestIt executor. The result is handed to the AsyncCallback on the callback executor,
+ *  unless the request is cancelled first. It can also be waited on like any Future.
+ *
+ */
+public class AsyncRequest implements Future<Object> {
+
+	private static final String LOG_TAG = "AsyncRequest";
+	
+	private final FutureTask<Object> task;
+	private final AsyncCallback<Object> callback;
+	private final Executor callbackExecutor;
+	
+	AsyncRequest(Callable<Object> request, AsyncCallback<Object> callback, Executor callbackExecutor)
+	{
+		this.callback = callback;
+		this.callbackExecutor = callbackExecutor;
+		this.task = new FutureTask<Object>(request) {
+			@Override
+			protected void done() {
+				deliver();
+			}
+		};
+	}
+	
+	/**
+	 * Start the request
+	 * @param executor The executor to run it on
+	 */
+	void submit(Executor executor)
+	{
+		try
+		{
+			executor.execute(this.task);
+		} catch (RejectedExecutionException e)
+		{
+			deliverFailure(e);
+		}
+	}
+	
+	/**
+	 * Cancel the request. The callback is not called after this returns true. A request that is already reading
+	 *  its response is interrupted when mayInterruptIfRunning is set, the connection itself finishes or times out.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		return this.task.cancel(mayInterruptIfRunning);
+	}
+
+	@Override
+	public boolean isCancelled()
+	{
+		return this.task.isCancelled();
+	}
+
+	@Override
+	public boolean isDone()
+	{
+		return this.task.isDone();
+	}
+
+	@Override
+	public Object get() throws InterruptedException, ExecutionException
+	{
+		return this.task.get();
+	}
+
+	@Override
+	public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+	{
+		return this.task.get(timeout, unit);
+	}
+	
+	/**
+	 * Hand the outcome of the request to the callback
+	 */
+	private void deliver()
+	{
+		if(this.callback == null || isCancelled())
+			return;
+		
+		try
+		{
+			final Object result = this.task.get();
+			execute(new Runnable() {
+				@Override
+				public void run() {
+					if(!isCancelled())
+					{
+						callback.onSuccess(result);
+					}
+				}
+			});
+		} catch (ExecutionException e)
+		{
+			deliverFailure(e.getCause());
+		} catch (CancellationException e)
+		{
+			//nothing to deliver
+		} catch (InterruptedException e)
+		{
+			//the task is done, get does not wait
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void deliverFailure(final Throwable caught)
+	{
+		if(this.callback == null)
+			return;
+		
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				if(!isCancelled())
+				{
+					callback.onFailure(caught);
+				}
+			}
+		});
+	}
+	
+	private void execute(Runnable runnable)
+	{
+		try
+		{
+			this.callbackExecutor.execute(runnable);
+		} catch (RejectedExecutionException e)
+		{
+			Log.e(LOG_TAG, "The callback executor rejected the callback", e);
+		}
+	}
+}
@@ -0,0 +1,484 @@
+package org.restit.network;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the I/O buffers of RestIt for reuse, so that concurrent requests do not allocate new buffers for every body
+ *  they read or write. Buffers come in a few sizes and a request gets the smallest that fits. Each size keeps a
+ *  bounded number of heap and of direct buffers, anything beyond that is left to the garbage collector.
+ *
+ */
+public class BufferPool {
+
+	/** Size for draining and skipping */
+	public static final int SMALL = 2 * 1024;
+
+	/** Size for buffered streams and decoding */
+	public static final int MEDIUM = 8 * 1024;
+
+	/** Size for channel copies of uploads and downloads */
+	public static final int LARGE = 64 * 1024;
+
+	private static final int[] SIZES = { SMALL, MEDIUM, LARGE };
+
+	private static final BufferPool shared = new BufferPool(16);
+
+	private final SizeClass[] sizeClasses;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Get the pool shared by every RestIt request
+	 * @return
+	 */
+	public static BufferPool getShared()
+	{
+		return shared;
+	}
+
+	/**
+	 * @param maxBuffersPerSize The most heap buffers and the most direct buffers kept of each size
+	 */
+	public BufferPool(int maxBuffersPerSize)
+	{
+		this.sizeClasses = new SizeClass[SIZES.length];
+		for(int i = 0; i < SIZES.length; i++)
+		{
+			this.sizeClasses[i] = new SizeClass(SIZES[i], maxBuffersPerSize);
+		}
+	}
+
+	/**
+	 * Borrow a byte array of at least the given size. Return it with release() when done
+	 * @param minSize
+	 * @return
+	 */
+	public byte[] acquireBytes(int minSize)
+	{
+		SizeClass sizeClass = getSizeClass(minSize);
+		if(sizeClass != null)
+		{
+			byte[] buffer = sizeClass.heapBuffers.poll();
+			if(buffer != null)
+			{
+				this.hits.incrementAndGet();
+				return buffer;
+			}
+		}
+
+		this.misses.incrementAndGet();
+		return new byte[sizeClass != null ? sizeClass.size : minSize];
+	}
+
+	/**
+	 * Return a byte array borrowed with acquireBytes()
+	 * @param buffer The array, may be null. It must not be used afterwards
+	 */
+	public void release(byte[] buffer)
+	{
+		if(buffer == null)
+			return;
+
+		SizeClass sizeClass = getExactSizeClass(buffer.length);
+		if(sizeClass != null)
+		{
+			//dropped when the pool is full
+			sizeClass.heapBuffers.offer(buffer);
+		}
+	}
+
+	/**
+	 * Borrow a cleared direct buffer of at least the given capacity, for copies between channels. Return it with
+	 *  release() when done
+	 * @param minSize
+	 * @return
+	 */
+	public ByteBuffer acquireDirect(int minSize)
+	{
+		SizeClass sizeClass = getSizeClass(minSize);
+		if(sizeClass != null)
+		{
+			ByteBuffer buffer = sizeClass.directBuffers.poll();
+			if(buffer != null)
+			{
+				this.hits.incrementAndGet();
+				buffer.clear();
+				return buffer;
+			}
+		}
+
+		this.misses.incrementAndGet();
+		return ByteBuffer.allocateDirect(sizeClass != null ? sizeClass.size : minSize);
+	}
+
+	/**
+	 * Return a buffer borrowed with acquireDirect()
+	 * @param buffer The buffer, may be null. It must not be used afterwards
+	 */
+	public void release(ByteBuffer buffer)
+	{
+		if(buffer == null || !buffer.isDirect())
+			return;
+
+		SizeClass sizeClass = getExactSizeClass(buffer.capacity());
+		if(sizeClass != null)
+		{
+			sizeClass.directBuffers.offer(buffer);
+		}
+	}
+
+	/**
+	 * Wrap a stream in a buffered stream whose buffer is borrowed from the pool. The buffer is returned when the
+	 *  stream is closed or released
+	 * @param stream
+	 * @return
+	 */
+	public PooledInputStream newBufferedInputStream(InputStream stream)
+	{
+		return new PooledInputStream(stream, this);
+	}
+
+	/**
+	 * Wrap a stream in a buffered stream whose buffer is borrowed from the pool. The buffer is returned when the
+	 *  stream is closed or released
+	 * @param stream
+	 * @return
+	 */
+	public PooledOutputStream newBufferedOutputStream(OutputStream stream)
+	{
+		return new PooledOutputStream(stream, this);
+	}
+
+	/**
+	 * @return The number of buffers that were handed out from the pool
+	 */
+	public long getHitCount()
+	{
+		return this.hits.get();
+	}
+
+	/**
+	 * @return The number of buffers that had to be allocated
+	 */
+	public long getMissCount()
+	{
+		return this.misses.get();
+	}
+
+	/**
+	 * @return The number of buffers kept for reuse
+	 */
+	public int getPooledCount()
+	{
+		int count = 0;
+		for(SizeClass sizeClass : this.sizeClasses)
+		{
+			count += sizeClass.heapBuffers.size() + sizeClass.directBuffers.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Drop every kept buffer
+	 */
+	public void clear()
+	{
+		for(SizeClass sizeClass : this.sizeClasses)
+		{
+			sizeClass.heapBuffers.clear();
+			sizeClass.directBuffers.clear();
+		}
+	}
+
+	/**
+	 * @return The smallest size that fits or null if none does
+	 */
+	private SizeClass getSizeClass(int minSize)
+	{
+		for(SizeClass sizeClass : this.sizeClasses)
+		{
+			if(minSize <= sizeClass.size)
+				return sizeClass;
+		}
+		return null;
+	}
+
+	/**
+	 * @return The size a buffer of the pool has exactly or null if it is not one
+	 */
+	private SizeClass getExactSizeClass(int size)
+	{
+		for(SizeClass sizeClass : this.sizeClasses)
+		{
+			if(size == sizeClass.size)
+				return sizeClass;
+		}
+		return null;
+	}
+
+	/**
+	 * The kept heap and direct buffers of one size
+	 *
+	 */
+	private static class SizeClass {
+
+		final int size;
+		final BlockingQueue<byte[]> heapBuffers;
+		final BlockingQueue<ByteBuffer> directBuffers;
+
+		SizeClass(int size, int maxBuffers)
+		{
+			this.size = size;
+			this.heapBuffers = new ArrayBlockingQueue<byte[]>(maxBuffers);
+			this.directBuffers = new ArrayBlockingQueue<ByteBuffer>(maxBuffers);
+		}
+	}
+
+	/**
+	 * A buffered input stream on a pooled buffer. Marks are not supported
+	 *
+	 */
+	public static class PooledInputStream extends FilterInputStream {
+
+		private final BufferPool pool;
+		private byte[] buffer;
+		private int position;
+		private int count;
+
+		PooledInputStream(InputStream stream, BufferPool pool)
+		{
+			super(stream);
+			this.pool = pool;
+			this.buffer = pool.acquireBytes(MEDIUM);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			if(this.position == this.count && !fill())
+				return -1;
+
+			return this.buffer[this.position++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException
+		{
+			if(length == 0)
+				return 0;
+
+			if(this.position == this.count)
+			{
+				//large reads skip the buffer
+				if(length >= getBuffer().length)
+					return this.in.read(bytes, offset, length);
+
+				if(!fill())
+					return -1;
+			}
+
+			int read = Math.min(length, this.count - this.position);
+			System.arraycopy(this.buffer, this.position, bytes, offset, read);
+			this.position += read;
+			return read;
+		}
+
+		@Override
+		public long skip(long count) throws IOException
+		{
+			if(count <= 0)
+				return 0;
+
+			int buffered = this.count - this.position;
+			if(buffered == 0)
+				return this.in.skip(count);
+
+			int skipped = (int) Math.min(count, buffered);
+			this.position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException
+		{
+			return (this.count - this.position) + this.in.available();
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+
+		@Override
+		public void mark(int readLimit)
+		{
+		}
+
+		@Override
+		public void reset() throws IOException
+		{
+			throw new IOException("mark/reset not supported");
+		}
+
+		/**
+		 * Return the buffer to the pool without closing the wrapped stream. Bytes read ahead into the buffer are lost
+		 */
+		public void release()
+		{
+			if(this.buffer != null)
+			{
+				this.pool.release(this.buffer);
+				this.buffer = null;
+				this.position = 0;
+				this.count = 0;
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			release();
+			super.close();
+		}
+
+		private byte[] getBuffer() throws IOException
+		{
+			if(this.buffer == null)
+				throw new IOException("Stream released");
+
+			return this.buffer;
+		}
+
+		private boolean fill() throws IOException
+		{
+			byte[] buffer = getBuffer();
+			this.position = 0;
+			this.count = 0;
+
+			//a read of 0 bytes is not the end of the stream
+			int read;
+			do
+			{
+				read = this.in.read(buffer, 0, buffer.length);
+			} while(read == 0);
+
+			if(read == -1)
+				return false;
+
+			this.count = read;
+			return true;
+		}
+	}
+
+	/**
+	 * A buffered output stream on a pooled buffer
+	 *
+	 */
+	public static class PooledOutputStream extends FilterOutputStream {
+
+		private final BufferPool pool;
+		private byte[] buffer;
+		private int count;
+
+		PooledOutputStream(OutputStream stream, BufferPool pool)
+		{
+			super(stream);
+			this.pool = pool;
+			this.buffer = pool.acquireBytes(MEDIUM);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			if(this.count == getBuffer().length)
+			{
+				flushBuffer();
+			}
+			this.buffer[this.count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException
+		{
+			if(length >= getBuffer().length)
+			{
+				//large writes skip the buffer
+				flushBuffer();
+				this.out.write(bytes, offset, length);
+				return;
+			}
+
+			if(length > this.buffer.length - this.count)
+			{
+				flushBuffer();
+			}
+			System.arraycopy(bytes, offset, this.buffer, this.count, length);
+			this.count += length;
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			flushBuffer();
+			this.out.flush();
+		}
+
+		/**
+		 * Flush and return the buffer to the pool without closing the wrapped stream
+		 * @throws IOException
+		 */
+		public void release() throws IOException
+		{
+			if(this.buffer == null)
+				return;
+
+			try
+			{
+				flush();
+			} finally
+			{
+				this.pool.release(this.buffer);
+				this.buffer = null;
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				release();
+			} finally
+			{
+				this.out.close();
+			}
+		}
+
+		private byte[] getBuffer() throws IOException
+		{
+			if(this.buffer == null)
+				throw new IOException("Stream released");
+
+			return this.buffer;
+		}
+
+		private void flushBuffer() throws IOException
+		{
+			if(this.count > 0)
+			{
+				this.out.write(this.buffer, 0, this.count);
+				this.count = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,416 @@
+package org.restit.network;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops requests to a host that keeps failing, so that callers fail at once instead of waiting for the connect
+ *  timeout of a backend that is down. Every host has its own circuit:
+ *
+ * CLOSED lets requests through and opens when the last requests failed too often, either a number of consecutive
+ *  failures or a failure rate over a window of recent requests.
+ * OPEN fails every request with a CircuitOpenException until the open duration has passed.
+ * HALF_OPEN lets a limited number of probe requests through. The circuit closes once they succeed and opens again
+ *  when one of them fails.
+ *
+ * A failure is a connection that could not be made or broke, or a 5xx response. Any other response is a success.
+ *  Every request that is let through counts once, with its first outcome.
+ *
+ * RestIt has no circuit breaker unless one is set with RestIt.setCircuitBreaker().
+ *
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private volatile int consecutiveFailureThreshold = 5;
+	private volatile double failureRateThreshold = 0.5;
+	private volatile int windowSize = 20;
+	private volatile int minimumRequests = 10;
+	private volatile long openDuration = 30 * 1000;
+	private volatile int halfOpenProbes = 1;
+
+	private final ConcurrentMap<String, HostCircuit> circuits = new ConcurrentHashMap<String, HostCircuit>();
+	private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<CircuitBreakerListener>();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong openedCount = new AtomicLong();
+
+	public int getConsecutiveFailureThreshold() {
+		return consecutiveFailureThreshold;
+	}
+
+	/**
+	 * Set the number of consecutive failures that opens the circuit of a host
+	 * @param consecutiveFailureThreshold
+	 */
+	public void setConsecutiveFailureThreshold(int consecutiveFailureThreshold) {
+		this.consecutiveFailureThreshold = consecutiveFailureThreshold;
+	}
+
+	public double getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	/**
+	 * Set the part of the recent requests, from 0 to 1, that opens the circuit of a host when it failed
+	 * @param failureRateThreshold
+	 */
+	public void setFailureRateThreshold(double failureRateThreshold) {
+		this.failureRateThreshold = failureRateThreshold;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Set the number of recent requests the failure rate is measured over. Applies to hosts seen afterwards
+	 * @param windowSize
+	 */
+	public void setWindowSize(int windowSize) {
+		this.windowSize = Math.max(1, windowSize);
+	}
+
+	public int getMinimumRequests() {
+		return minimumRequests;
+	}
+
+	/**
+	 * Set the number of requests needed in the window before the failure rate counts
+	 * @param minimumRequests
+	 */
+	public void setMinimumRequests(int minimumRequests) {
+		this.minimumRequests = minimumRequests;
+	}
+
+	public long getOpenDuration() {
+		return openDuration;
+	}
+
+	/**
+	 * Set the milliseconds an open circuit fails requests before it lets probes through
+	 * @param openDuration
+	 */
+	public void setOpenDuration(long openDuration) {
+		this.openDuration = openDuration;
+	}
+
+	public int getHalfOpenProbes() {
+		return halfOpenProbes;
+	}
+
+	/**
+	 * Set the number of probe requests a half open circuit lets through at a time, and that have to succeed to
+	 *  close it
+	 * @param halfOpenProbes
+	 */
+	public void setHalfOpenProbes(int halfOpenProbes) {
+		this.halfOpenProbes = Math.max(1, halfOpenProbes);
+	}
+
+	/**
+	 * Listen to the state changes of the circuits
+	 * @param listener
+	 */
+	public void addListener(CircuitBreakerListener listener) {
+		this.listeners.add(listener);
+	}
+
+	public void removeListener(CircuitBreakerListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * @return The number of requests that failed fast
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * @return The number of times a circuit opened
+	 */
+	public long getOpenedCount() {
+		return openedCount.get();
+	}
+
+	/**
+	 * Get the state of the circuit of a host
+	 * @param host The host key, as passed to the listeners
+	 * @return
+	 */
+	public State getState(String host)
+	{
+		HostCircuit circuit = this.circuits.get(host);
+		return circuit != null ? circuit.getState() : State.CLOSED;
+	}
+
+	/**
+	 * Close every circuit and forget the recorded requests
+	 */
+	public void reset()
+	{
+		for(String host : this.circuits.keySet())
+		{
+			HostCircuit circuit = this.circuits.remove(host);
+			if(circuit != null && circuit.getState() != State.CLOSED)
+			{
+				notifyListeners(host, circuit.getState(), State.CLOSED);
+			}
+		}
+	}
+
+	/**
+	 * Ask to make a request to a host
+	 * @param host The host key
+	 * @return The permit to record the outcome of the request with
+	 * @throws CircuitOpenException When the circuit of the host does not let the request through
+	 */
+	Permit acquire(String host) throws CircuitOpenException
+	{
+		HostCircuit circuit = getCircuit(host);
+
+		State previous;
+		State state;
+		long retryAfter;
+		synchronized (circuit)
+		{
+			previous = circuit.state;
+			retryAfter = circuit.acquire();
+			state = circuit.state;
+		}
+
+		if(state != previous)
+		{
+			notifyListeners(host, previous, state);
+		}
+
+		if(retryAfter >= 0)
+		{
+			this.rejectedCount.incrementAndGet();
+			throw new CircuitOpenException(host, state, retryAfter);
+		}
+		
+		return new Permit(host);
+	}
+
+	/**
+	 * Record the outcome of a request to a host
+	 * @param host The host key
+	 * @param success Did the host answer without a server error
+	 */
+	private void record(String host, boolean success)
+	{
+		HostCircuit circuit = getCircuit(host);
+
+		State previous;
+		State state;
+		synchronized (circuit)
+		{
+			previous = circuit.state;
+			circuit.record(success);
+			state = circuit.state;
+		}
+
+		if(state != previous)
+		{
+			if(state == State.OPEN)
+			{
+				this.openedCount.incrementAndGet();
+			}
+			notifyListeners(host, previous, state);
+		}
+	}
+
+	private HostCircuit getCircuit(String host)
+	{
+		HostCircuit circuit = this.circuits.get(host);
+		if(circuit == null)
+		{
+			HostCircuit created = new HostCircuit(this.windowSize);
+			circuit = this.circuits.putIfAbsent(host, created);
+			if(circuit == null)
+			{
+				circuit = created;
+			}
+		}
+		return circuit;
+	}
+
+	private void notifyListeners(String host, State previous, State state)
+	{
+		for(CircuitBreakerListener listener : this.listeners)
+		{
+			listener.onStateChanged(host, previous, state);
+		}
+	}
+
+	/**
+	 * A request that was let through. Only the first outcome recorded with it counts
+	 *
+	 */
+	class Permit {
+		
+		private final String host;
+		private final AtomicBoolean recorded = new AtomicBoolean();
+		
+		private Permit(String host)
+		{
+			this.host = host;
+		}
+		
+		/**
+		 * Record the outcome of the request, unless one was recorded already
+		 * @param success Did the host answer without a server error
+		 */
+		void record(boolean success)
+		{
+			if(this.recorded.compareAndSet(false, true))
+			{
+				CircuitBreaker.this.record(this.host, success);
+			}
+		}
+	}
+	
+	/**
+	 * The circuit of one host. Guarded by its own lock
+	 *
+	 */
+	private class HostCircuit {
+
+		State state = State.CLOSED;
+
+		//outcomes of the recent requests, as a ring
+		final boolean[] window;
+		int windowCount;
+		int windowNext;
+		int windowFailures;
+		int consecutiveFailures;
+
+		long openedAt;
+		int probesInFlight;
+		int probeSuccesses;
+		long lastProbeAt;
+
+		HostCircuit(int windowSize)
+		{
+			this.window = new boolean[windowSize];
+		}
+
+		synchronized State getState()
+		{
+			return this.state;
+		}
+
+		/**
+		 * @return -1 if the request may go through, otherwise the milliseconds until the circuit lets probes through
+		 */
+		long acquire()
+		{
+			long now = System.currentTimeMillis();
+
+			if(this.state == State.OPEN)
+			{
+				long remaining = this.openedAt + openDuration - now;
+				if(remaining > 0)
+					return remaining;
+
+				this.state = State.HALF_OPEN;
+				this.probesInFlight = 0;
+				this.probeSuccesses = 0;
+			}
+
+			if(this.state == State.HALF_OPEN)
+			{
+				//a probe whose outcome never came back does not hold the circuit forever
+				if(this.probesInFlight > 0 && now - this.lastProbeAt > openDuration)
+				{
+					this.probesInFlight = 0;
+				}
+
+				if(this.probesInFlight >= halfOpenProbes)
+					return 0;
+
+				this.probesInFlight++;
+				this.lastProbeAt = now;
+			}
+
+			return -1;
+		}
+
+		void record(boolean success)
+		{
+			if(this.state == State.HALF_OPEN)
+			{
+				this.probesInFlight = Math.max(0, this.probesInFlight - 1);
+				if(!success)
+				{
+					open();
+				} else if(++this.probeSuccesses >= halfOpenProbes)
+				{
+					close();
+				}
+				return;
+			}
+
+			if(this.state == State.OPEN)
+			{
+				//a request that started before the circuit opened
+				return;
+			}
+
+			if(this.windowCount == this.window.length)
+			{
+				if(!this.window[this.windowNext])
+				{
+					this.windowFailures--;
+				}
+			} else
+			{
+				this.windowCount++;
+			}
+			this.window[this.windowNext] = success;
+			this.windowNext = (this.windowNext + 1) % this.window.length;
+
+			if(success)
+			{
+				this.consecutiveFailures = 0;
+			} else
+			{
+				this.windowFailures++;
+				this.consecutiveFailures++;
+			}
+
+			if(this.consecutiveFailures >= consecutiveFailureThreshold
+					|| (this.windowCount >= minimumRequests && this.windowFailures >= failureRateThreshold * this.windowCount))
+			{
+				open();
+			}
+		}
+
+		private void open()
+		{
+			this.state = State.OPEN;
+			this.openedAt = System.currentTimeMillis();
+			this.probesInFlight = 0;
+		}
+
+		private void close()
+		{
+			this.state = State.CLOSED;
+			this.windowCount = 0;
+			this.windowNext = 0;
+			this.windowFailures = 0;
+			this.consecutiveFailures = 0;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package org.restit.network;
+
+/**
+ * A call back to notify code about circuits of the CircuitBreaker changing state
+ *
+ */
+public interface CircuitBreakerListener {
+
+	/**
+	 * Tell the listener a circuit changed state. Called on the thread of the request that caused the change
+	 * @param host The host key of the circuit, protocol://host:port
+	 * @param previous The state the circuit left
+	 * @param state The state the circuit is in now
+	 */
+	void onStateChanged(String host, CircuitBreaker.State previous, CircuitBreaker.State state);
+}
@@ -0,0 +1,48 @@
+package org.restit.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of making a request when the circuit of its host is open
+ *
+ */
+public class CircuitOpenException extends IOException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 4150283569027349713L;
+	
+	private final String host;
+	private final CircuitBreaker.State state;
+	private final long retryAfter;
+	
+	public CircuitOpenException(String host, CircuitBreaker.State state, long retryAfter)
+	{
+		super("Circuit " + state + " for " + host);
+		this.host = host;
+		this.state = state;
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return The host key of the circuit, protocol://host:port
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return OPEN, or HALF_OPEN when the probes of the circuit are already in flight
+	 */
+	public CircuitBreaker.State getState() {
+		return state;
+	}
+
+	/**
+	 * @return The milliseconds until the circuit lets a probe through, 0 if it waits on probes in flight
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+}
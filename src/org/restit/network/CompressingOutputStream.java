@@ -0,0 +1,100 @@
+package org.restit.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a request body gzip compressed once it grows beyond a threshold. The body is held in memory until the
+ *  threshold is crossed, so that the Content-Encoding header can still be set before the connection's output
+ *  stream is opened. Smaller bodies are sent as they are.
+ *
+ */
+class CompressingOutputStream extends OutputStream {
+
+	private final HttpURLConnection connection;
+	private final int threshold;
+	
+	private ByteArrayOutputStream buffer;
+	private OutputStream out;
+	
+	/**
+	 * @param connection The connection to write the body to, its output stream must not be opened yet
+	 * @param threshold The size in bytes above which the body is compressed
+	 */
+	public CompressingOutputStream(HttpURLConnection connection, int threshold)
+	{
+		this.connection = connection;
+		this.threshold = threshold;
+		this.buffer = new ByteArrayOutputStream(Math.min(Math.max(threshold, 0) + 1, 8192));
+	}
+	
+	@Override
+	public void write(int b) throws IOException
+	{
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+	
+	@Override
+	public void write(byte[] bytes, int offset, int count) throws IOException
+	{
+		if(this.out != null)
+		{
+			this.out.write(bytes, offset, count);
+			return;
+		}
+		
+		this.buffer.write(bytes, offset, count);
+		if(this.buffer.size() > this.threshold)
+		{
+			open(true);
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException
+	{
+		//the decision waits for the threshold or the end of the body
+		if(this.out != null)
+		{
+			this.out.flush();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		if(this.out == null)
+		{
+			open(false);
+		}
+		
+		//finishes the gzip trailer
+		this.out.close();
+	}
+	
+	/**
+	 * @return Is the body sent compressed
+	 */
+	public boolean isCompressed()
+	{
+		return this.out instanceof GZIPOutputStream;
+	}
+	
+	private void open(boolean compress) throws IOException
+	{
+		if(compress)
+		{
+			this.connection.setRequestProperty("Content-Encoding", "gzip");
+			this.out = new GZIPOutputStream(this.connection.getOutputStream(), 2048);
+		} else
+		{
+			this.out = this.connection.getOutputStream();
+		}
+		
+		this.buffer.writeTo(this.out);
+		this.buffer = null;
+	}
+}
@@ -0,0 +1,30 @@
+package org.restit.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ * Finishes the response of a connection and releases it. Used to hand an open connection to code that
+ *  releases it later, like a streaming iterator.
+ *
+ */
+class ConnectionCloser implements Closeable {
+
+	private RestItClient client;
+	private HttpURLConnection connection;
+	
+	public ConnectionCloser(RestItClient client, HttpURLConnection connection)
+	{
+		this.client = client;
+		this.connection = connection;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		//a connection that was closed early is only released if what is left of the response is small
+		this.client.completeResponse(this.connection, this.connection.getInputStream());
+		this.client.releaseConnection(this.connection);
+	}
+}
@@ -0,0 +1,156 @@
+package org.restit.network;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how connections are opened and released by RestIt. Released and disconnected connections are counted
+ *  exactly. HttpURLConnection does not tell whether it reused a pooled socket, so reuse is an estimate: a request
+ *  counts as reused when a connection to the same host was released to the keep-alive pool, within the idle
+ *  timeout and the per host limit, before the request started. The server closing idle sockets, or other users
+ *  of the platform pool, make the estimate too high.
+ *
+ */
+public class ConnectionStats {
+
+	private final AtomicLong newConnections = new AtomicLong();
+	private final AtomicLong reusedConnections = new AtomicLong();
+	private final AtomicLong releasedConnections = new AtomicLong();
+	private final AtomicLong disconnectedConnections = new AtomicLong();
+	
+	//times at which connections were released to the pool, per host
+	private final Map<String, LinkedList<Long>> idleConnections = new HashMap<String, LinkedList<Long>>();
+	
+	/**
+	 * A request to a host is starting
+	 * @param host The host and port of the request
+	 * @param keepAliveDuration How long idle connections stay in the pool, in milliseconds
+	 */
+	void connectionOpened(String host, long keepAliveDuration)
+	{
+		boolean reused = false;
+		long now = System.currentTimeMillis();
+		
+		synchronized (this.idleConnections)
+		{
+			LinkedList<Long> idle = this.idleConnections.get(host);
+			while(idle != null && !idle.isEmpty())
+			{
+				//take the most recently released connection that has not timed out
+				long releasedAt = idle.removeLast();
+				if(now - releasedAt <= keepAliveDuration)
+				{
+					reused = true;
+					break;
+				}
+			}
+		}
+		
+		if(reused)
+			this.reusedConnections.incrementAndGet();
+		else
+			this.newConnections.incrementAndGet();
+	}
+	
+	/**
+	 * A connection was drained and released to the keep-alive pool
+	 * @param host The host and port of the connection
+	 * @param maxConnectionsPerHost The number of idle connections the pool keeps per host
+	 */
+	void connectionReleased(String host, int maxConnectionsPerHost)
+	{
+		this.releasedConnections.incrementAndGet();
+		
+		synchronized (this.idleConnections)
+		{
+			LinkedList<Long> idle = this.idleConnections.get(host);
+			if(idle == null)
+			{
+				idle = new LinkedList<Long>();
+				this.idleConnections.put(host, idle);
+			}
+			
+			idle.addLast(System.currentTimeMillis());
+			while(idle.size() > maxConnectionsPerHost)
+			{
+				//the pool evicts the oldest idle connection
+				idle.removeFirst();
+			}
+		}
+	}
+	
+	/**
+	 * A connection was closed instead of being released to the pool
+	 */
+	void connectionDisconnected()
+	{
+		this.disconnectedConnections.incrementAndGet();
+	}
+	
+	/**
+	 * Get the estimated number of requests that needed a new connection
+	 * @return
+	 */
+	public long getNewConnections()
+	{
+		return this.newConnections.get();
+	}
+	
+	/**
+	 * Get the estimated number of requests that could use a pooled connection. This is not a measurement of
+	 *  socket reuse, see the class comment
+	 * @return
+	 */
+	public long getReusedConnections()
+	{
+		return this.reusedConnections.get();
+	}
+	
+	/**
+	 * Get the number of connections that were drained and released to the pool
+	 * @return
+	 */
+	public long getReleasedConnections()
+	{
+		return this.releasedConnections.get();
+	}
+	
+	/**
+	 * Get the number of connections that were closed
+	 * @return
+	 */
+	public long getDisconnectedConnections()
+	{
+		return this.disconnectedConnections.get();
+	}
+	
+	/**
+	 * Get the estimated share of requests that could use a pooled connection
+	 * @return A value between 0 and 1
+	 */
+	public double getReuseRate()
+	{
+		long reused = getReusedConnections();
+		long total = reused + getNewConnections();
+		
+		return total == 0 ? 0 : (double) reused / total;
+	}
+	
+	/**
+	 * Set every counter back to zero
+	 */
+	public void reset()
+	{
+		this.newConnections.set(0);
+		this.reusedConnections.set(0);
+		this.releasedConnections.set(0);
+		this.disconnectedConnections.set(0);
+		
+		synchronized (this.idleConnections)
+		{
+			this.idleConnections.clear();
+		}
+	}
+}
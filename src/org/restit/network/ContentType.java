@@ -3,6 +3,7 @@ package org.restit.network;
 public class ContentType {
 
 	public static final String BINARY = "application/octet-stream";
+	public static final String CBOR = "application/cbor";
 	public static final String FORM = "application/x-www-form-urlencoded";
 	public static final String JSON = "application/json";
 	public static final String TEXT_HTML = "text/html";
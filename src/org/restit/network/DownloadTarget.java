@@ -0,0 +1,147 @@
+package org.restit.network;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Where a downloaded body is written to. The body is copied from the connection through a pooled direct buffer, so
+ *  a download never holds more than one buffer of the body in memory.
+ *
+ */
+abstract class DownloadTarget {
+
+	/**
+	 * @return The number of bytes already downloaded by an earlier attempt, requested to be skipped with a Range header
+	 */
+	public long getOffset()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Open the channel to write the body to
+	 * @param offset The offset the body starts at, 0 when the body is downloaded from the start
+	 * @param length The number of bytes of the body or -1 if it is not known
+	 */
+	protected abstract WritableByteChannel openChannel(long offset, long length) throws IOException;
+	
+	/**
+	 * Can another attempt of the download write to the target, after a failed one may have written part of the body
+	 */
+	protected boolean isRepeatable()
+	{
+		return false;
+	}
+	
+	/**
+	 * Should the channel be closed after the download
+	 */
+	protected boolean isOwnChannel()
+	{
+		return true;
+	}
+	
+	/**
+	 * Called after the whole body has been written
+	 */
+	protected void complete() throws IOException
+	{
+	}
+	
+	/**
+	 * Download to a file. The body is written next to the file in a ".part" file that is renamed when the download
+	 *  is complete, so an interrupted download is continued from the bytes it left
+	 */
+	static DownloadTarget of(final File file)
+	{
+		final File partFile = new File(file.getPath() + ".part");
+		return new DownloadTarget() {
+			@Override
+			public long getOffset() {
+				return partFile.length();
+			}
+			
+			@Override
+			protected boolean isRepeatable() {
+				//another attempt continues the part file
+				return true;
+			}
+			
+			@Override
+			protected WritableByteChannel openChannel(long offset, long length) throws IOException {
+				if(offset > 0 && offset != partFile.length())
+					throw new IOException("The partial download " + partFile + " does not end at " + offset);
+				
+				//append to an earlier attempt or start over
+				return new FileOutputStream(partFile, offset > 0).getChannel();
+			}
+			
+			@Override
+			protected void complete() throws IOException {
+				if(!partFile.renameTo(file))
+				{
+					file.delete();
+					if(!partFile.renameTo(file))
+						throw new IOException("Unable to move the download to " + file);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Download to a channel. The channel is left open
+	 */
+	static DownloadTarget of(final WritableByteChannel channel)
+	{
+		return new DownloadTarget() {
+			@Override
+			protected WritableByteChannel openChannel(long offset, long length) {
+				return channel;
+			}
+			
+			@Override
+			protected boolean isOwnChannel() {
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * Download into a buffer, from its position up to its limit
+	 */
+	static DownloadTarget of(final ByteBuffer buffer)
+	{
+		return new DownloadTarget() {
+			@Override
+			protected WritableByteChannel openChannel(long offset, long length) throws IOException {
+				if(length > buffer.remaining())
+					throw new IOException("The download of " + length + " bytes does not fit in the " + buffer.remaining() + " bytes left in the buffer");
+				
+				return new WritableByteChannel() {
+					
+					@Override
+					public int write(ByteBuffer source) throws IOException {
+						int count = source.remaining();
+						if(count > buffer.remaining())
+							throw new IOException("The download does not fit in the " + buffer.remaining() + " bytes left in the buffer");
+						
+						buffer.put(source);
+						return count;
+					}
+					
+					@Override
+					public boolean isOpen() {
+						return true;
+					}
+					
+					@Override
+					public void close() {
+					}
+				};
+			}
+		};
+	}
+}
@@ -0,0 +1,260 @@
+package org.restit.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A multipart/form-data body with any number of text fields and file parts, posted with
+ *  RestIt.multipartPost. The parts are written in the order they are added, files are streamed from their source
+ *  when the request is made. The length of the body is known up front when the length of every file is, so the
+ *  upload can use fixed-length streaming. Every form has its own random boundary.
+ *
+ */
+public class MultipartForm {
+
+	private static final byte[] CRLF = { '\r', '\n' };
+	private static final char[] BOUNDARY_CHARS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+	private static final SecureRandom random = new SecureRandom();
+	
+	private final String boundary;
+	private final List<Part> parts = new ArrayList<Part>();
+	
+	public MultipartForm()
+	{
+		char[] boundary = new char[40];
+		for(int i = 0; i < boundary.length; i++)
+		{
+			boundary[i] = BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)];
+		}
+		this.boundary = new String(boundary);
+	}
+	
+	public String getBoundary()
+	{
+		return this.boundary;
+	}
+	
+	/**
+	 * @return The Content-Type header of the form
+	 */
+	public String getContentType()
+	{
+		return "multipart/form-data; boundary=" + this.boundary;
+	}
+	
+	/**
+	 * Add a text field
+	 * @param name The name of the field
+	 * @param value The value of the field
+	 * @return This form
+	 */
+	public MultipartForm addField(String name, String value)
+	{
+		this.parts.add(new Part(getBytes("--" + this.boundary + "\r\n" + "Content-Disposition: form-data; name=\"" + escape(name) + "\"\r\nContent-Type: text/plain; charset=UTF-8\r\n\r\n" + value + "\r\n"), null));
+		return this;
+	}
+	
+	/**
+	 * Add a file from memory
+	 * @param name The name of element in the HTML form
+	 * @param fileName The file name of the file
+	 * @param contentType The Content-Type of the file, or null to leave it out
+	 * @param bytes The content of the file
+	 * @return This form
+	 */
+	public MultipartForm addFile(String name, String fileName, String contentType, byte[] bytes)
+	{
+		return addFile(name, fileName, contentType, UploadSource.of(bytes));
+	}
+	
+	/**
+	 * Add a file from disk. The file is read when the request is made
+	 * @param name The name of element in the HTML form
+	 * @param fileName The file name sent to the server, or null for the name of the file
+	 * @param contentType The Content-Type of the file, or null to leave it out
+	 * @param file The file
+	 * @return This form
+	 */
+	public MultipartForm addFile(String name, String fileName, String contentType, File file)
+	{
+		return addFile(name, fileName != null ? fileName : file.getName(), contentType, UploadSource.of(file));
+	}
+	
+	/**
+	 * Add a file from a channel. The channel is read from its current position to its end when the request is
+	 *  made and left open
+	 * @param name The name of element in the HTML form
+	 * @param fileName The file name of the file
+	 * @param contentType The Content-Type of the file, or null to leave it out
+	 * @param fileChannel The channel of the file
+	 * @return This form
+	 * @throws IOException If the size of the channel can't be read
+	 */
+	public MultipartForm addFile(String name, String fileName, String contentType, FileChannel fileChannel) throws IOException
+	{
+		return addFile(name, fileName, contentType, UploadSource.of(fileChannel));
+	}
+	
+	/**
+	 * Add a file from a stream. The stream is read to its end and closed when the request is made
+	 * @param name The name of element in the HTML form
+	 * @param fileName The file name of the file
+	 * @param contentType The Content-Type of the file, or null to leave it out
+	 * @param inputStream The content of the file
+	 * @param length The number of bytes in the stream, or -1 if it is not known
+	 * @return This form
+	 */
+	public MultipartForm addFile(String name, String fileName, String contentType, InputStream inputStream, long length)
+	{
+		return addFile(name, fileName, contentType, UploadSource.of(inputStream, length));
+	}
+	
+	MultipartForm addFile(String name, String fileName, String contentType, UploadSource source)
+	{
+		String header = "--" + this.boundary + "\r\n" + "Content-Disposition: form-data; name=\"" + escape(name) + "\"; filename=\"" + escape(fileName) + "\"\r\n";
+		if(contentType != null)
+		{
+			header += "Content-Type: " + contentType + "\r\n";
+		}
+		
+		this.parts.add(new Part(getBytes(header + "\r\n"), source));
+		return this;
+	}
+	
+	/**
+	 * @return The number of bytes of the body, or -1 if the length of a file is not known
+	 */
+	public long getContentLength()
+	{
+		long filesLength = getFilesLength();
+		if(filesLength < 0)
+			return -1;
+		
+		long length = filesLength + getClosingBoundary().length;
+		for(Part part : this.parts)
+		{
+			length += part.header.length + (part.source != null ? CRLF.length : 0);
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * @return The number of bytes of all the files together, or -1 if the length of a file is not known
+	 */
+	public long getFilesLength()
+	{
+		long length = 0;
+		for(Part part : this.parts)
+		{
+			if(part.source != null)
+			{
+				if(part.source.getLength() < 0)
+					return -1;
+				
+				length += part.source.getLength();
+			}
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * @return Can the body be written again, false if a file comes from a stream that is read once
+	 */
+	public boolean isRepeatable()
+	{
+		for(Part part : this.parts)
+		{
+			if(part.source != null && !part.source.isRepeatable())
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Write the body
+	 * @param outputStream
+	 * @param progressListener A listener that will respond to the upload progress of all the files together, may be null
+	 * @throws IOException
+	 */
+	void writeTo(OutputStream outputStream, ProgressListener progressListener) throws IOException
+	{
+		WritableByteChannel out = Channels.newChannel(outputStream);
+		long totalSize = getFilesLength();
+		long transferred = 0;
+		
+		for(Part part : this.parts)
+		{
+			write(out, part.header);
+			
+			if(part.source != null)
+			{
+				transferred += part.source.writeTo(out, progressListener, transferred, totalSize);
+				write(out, CRLF);
+			}
+		}
+		
+		write(out, getClosingBoundary());
+	}
+	
+	private byte[] getClosingBoundary()
+	{
+		return getBytes("--" + this.boundary + "--\r\n");
+	}
+	
+	private static void write(WritableByteChannel out, byte[] bytes) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while(buffer.hasRemaining())
+		{
+			out.write(buffer);
+		}
+	}
+	
+	/**
+	 * Quotes would end the parameter, encode them like browsers do
+	 */
+	private static String escape(String value)
+	{
+		return value != null ? value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A") : null;
+	}
+	
+	private static byte[] getBytes(String value)
+	{
+		try
+		{
+			return value.getBytes(RestItClient.CHARSET);
+		} catch (UnsupportedEncodingException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+	
+	/**
+	 * The headers of a part, followed by the content of a file
+	 *
+	 */
+	private static class Part {
+		
+		final byte[] header;
+		final UploadSource source;
+		
+		Part(byte[] header, UploadSource source)
+		{
+			this.header = header;
+			this.source = source;
+		}
+	}
+}
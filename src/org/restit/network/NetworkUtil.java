@@ -1,9 +1,20 @@
 package org.restit.network;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import android.util.Log;
 
@@ -11,45 +22,326 @@ public class NetworkUtil {
 
 	private final static String LOG_TAG = "NetworkUtil";
 	
+	//largest string capacity taken from a Content-Length before any of the body is read
+	private static final int MAX_PRESIZE = 4 * 1024 * 1024;
+	
 	/**
-	 * Parse a stream to a string
+	 * Parse a stream to a string, decoded with the RestIt default charset
 	 * @param stream The stream to parse
 	 * @return A readable string
 	 */
 	public static String parseStream(InputStream stream)
 	{
-		String value = null;
-		
-        if (stream != null) {
-        
-	        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-			StringBuilder sb = new StringBuilder();
+		return parseStream(stream, RestItClient.CHARSET, -1);
+	}
 	
-			String line = null;
-			try
+	/**
+	 * Parse the body of a response to a string, decoded with the charset of its Content-Type and pre-sized from its
+	 *  Content-Length
+	 * @param connection The connection that holds the response
+	 * @param stream The decoded response stream
+	 * @return A readable string
+	 */
+	public static String parseStream(URLConnection connection, InputStream stream)
+	{
+		//the length counts the encoded bytes when there is a content coding
+		long contentLength = connection.getContentEncoding() == null ? connection.getContentLength() : -1;
+		return parseStream(stream, getCharset(connection), contentLength);
+	}
+	
+	/**
+	 * Parse a stream to a string. The bytes are decoded in bulk through a pooled byte buffer and a char buffer
+	 *  that is reused by the thread, and the string is returned exactly as sent, line endings included. The stream
+	 *  is closed
+	 * @param stream The stream to parse
+	 * @param charset The charset the stream is encoded in
+	 * @param contentLength The number of bytes in the stream or -1 if it is not known
+	 * @return A readable string
+	 */
+	public static String parseStream(InputStream stream, String charset, long contentLength)
+	{
+		if(stream == null)
+			return null;
+		
+		DecodeState state = decodeState.get();
+		CharsetDecoder decoder = state.getDecoder(charset);
+		CharBuffer chars = state.chars;
+		
+		byte[] buffer = BufferPool.getShared().acquireBytes(BufferPool.MEDIUM);
+		ByteBuffer bytes = ByteBuffer.wrap(buffer);
+		
+		//a character takes at least a byte, don't trust the header with more than the cap up front
+		StringBuilder sb = new StringBuilder(contentLength > 0 ? (int) Math.min(contentLength, MAX_PRESIZE) : 16);
+		
+		try
+		{
+			int read = 0;
+			while(read != -1)
 			{
-				while ((line = reader.readLine()) != null)
+				read = stream.read(bytes.array(), bytes.position(), bytes.remaining());
+				if(read > 0)
 				{
-					sb.append(line + "\n");
+					bytes.position(bytes.position() + read);
 				}
+				
+				bytes.flip();
+				decode(decoder, bytes, chars, sb, read == -1);
+				bytes.compact();
+			}
+			
+			//write out what the decoder holds back
+			while(decoder.flush(chars).isOverflow())
+			{
+				drainChars(chars, sb);
+			}
+			drainChars(chars, sb);
+			
+		} catch (IOException e)
+		{
+			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+		} finally
+		{
+			BufferPool.getShared().release(buffer);
+			chars.clear();
+			
+			try
+			{
+				stream.close();
 			} catch (IOException e)
 			{
 				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
-			} finally
+			}
+		}
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Decode the bytes that are ready into the string
+	 */
+	private static void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars, StringBuilder sb, boolean endOfInput)
+	{
+		while(decoder.decode(bytes, chars, endOfInput).isOverflow())
+		{
+			drainChars(chars, sb);
+		}
+		drainChars(chars, sb);
+	}
+	
+	private static void drainChars(CharBuffer chars, StringBuilder sb)
+	{
+		chars.flip();
+		sb.append(chars.array(), chars.arrayOffset(), chars.remaining());
+		chars.clear();
+	}
+	
+	/**
+	 * The char buffer and decoder a thread reuses to parse streams
+	 *
+	 */
+	private static class DecodeState {
+		
+		final CharBuffer chars = CharBuffer.allocate(BufferPool.MEDIUM);
+		private CharsetDecoder decoder;
+		
+		/**
+		 * Get a reset decoder for a charset, reusing the last one when the charset is the same
+		 */
+		CharsetDecoder getDecoder(String charset)
+		{
+			Charset target;
+			try
 			{
-				try
-				{
-					stream.close();
-				} catch (IOException e)
+				target = Charset.forName(charset);
+			} catch (IllegalArgumentException e)
+			{
+				Log.w(LOG_TAG, e.getLocalizedMessage(), e);
+				target = Charset.forName(RestItClient.CHARSET);
+			}
+			
+			if(this.decoder == null || !this.decoder.charset().equals(target))
+			{
+				//replace malformed input like a reader does
+				this.decoder = target.newDecoder()
+						.onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			}
+			
+			return this.decoder.reset();
+		}
+	}
+	
+	private static final ThreadLocal<DecodeState> decodeState = new ThreadLocal<DecodeState>() {
+		@Override
+		protected DecodeState initialValue() {
+			return new DecodeState();
+		}
+	};
+	
+	/**
+	 * Get the charset of a response from its Content-Type header
+	 * @param connection The connection that holds the response
+	 * @return The charset named in the header or the RestIt default charset
+	 */
+	public static String getCharset(URLConnection connection)
+	{
+		return getCharset(connection.getContentType());
+	}
+	
+	/**
+	 * Get the charset named in a Content-Type header
+	 * @param contentType The header value, may be null
+	 * @return The charset named in the header or the RestIt default charset
+	 */
+	public static String getCharset(String contentType)
+	{
+		if(contentType != null)
+		{
+			String[] parameters = contentType.split(";");
+			for(int i = 1; i < parameters.length; i++)
+			{
+				String parameter = parameters[i].trim();
+				if(parameter.regionMatches(true, 0, "charset=", 0, 8))
 				{
-					Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+					String charset = parameter.substring(8).replace("\"", "").trim();
+					try
+					{
+						if(Charset.isSupported(charset))
+						{
+							return charset;
+						}
+					} catch (IllegalCharsetNameException e)
+					{
+						Log.w(LOG_TAG, e.getLocalizedMessage(), e);
+					}
 				}
 			}
+		}
+		
+		return RestItClient.CHARSET;
+	}
 	
-			value = sb.toString();
+	/**
+	 * Read and discard the rest of a stream
+	 * @param stream The stream to drain
+	 * @param maxBytes The most bytes to read
+	 * @return true if the end of the stream was reached
+	 * @throws IOException
+	 */
+	public static boolean drain(InputStream stream, int maxBytes) throws IOException
+	{
+		byte[] buffer = BufferPool.getShared().acquireBytes(BufferPool.SMALL);
+		int total = 0;
+		int bytesRead = 0;
+		
+		try
+		{
+			while((bytesRead = stream.read(buffer)) > -1)
+			{
+				total += bytesRead;
+				if(total > maxBytes)
+				{
+					return false;
+				}
+			}
+		} finally
+		{
+			BufferPool.getShared().release(buffer);
+		}
+		
+		return true;
+	}
+
+	/**
+	 * Undo the Content-Encoding of a response. The encoding is negotiated by RestIt itself, so the body arrives
+	 *  compressed whichever transport handles the connection
+	 * @param connection The connection that holds the response
+	 * @param stream The response or error stream, may be null
+	 * @return A stream of the decoded body
+	 * @throws IOException
+	 */
+	public static InputStream decodeStream(URLConnection connection, InputStream stream) throws IOException
+	{
+		String contentEncoding = connection.getContentEncoding();
+		if(stream == null || contentEncoding == null)
+			return stream;
+		
+		contentEncoding = contentEncoding.trim().toLowerCase();
+		if(contentEncoding.equals("gzip") || contentEncoding.equals("x-gzip"))
+		{
+			//a body without content, like the one of a 204 or a HEAD, has no gzip header to read
+			PushbackInputStream pushback = new PushbackInputStream(stream, 1);
+			int first = pushback.read();
+			if(first == -1)
+				return pushback;
+			
+			pushback.unread(first);
+			return new GZIPInputStream(pushback, 2048);
+		} else if(contentEncoding.equals("deflate"))
+		{
+			//servers send deflate either zlib wrapped, as the spec says, or raw
+			PushbackInputStream pushback = new PushbackInputStream(stream, 2);
+			int cmf = pushback.read();
+			int flg = cmf != -1 ? pushback.read() : -1;
+			if(flg != -1)
+			{
+				pushback.unread(flg);
+			}
+			if(cmf != -1)
+			{
+				pushback.unread(cmf);
+			}
+			
+			boolean zlib = cmf != -1 && flg != -1 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+			return new InflaterInputStream(pushback, new Inflater(!zlib), 2048) {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					//a stream with its own inflater does not release it
+					inf.end();
+				}
+			};
+		}
+		
+		return stream;
+	}
+
+	/**
+	 * Copy a channel to its end into another channel, through a pooled direct buffer
+	 * @param in The channel to read from
+	 * @param out The channel to write to
+	 * @param progressListener A listener that will respond to the progress, may be null
+	 * @param transferred The bytes that were already reported to the listener
+	 * @param totalSize The total size reported to the listener
+	 * @return The number of bytes copied
+	 * @throws IOException
+	 */
+	public static long copy(ReadableByteChannel in, WritableByteChannel out, ProgressListener progressListener, long transferred, long totalSize) throws IOException
+	{
+		ByteBuffer buffer = BufferPool.getShared().acquireDirect(BufferPool.LARGE);
+		long total = 0;
+		
+		try
+		{
+			while(in.read(buffer) != -1)
+			{
+				buffer.flip();
+				while(buffer.hasRemaining())
+				{
+					total += out.write(buffer);
+				}
+				buffer.clear();
+				
+				if(progressListener != null)
+				{
+					progressListener.transferred(transferred + total, totalSize);
+				}
+			}
+		} finally
+		{
+			BufferPool.getShared().release(buffer);
+		}
 		
-        }
-        
-        return value;
+		return total;
 	}
 }
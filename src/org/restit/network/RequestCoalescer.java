@@ -0,0 +1,138 @@
+package org.restit.network;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Lets identical requests that run at the same time share one connection and one mapped result. The first caller
+ *  makes the request, callers that arrive while it is in flight wait for its result. Each waiting caller gets its
+ *  own exception when the request fails. Requests are only identical when the options that change how they are
+ *  made, like the retry policy and the object cache time to live, are the same too.
+ *
+ */
+class RequestCoalescer {
+
+	/**
+	 * The request to make when no identical request is in flight
+	 */
+	interface Request {
+		Object execute() throws ServerErrorException, NetworkNotAvailableException;
+	}
+	
+	private final ConcurrentHashMap<List<Object>, Flight> flights = new ConcurrentHashMap<List<Object>, Flight>();
+	
+	/**
+	 * Make a request or wait for the identical request that is already in flight
+	 * @param requestMethod
+	 * @param url
+	 * @param requestHeaders
+	 * @param timeToLive The object cache time to live of the request
+	 * @param retryPolicy The retry policy of the request, may be null
+	 * @param request The request to make
+	 * @return The result of the request
+	 * @throws ServerErrorException
+	 * @throws NetworkNotAvailableException
+	 */
+	public Object execute(String requestMethod, String url, Map<String, String> requestHeaders, long timeToLive, RetryPolicy retryPolicy, Request request) throws ServerErrorException, NetworkNotAvailableException
+	{
+		List<Object> key = getKey(requestMethod, url, requestHeaders, timeToLive, retryPolicy);
+		
+		Flight flight = new Flight();
+		Flight inFlight = this.flights.putIfAbsent(key, flight);
+		if(inFlight != null)
+			return inFlight.await();
+		
+		try
+		{
+			flight.result = request.execute();
+			return flight.result;
+		} catch (ServerErrorException e)
+		{
+			flight.error = e;
+			throw e;
+		} catch (NetworkNotAvailableException e)
+		{
+			flight.error = e;
+			throw e;
+		} catch (RuntimeException e)
+		{
+			flight.error = e;
+			throw e;
+		} finally
+		{
+			//later requests start a new flight
+			this.flights.remove(key, flight);
+			flight.done.countDown();
+		}
+	}
+	
+	/**
+	 * Get the number of requests in flight
+	 * @return
+	 */
+	public int getInFlightCount()
+	{
+		return this.flights.size();
+	}
+	
+	private static List<Object> getKey(String requestMethod, String url, Map<String, String> requestHeaders, long timeToLive, RetryPolicy retryPolicy)
+	{
+		Map<String, String> headers = requestHeaders != null ? new TreeMap<String, String>(requestHeaders) : null;
+		
+		//retry policies have no equals, only the same policy makes the same request
+		return Arrays.<Object>asList(requestMethod, url, headers, timeToLive, retryPolicy);
+	}
+	
+	/**
+	 * A request in flight and its outcome
+	 *
+	 */
+	private static class Flight {
+		
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile Object result;
+		volatile Exception error;
+		
+		Object await() throws ServerErrorException, NetworkNotAvailableException
+		{
+			try
+			{
+				this.done.await();
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new ServerErrorException(e);
+			}
+			
+			if(this.error == null)
+				return this.result;
+			
+			//give the caller its own exception, with the shared one as cause
+			Exception exception;
+			if(this.error instanceof ServerErrorException)
+			{
+				ServerErrorException error = (ServerErrorException) this.error;
+				ServerErrorException copy = new ServerErrorException(error.getError());
+				copy.setAttemptCount(error.getAttemptCount());
+				copy.setRetryAfter(error.getRetryAfter());
+				exception = copy;
+			} else if(this.error instanceof NetworkNotAvailableException)
+			{
+				exception = new NetworkNotAvailableException(this.error.getMessage());
+			} else
+			{
+				exception = new ServerErrorException(this.error);
+			}
+			exception.initCause(this.error);
+			
+			if(exception instanceof NetworkNotAvailableException)
+				throw (NetworkNotAvailableException) exception;
+			
+			throw (ServerErrorException) exception;
+		}
+	}
+}
@@ -4,6 +4,14 @@ public class RequestOptions {
 
 	private boolean chunckedStreamingMode = true;
 	private String overrideBaseUrl;
+	private String bodyContentType;
+	private long objectCacheTimeToLive = -1;
+	private boolean coalesceRequests = true;
+	private boolean acceptCompressedResponse = true;
+	private boolean compressRequestBody = false;
+	private int compressionThreshold = 1024;
+	private RequestPriority priority;
+	private RetryPolicy retryPolicy;
 	
 	public String getOverrideBaseUrl() {
 		return overrideBaseUrl;
@@ -28,6 +36,104 @@ public class RequestOptions {
 	public void setChunckedStreamingMode(boolean chunckedStreamingMode) {
 		this.chunckedStreamingMode = chunckedStreamingMode;
 	}
-	
-	
+
+	public String getBodyContentType() {
+		return bodyContentType;
+	}
+
+	/**
+	 * Set the content type objects are sent as. A codec must be registered for it with RestItMapper, otherwise
+	 *  JSON is used
+	 * @param bodyContentType
+	 */
+	public void setBodyContentType(String bodyContentType) {
+		this.bodyContentType = bodyContentType;
+	}
+
+	public long getObjectCacheTimeToLive() {
+		return objectCacheTimeToLive;
+	}
+
+	/**
+	 * Set how long the mapped response of a GET is kept in the object cache
+	 * @param objectCacheTimeToLive The time in milliseconds, 0 to not cache the response or -1 for the default of the cache
+	 */
+	public void setObjectCacheTimeToLive(long objectCacheTimeToLive) {
+		this.objectCacheTimeToLive = objectCacheTimeToLive;
+	}
+
+	public boolean isCoalesceRequests() {
+		return coalesceRequests;
+	}
+
+	/**
+	 * Should a GET share the connection and the mapped result of an identical GET that is already in flight. On by
+	 *  default, other request methods are never shared
+	 * @param coalesceRequests
+	 */
+	public void setCoalesceRequests(boolean coalesceRequests) {
+		this.coalesceRequests = coalesceRequests;
+	}
+
+	public boolean isAcceptCompressedResponse() {
+		return acceptCompressedResponse;
+	}
+
+	/**
+	 * Should the server be allowed to send the response gzip or deflate compressed. On by default
+	 * @param acceptCompressedResponse
+	 */
+	public void setAcceptCompressedResponse(boolean acceptCompressedResponse) {
+		this.acceptCompressedResponse = acceptCompressedResponse;
+	}
+
+	public boolean isCompressRequestBody() {
+		return compressRequestBody;
+	}
+
+	/**
+	 * Should a request body larger than the compression threshold be sent gzip compressed. The server has to
+	 *  accept a gzip Content-Encoding
+	 * @param compressRequestBody
+	 */
+	public void setCompressRequestBody(boolean compressRequestBody) {
+		this.compressRequestBody = compressRequestBody;
+	}
+
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * Set the size in bytes above which a request body is compressed
+	 * @param compressionThreshold
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	public RequestPriority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Set the scheduler lane an async request runs in. By default multipart uploads run in the bulk lane and
+	 *  other requests in the interactive lane
+	 * @param priority
+	 */
+	public void setPriority(RequestPriority priority) {
+		this.priority = priority;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Set the retry policy of the request instead of the one of the client
+	 * @param retryPolicy
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
 }
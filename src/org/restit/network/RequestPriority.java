@@ -0,0 +1,17 @@
+package org.restit.network;
+
+/**
+ * The lanes of the RequestScheduler
+ *
+ */
+public enum RequestPriority {
+	
+	/** Requests the user is waiting for, like the data of the current screen */
+	INTERACTIVE,
+	
+	/** Requests the user is not waiting for, like prefetching and syncing */
+	BACKGROUND,
+	
+	/** Large transfers, like uploads */
+	BULK
+}
@@ -0,0 +1,278 @@
+package org.restit.network;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs requests in priority lanes. Each lane has its own concurrency limit and runs its requests in the order they
+ *  were submitted, so bulk traffic queues behind other bulk traffic but never takes the threads of interactive
+ *  requests. Threads are shared between the lanes and stop when idle.
+ *
+ */
+public class RequestScheduler {
+
+	private static final int IDLE_SECONDS = 30;
+	
+	private final ThreadPoolExecutor threads;
+	private final Lane[] lanes;
+	
+	/**
+	 * Create a scheduler with 4 interactive, 2 background and 1 bulk request at a time
+	 */
+	public RequestScheduler()
+	{
+		this(4, 2, 1);
+	}
+	
+	/**
+	 * Create a scheduler
+	 * @param maxInteractive The most interactive requests running at a time
+	 * @param maxBackground The most background requests running at a time
+	 * @param maxBulk The most bulk requests running at a time
+	 */
+	public RequestScheduler(int maxInteractive, int maxBackground, int maxBulk)
+	{
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.threads = new ThreadPoolExecutor(0, Integer.MAX_VALUE, IDLE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "RestIt-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		this.lanes = new Lane[RequestPriority.values().length];
+		this.lanes[RequestPriority.INTERACTIVE.ordinal()] = new Lane(maxInteractive, Thread.NORM_PRIORITY);
+		this.lanes[RequestPriority.BACKGROUND.ordinal()] = new Lane(maxBackground, Thread.NORM_PRIORITY - 1);
+		this.lanes[RequestPriority.BULK.ordinal()] = new Lane(maxBulk, Thread.MIN_PRIORITY);
+	}
+	
+	/**
+	 * Get the executor of a lane, e.g. to run a ServerAsyncTask on
+	 * @param priority
+	 * @return
+	 */
+	public Executor getExecutor(RequestPriority priority)
+	{
+		return this.lanes[priority.ordinal()];
+	}
+	
+	/**
+	 * Run a task in a lane
+	 * @param task
+	 * @param priority
+	 */
+	public void execute(Runnable task, RequestPriority priority)
+	{
+		this.lanes[priority.ordinal()].execute(task);
+	}
+	
+	/**
+	 * Run a task in a lane
+	 * @param task
+	 * @param priority
+	 * @return A future of the result of the task
+	 */
+	public <T> Future<T> submit(Callable<T> task, RequestPriority priority)
+	{
+		FutureTask<T> future = new FutureTask<T>(task);
+		execute(future, priority);
+		return future;
+	}
+	
+	/**
+	 * Set the most requests of a lane that run at a time
+	 * @param priority
+	 * @param maxConcurrent
+	 */
+	public void setMaxConcurrent(RequestPriority priority, int maxConcurrent)
+	{
+		this.lanes[priority.ordinal()].setMaxConcurrent(maxConcurrent);
+	}
+	
+	public int getMaxConcurrent(RequestPriority priority)
+	{
+		return this.lanes[priority.ordinal()].getMaxConcurrent();
+	}
+	
+	/**
+	 * @return The number of requests of a lane that are running
+	 */
+	public int getRunningCount(RequestPriority priority)
+	{
+		return this.lanes[priority.ordinal()].getRunningCount();
+	}
+	
+	/**
+	 * @return The number of requests of a lane that wait for a free slot
+	 */
+	public int getQueuedCount(RequestPriority priority)
+	{
+		return this.lanes[priority.ordinal()].getQueuedCount();
+	}
+	
+	/**
+	 * Stop taking new requests, queued and running requests still finish
+	 */
+	public void shutdown()
+	{
+		//idle threads stop by themselves
+		for(Lane lane : this.lanes)
+		{
+			lane.drain();
+		}
+	}
+	
+	/**
+	 * A queue of tasks with a concurrency limit
+	 *
+	 */
+	private class Lane implements Executor {
+		
+		private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+		private final int threadPriority;
+		private int maxConcurrent;
+		private int running;
+		private boolean draining;
+		
+		Lane(int maxConcurrent, int threadPriority)
+		{
+			this.maxConcurrent = Math.max(1, maxConcurrent);
+			this.threadPriority = threadPriority;
+		}
+		
+		@Override
+		public void execute(Runnable task)
+		{
+			synchronized(this)
+			{
+				if(this.draining)
+					throw new RejectedExecutionException("The RestIt scheduler has been shut down");
+				
+				if(this.running >= this.maxConcurrent)
+				{
+					this.queue.add(task);
+					return;
+				}
+				
+				this.running++;
+			}
+			
+			start(task);
+		}
+		
+		private void start(final Runnable task)
+		{
+			try
+			{
+				threads.execute(new Runnable() {
+					@Override
+					public void run() {
+						Thread thread = Thread.currentThread();
+						Runnable current = task;
+						try
+						{
+							//run the queued tasks of the lane on this thread, instead of handing each to a new one
+							while(current != null)
+							{
+								thread.setPriority(threadPriority);
+								try
+								{
+									current.run();
+								} finally
+								{
+									thread.setPriority(Thread.NORM_PRIORITY);
+								}
+								current = next();
+							}
+						} finally
+						{
+							if(current != null)
+							{
+								finished();
+							}
+						}
+					}
+				});
+			} catch (RejectedExecutionException e)
+			{
+				synchronized(this)
+				{
+					this.running--;
+				}
+				throw e;
+			}
+		}
+		
+		/**
+		 * Take the next queued task for the slot of a finished one, or free the slot
+		 */
+		private Runnable next()
+		{
+			synchronized(this)
+			{
+				Runnable next = this.running <= this.maxConcurrent ? this.queue.poll() : null;
+				if(next == null)
+				{
+					this.running--;
+				}
+				return next;
+			}
+		}
+		
+		/**
+		 * Start the next queued task in the slot of a task that failed
+		 */
+		private void finished()
+		{
+			Runnable next = next();
+			if(next != null)
+			{
+				start(next);
+			}
+		}
+		
+		synchronized void setMaxConcurrent(int maxConcurrent)
+		{
+			this.maxConcurrent = Math.max(1, maxConcurrent);
+			
+			//start queued tasks in the new slots
+			while(this.running < this.maxConcurrent && !this.queue.isEmpty())
+			{
+				this.running++;
+				start(this.queue.poll());
+			}
+		}
+		
+		synchronized int getMaxConcurrent()
+		{
+			return this.maxConcurrent;
+		}
+		
+		synchronized int getRunningCount()
+		{
+			return this.running;
+		}
+		
+		synchronized int getQueuedCount()
+		{
+			return this.queue.size();
+		}
+		
+		synchronized void drain()
+		{
+			this.draining = true;
+		}
+	}
+}
@@ -1,18 +1,19 @@
 package org.restit.network;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.KeyStore;
 import java.security.SecureRandom;
 import java.security.cert.Certificate;
@@ -20,6 +21,9 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -30,9 +34,14 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.json.JSONObject;
 import org.restit.model.ServerError;
+import org.restit.network.cache.CacheEntry;
+import org.restit.network.cache.HttpDiskCache;
+import org.restit.network.cache.ObjectCache;
 import org.restit.network.insecure.NullHostNameVerifier;
 import org.restit.network.insecure.NullX509TrustManager;
+import org.restit.objectmapping.RestItIterator;
 import org.restit.objectmapping.RestItMapper;
+import org.restit.objectmapping.codec.RestItCodec;
 
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
@@ -45,7 +54,7 @@ public class RestIt {
 	private static final String SLASH_CHAR = "/";
 
 	
-	protected static RestItClient client;
+	protected static volatile RestItClient client;
 	private static ConnectivityManager restItConnectivityManager;
 	private static IRestItNetworkListener restItNetworkListener;
  
@@ -89,12 +98,21 @@ public class RestIt {
 	 */
 	private static RestItClient getClient()
 	{
-		if(client == null)
+		RestItClient result = client;
+		if(result == null)
 		{
-			client = new RestItClient();
+			synchronized (RestIt.class)
+			{
+				result = client;
+				if(result == null)
+				{
+					result = new RestItClient();
+					client = result;
+				}
+			}
 		}
 		
-		return client;
+		return result;
 	}
 	
 	
@@ -194,6 +212,173 @@ public class RestIt {
 		getClient().setHttpRequestTimeout( time * 1000 );
 	}
 	
+	/**
+	 * Keep connections open after each request so that later requests to the same host can reuse them
+	 * @param value
+	 */
+	public static void setConnectionReuse(boolean value)
+	{
+		getClient().setConnectionReuse( value );
+	}
+	
+	/**
+	 * Set the number of idle connections kept open per host when connections are reused. This is a process wide
+	 *  system property that the platform reads once, so set it before the first HTTP request of the app
+	 * @param max
+	 */
+	public static void setMaxConnectionsPerHost(int max)
+	{
+		getClient().setMaxConnectionsPerHost( max );
+	}
+	
+	/**
+	 * Set how long an idle connection is kept open when connections are reused. This is a process wide system
+	 *  property that the platform reads once, so set it before the first HTTP request of the app
+	 * @param time Time in seconds
+	 */
+	public static void setKeepAliveDuration(int time)
+	{
+		getClient().setKeepAliveDuration( time * 1000L );
+	}
+	
+	/**
+	 * Get the counters of new and reused connections. Reuse is estimated, see ConnectionStats
+	 * @return
+	 */
+	public static ConnectionStats getConnectionStats()
+	{
+		return getClient().getConnectionStats();
+	}
+
+	/**
+	 * Get the pool of I/O buffers shared by all requests, with its hit and miss counters
+	 * @return
+	 */
+	public static BufferPool getBufferPool()
+	{
+		return BufferPool.getShared();
+	}
+
+	/**
+	 * Cache GET responses on disk. Fresh responses are served without a request and stale responses are
+	 *  revalidated with their ETag or Last-Modified date
+	 * @param directory The directory to store the responses in, or null to stop caching
+	 * @param maxSize The maximum size of the cache in bytes, the least recently used responses are removed first
+	 */
+	public static void setResponseCache(File directory, long maxSize)
+	{
+		getClient().setResponseCache( directory != null ? new HttpDiskCache(directory, maxSize) : null );
+	}
+	
+	/**
+	 * Get the on-disk cache of GET responses
+	 * @return The cache or null if responses are not cached
+	 */
+	public static HttpDiskCache getResponseCache()
+	{
+		return getClient().getResponseCache();
+	}
+	
+	/**
+	 * Keep the mapped responses of GET requests in memory, so that a repeated GET returns the same object without
+	 *  a request. The cached objects are shared, treat them as read only
+	 * @param maxEntries The most responses to keep, the least recently used are removed first. 0 stops caching
+	 * @param timeToLive Time in seconds a response is kept, unless the request options give another time
+	 */
+	public static void setObjectCache(int maxEntries, int timeToLive)
+	{
+		getClient().setObjectCache( maxEntries > 0 ? new ObjectCache(maxEntries, timeToLive * 1000L) : null );
+	}
+	
+	/**
+	 * Get the in-memory cache of mapped GET responses
+	 * @return The cache or null if mapped responses are not cached
+	 */
+	public static ObjectCache getObjectCache()
+	{
+		return getClient().getObjectCache();
+	}
+	
+	/**
+	 * Remove the cached objects of a path and of every path below it
+	 * @param path The path to the REST service, not the full URL
+	 */
+	public static void invalidateCachedObjects(String path)
+	{
+		ObjectCache objectCache = getClient().getObjectCache();
+		if(objectCache != null)
+		{
+			objectCache.invalidate(getUrlWithPath(path));
+		}
+	}
+	
+	/**
+	 * Set an executor that runs every async request instead of the priority lanes of the RestIt scheduler
+	 * @param executor The executor or null to use the scheduler
+	 */
+	public static void setExecutor(ExecutorService executor)
+	{
+		getClient().setExecutor( executor );
+	}
+	
+	/**
+	 * Get the scheduler async requests run on. Other work, like a ServerAsyncTask, can run in its lanes too
+	 * @return
+	 */
+	public static RequestScheduler getScheduler()
+	{
+		return getClient().getScheduler();
+	}
+	
+	/**
+	 * Set the most async requests of a priority that run at a time
+	 * @param priority
+	 * @param max
+	 */
+	public static void setMaxConcurrentRequests(RequestPriority priority, int max)
+	{
+		getClient().getScheduler().setMaxConcurrent( priority, max );
+	}
+	
+	/**
+	 * Set the executor async callbacks are delivered on when the request does not pick one. By default callbacks
+	 *  run on the RestIt thread that made the request
+	 * @param executor
+	 */
+	public static void setCallbackExecutor(Executor executor)
+	{
+		getClient().setCallbackExecutor( executor );
+	}
+	
+	/**
+	 * Set the policy that decides when failed requests are made again. By default GET, PUT and DELETE requests are
+	 *  made up to 3 times
+	 * @param retryPolicy The policy or null to never retry
+	 */
+	public static void setRetryPolicy(RetryPolicy retryPolicy)
+	{
+		getClient().setRetryPolicy( retryPolicy );
+	}
+	
+	/**
+	 * Set the circuit breaker that fails requests to hosts that keep failing, instead of waiting for their timeout.
+	 *  Requests failed by it throw a ServerErrorException caused by a CircuitOpenException. There is none by default
+	 * @param circuitBreaker The circuit breaker or null to always connect
+	 */
+	public static void setCircuitBreaker(CircuitBreaker circuitBreaker)
+	{
+		getClient().setCircuitBreaker( circuitBreaker );
+	}
+	
+	/**
+	 * Get the circuit breaker, to configure it or listen to its state changes
+	 * @return The circuit breaker or null if requests always connect
+	 */
+	public static CircuitBreaker getCircuitBreaker()
+	{
+		return getClient().getCircuitBreaker();
+	}
+	
 	/**
 	 * Set a header value that will be included on every request. Useful for headers like authentication tokens or cookies
 	 * @param header The header name
@@ -221,6 +406,17 @@ public class RestIt {
 	 * @throws ServerErrorException 
 	 */
 	public static Object get(String path) throws ServerErrorException, NetworkNotAvailableException
+	{
+		return get(path, null);
+	}
+	
+	/**
+	 * Make a GET request to the given path
+	 * @param path The path to the REST service, not the full URL
+	 * @param requestOptions Additional options for the request
+	 * @throws ServerErrorException 
+	 */
+	public static Object get(String path, RequestOptions requestOptions) throws ServerErrorException, NetworkNotAvailableException
 	{
 		updateNetworkConnectivity();
 
@@ -232,62 +428,243 @@ public class RestIt {
 		}
 
 		String fullUrlValue = getUrlWithPath(path);
+		if(requestOptions != null && requestOptions.getOverrideBaseUrl() != null)
+		{
+			fullUrlValue = getUrlWithPath(requestOptions.getOverrideBaseUrl(), path);
+		}
 
-		HttpURLConnection connection = null;
-
-		try {
-
-			Log.d(LOG_TAG, "Starting GET request to: " + fullUrlValue);
+		final Map<String, String> requestHeaders = getRequestHeaders(requestOptions);
+		
+		// look for an already mapped response
+		ObjectCache objectCache = getClient().getObjectCache();
+		final long timeToLive = requestOptions != null ? requestOptions.getObjectCacheTimeToLive() : -1;
+		final RetryPolicy retryPolicy = getRetryPolicy(requestOptions);
+		if(objectCache != null && timeToLive != 0)
+		{
+			Object result = objectCache.get(fullUrlValue, requestHeaders);
+			if(result != null)
+			{
+				Log.d(LOG_TAG, "Found cached object for: " + fullUrlValue);
+				return result;
+			}
+		}
+		
+		if(requestOptions != null && !requestOptions.isCoalesceRequests())
+		{
+			return executeGet(fullUrlValue, requestHeaders, timeToLive, retryPolicy);
+		}
+		
+		// share the request with identical requests in flight
+		final String url = fullUrlValue;
+		return getClient().getRequestCoalescer().execute(RequestMethod.GET, fullUrlValue, requestHeaders, timeToLive, retryPolicy, new RequestCoalescer.Request() {
+			@Override
+			public Object execute() throws ServerErrorException, NetworkNotAvailableException {
+				return executeGet(url, requestHeaders, timeToLive, retryPolicy);
+			}
+		});
+	}
+	
+	/**
+	 * Make a GET request through the caches
+	 * @param fullUrlValue The full URL
+	 * @param requestHeaders The headers the connection will be configured with
+	 * @param timeToLive Time in milliseconds the mapped response is cached, -1 for the default of the cache
+	 * @param retryPolicy The retry policy of the request, may be null
+	 * @return
+	 * @throws ServerErrorException
+	 * @throws NetworkNotAvailableException
+	 */
+	private static Object executeGet(String fullUrlValue, Map<String, String> requestHeaders, long timeToLive, RetryPolicy retryPolicy) throws ServerErrorException, NetworkNotAvailableException
+	{
+		ObjectCache objectCache = getClient().getObjectCache();
+		for(int attempt = 1; ; attempt++)
+		{
+			HttpURLConnection connection = null;
 
-			URL fullUrl = new URL(fullUrlValue);
+			try {
+			
+				Log.d(LOG_TAG, "Starting GET request to: " + fullUrlValue);
 
-			// make server call
-			connection = getClient().getConnection(fullUrl);
+				URL fullUrl = new URL(fullUrlValue);
+			
+				// look for a stored response
+				HttpDiskCache cache = getClient().getResponseCache();
+				CacheEntry cached = cache != null ? cache.get(fullUrlValue, requestHeaders) : null;
+			
+				if(cached != null && cached.isFresh(requestHeaders))
+				{
+					try
+					{
+						Object result = readCachedResponse(cached);
+						cache.recordHit();
+					
+						Log.d(LOG_TAG, "Received cached response for: " + fullUrlValue);
+					
+						cacheObject(objectCache, fullUrlValue, requestHeaders, result, timeToLive);
+						return result;
+					} catch (FileNotFoundException e)
+					{
+						//removed from the cache in the meantime
+						cached = null;
+					}
+				}
 
-			String result = processConnection(connection);
+				// make server call
+				connection = getClient().getConnection(fullUrl, RequestMethod.GET, requestHeaders);
+				if(cached != null)
+				{
+					cached.addValidators(connection);
+				}
 
-			// convert to POJO
-			Object response = RestItMapper.parseResponse(result);
-			return response;
+				// get response from server and convert to POJO
+				Object result = processResponse(connection, cache, cached, requestHeaders, canRetry(retryPolicy, RequestMethod.GET, attempt));
+				cacheObject(objectCache, fullUrlValue, requestHeaders, result, timeToLive);
+				return result;
 
-		}
-		catch (ClientProtocolException e) {
-			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+			}
+			catch (ClientProtocolException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
 
-			throw new ServerErrorException(e);
+				throw new ServerErrorException(e);
 			
-		}catch (SocketTimeoutException e) {
+			}catch (SocketTimeoutException e) {
 			
-			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, RequestMethod.GET, attempt, e))
+					continue;
 			
-			sendNetworkStatusUpdate(RestItNetworkStatus.DISCONNECTED);
+				throw toDisconnectedException(e, attempt);
+			
+			} catch(SocketException e)
+			{
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, RequestMethod.GET, attempt, e))
+					continue;
 			
+				throw toDisconnectedException(e, attempt);
+			}
+			catch (IOException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, RequestMethod.GET, attempt, e))
+					continue;
+
+				// UnknownHostException thrown when there is no service - handled by network listener
+
+				// check for the following exceptions related to server connection errors:
+				// SocketException, ConnectException, SocketTimeoutException
 			
-		} catch(SocketException e)
+				throw toServerErrorException(e, attempt);
+
+			}
+			catch (ServerErrorException e) {
+				if(awaitRetry(retryPolicy, RequestMethod.GET, attempt, e))
+					continue;
+				
+				e.setAttemptCount(attempt);
+				throw e;
+			}
+			finally {
+				getClient().releaseConnection(connection);
+			}
+		}
+	}
+	
+	/**
+	 * Make a GET request to the given path and read the registered objects of the response one at a time. The
+	 *  connection stays open until the iterator has been read to the end or is closed, so close it when stopping early.
+	 * @param path The path to the REST service, not the full URL
+	 * @param clazz The registered class of the objects in the response
+	 * @return An iterator over the response objects or null if the response could not be mapped to the class
+	 * @throws ServerErrorException 
+	 */
+	public static <T> RestItIterator<T> getStream(String path, Class<T> clazz) throws ServerErrorException, NetworkNotAvailableException
+	{
+		updateNetworkConnectivity();
+
+		// make sure that base URL has been set
+		if (getClient().getBaseUrl() == null) {
+			Log.e(LOG_TAG,
+					"Could not make GET request because a base URL has not been set. Please use RestIt.setBaseUrl().");
+			return null;
+		}
+
+		String fullUrlValue = getUrlWithPath(path);
+		RetryPolicy retryPolicy = getRetryPolicy(null);
+
+		for(int attempt = 1; ; attempt++)
 		{
-			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+			HttpURLConnection connection = null;
+			RestItIterator<T> iterator = null;
+
+			try {
+
+				Log.d(LOG_TAG, "Starting streaming GET request to: " + fullUrlValue);
+
+				URL fullUrl = new URL(fullUrlValue);
+
+				// make server call
+				connection = getClient().getConnection(fullUrl);
+				connection = resolveConnection(connection);
 			
-			sendNetworkStatusUpdate(RestItNetworkStatus.DISCONNECTED);
+				int status = connection.getResponseCode();
+				if (status != HttpStatus.SC_OK) {
+					processErrorResponse(connection, status, canRetry(retryPolicy, RequestMethod.GET, attempt));
+					return null;
+				}
 			
-		}
-		catch (IOException e) {
-			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				// the iterator owns the connection from here on
+				iterator = RestItMapper.iterateResponse(NetworkUtil.decodeStream(connection, connection.getInputStream()), NetworkUtil.getCharset(connection), clazz, new ConnectionCloser(getClient(), connection));
+				return iterator;
 
-			// UnknownHostException thrown when there is no service - handled by network listener
+			}
+			catch (ClientProtocolException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
 
-			// check for the following exceptions related to server connection errors:
-			// SocketException, ConnectException, SocketTimeoutException
+				throw new ServerErrorException(e);
+			
+			}catch (SocketTimeoutException e) {
+			
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, RequestMethod.GET, attempt, e))
+					continue;
+			
+				throw toDisconnectedException(e, attempt);
+			
+			} catch(SocketException e)
+			{
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, RequestMethod.GET, attempt, e))
+					continue;
 			
-			throw new ServerErrorException(e);
+				throw toDisconnectedException(e, attempt);
+			}
+			catch (IOException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, RequestMethod.GET, attempt, e))
+					continue;
 
-		}
-		finally {
-			if (connection != null) {
-				connection.disconnect();
+				throw toServerErrorException(e, attempt);
+
+			}
+			catch (ServerErrorException e) {
+				if(awaitRetry(retryPolicy, RequestMethod.GET, attempt, e))
+					continue;
+				
+				e.setAttemptCount(attempt);
+				throw e;
+			}
+			finally {
+				if (iterator == null) {
+					getClient().releaseConnection(connection);
+				}
 			}
 		}
-		
-		return null;
 	}
 	
 	/**
@@ -307,48 +684,51 @@ public class RestIt {
 
 		String fullUrlValue = getUrlWithPath(path);
 		
-		HttpURLConnection connection = null;
+		RetryPolicy retryPolicy = getRetryPolicy(null);
+		for(int attempt = 1; ; attempt++)
+		{
+			HttpURLConnection connection = null;
 		
-		try {
+			try {
 			
-			Log.d(LOG_TAG, "Starting DELETE request to: " +fullUrlValue);
+				Log.d(LOG_TAG, "Starting DELETE request to: " +fullUrlValue);
 			
-			URL fullUrl = new URL(fullUrlValue);
+				URL fullUrl = new URL(fullUrlValue);
 			
-			//make server call
-			connection = getClient().getConnection(fullUrl, RequestMethod.DELETE);
+				//make server call
+				connection = getClient().getConnection(fullUrl, RequestMethod.DELETE);
 			
 
-			//get response from server
-			String result = processConnection(connection);
+				//get response from server and convert to POJO
+				Object result = processResponse(connection, canRetry(retryPolicy, RequestMethod.DELETE, attempt));
+				invalidateCache(fullUrlValue);
+				return result;
 			
-			//convert to POJO
-			Object response = RestItMapper.parseResponse(result);
-			return response;
-			
-		} catch (ClientProtocolException e) {
-			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+			} catch (ClientProtocolException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
 			
-			throw new ServerErrorException(e);
+				throw new ServerErrorException(e);
 			
-		} catch (IOException e) {
-			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
-			// UnknownHostException thrown when there is no service - handled by network listener
-
-			// check for the following exceptions related to server connection errors:
-			// SocketException, ConnectException, SocketTimeoutException
-
-			if (e instanceof SocketTimeoutException || e instanceof SocketException || e instanceof ConnectException) {
-				//sendNetworkStatusDisconnected();
-			}
+			} catch (IOException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, RequestMethod.DELETE, attempt, e))
+					continue;
+				
+				// UnknownHostException thrown when there is no service - handled by network listener
 			
-			throw new ServerErrorException(e);
+				throw toServerErrorException(e, attempt);
 			
-		} finally
-		{
-			if(connection != null)
+			} catch (ServerErrorException e) {
+				if(awaitRetry(retryPolicy, RequestMethod.DELETE, attempt, e))
+					continue;
+				
+				e.setAttemptCount(attempt);
+				throw e;
+				
+			} finally
 			{
-				connection.disconnect();
+				getClient().releaseConnection(connection);
 			}
 		}
 
@@ -391,6 +771,18 @@ public class RestIt {
 	 * @throws ServerErrorException 
 	 */
 	public static Object post(String path, byte[] postObjectBytes) throws ServerErrorException
+	{
+		return post(path, postObjectBytes, null);
+	}
+	
+	/**
+	 * Make a POST request to the given path
+	 * @param path The path to the REST service, not the full URL
+	 * @param postObjectBytes Take the string representation of the parameters and put them in byte format
+	 * @param requestOptions Additional options for the request
+	 * @throws ServerErrorException 
+	 */
+	public static Object post(String path, byte[] postObjectBytes, RequestOptions requestOptions) throws ServerErrorException
 	{
 		
 		//make sure that base URL has been set
@@ -401,57 +793,218 @@ public class RestIt {
 		}
 
 		String fullUrlValue = getUrlWithPath(path);
+		if(requestOptions != null && requestOptions.getOverrideBaseUrl() != null)
+		{
+			fullUrlValue = getUrlWithPath(requestOptions.getOverrideBaseUrl(), path);
+		}
 		
-		HttpURLConnection connection = null;
+		RetryPolicy retryPolicy = getRetryPolicy(requestOptions);
+		for(int attempt = 1; ; attempt++)
+		{
+			HttpURLConnection connection = null;
 		
-		try {
+			try {
 			
-			Log.d(LOG_TAG, "Starting POST request to: " +fullUrlValue);
+				Log.d(LOG_TAG, "Starting POST request to: " +fullUrlValue);
 			
-			URL fullUrl = new URL(fullUrlValue);
+				URL fullUrl = new URL(fullUrlValue);
 			
-			//make server call
-			connection = getClient().getConnection(fullUrl, RequestMethod.POST);
+				//make server call
+				connection = getClient().getConnection(fullUrl, RequestMethod.POST, getRequestHeaders(requestOptions));
 			
-			if(postObjectBytes != null)
-			{
-				//attach post objects
-				OutputStream outputStream = new BufferedOutputStream(connection.getOutputStream());
-				outputStream.write(postObjectBytes);
-				outputStream.flush();
-				outputStream.close();
-			}
+				if(postObjectBytes != null)
+				{
+					//attach post objects
+					connection.setDoOutput(true);
+					//written in one piece, no buffering needed
+					OutputStream outputStream = openRequestStream(connection, requestOptions);
+					outputStream.write(postObjectBytes);
+					outputStream.close();
+				}
 
-			//get response from server
-			String result = processConnection(connection);
+				//get response from server and convert to POJO
+				Object result = processResponse(connection, canRetry(retryPolicy, RequestMethod.POST, attempt));
+				invalidateCache(fullUrlValue);
+				return result;
 			
-			//convert to POJO
-			Object response = RestItMapper.parseResponse(result);
-			return response;
+			} catch (ClientProtocolException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
 			
-		} catch (ClientProtocolException e) {
-			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				throw new ServerErrorException(e);
 			
-			throw new ServerErrorException(e);
+			} catch (IOException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, RequestMethod.POST, attempt, e))
+					continue;
+				
+				// UnknownHostException thrown when there is no service - handled by network listener
 			
-		} catch (IOException e) {
-			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
-			// UnknownHostException thrown when there is no service - handled by network listener
-
-			// check for the following exceptions related to server connection errors:
-			// SocketException, ConnectException, SocketTimeoutException
-
-			if (e instanceof SocketTimeoutException || e instanceof SocketException || e instanceof ConnectException) {
-				//sendNetworkStatusDisconnected();
+				throw toServerErrorException(e, attempt);
+			
+			} catch (ServerErrorException e) {
+				if(awaitRetry(retryPolicy, RequestMethod.POST, attempt, e))
+					continue;
+				
+				e.setAttemptCount(attempt);
+				throw e;
+				
+			} finally
+			{
+				getClient().releaseConnection(connection);
 			}
+		}
+	}
+	
+	/**
+	 * Make a POST request to the given path with a registered object as body. The object is written under its
+	 *  registered json key straight to the connection, as JSON unless the request options pick another codec
+	 * @param path The path to the REST service, not the full URL
+	 * @param object The object to post. Its class must be registered with RestItMapper
+	 * @throws ServerErrorException 
+	 */
+	public static Object post(String path, Object object) throws ServerErrorException
+	{
+		return sendObject(path, object, RequestMethod.POST, null);
+	}
+	
+	/**
+	 * Make a POST request to the given path with a registered object as body. The object is written under its
+	 *  registered json key straight to the connection, as JSON unless the request options pick another codec
+	 * @param path The path to the REST service, not the full URL
+	 * @param object The object to post. Its class must be registered with RestItMapper
+	 * @param requestOptions Additional options for the request
+	 * @throws ServerErrorException 
+	 */
+	public static Object post(String path, Object object, RequestOptions requestOptions) throws ServerErrorException
+	{
+		return sendObject(path, object, RequestMethod.POST, requestOptions);
+	}
+	
+	/**
+	 * Make a PUT request to the given path with a registered object as body. The object is written under its
+	 *  registered json key straight to the connection, as JSON unless the request options pick another codec
+	 * @param path The path to the REST service, not the full URL
+	 * @param object The object to put. Its class must be registered with RestItMapper
+	 * @throws ServerErrorException 
+	 */
+	public static Object put(String path, Object object) throws ServerErrorException
+	{
+		return sendObject(path, object, RequestMethod.PUT, null);
+	}
+	
+	/**
+	 * Make a PUT request to the given path with a registered object as body. The object is written under its
+	 *  registered json key straight to the connection, as JSON unless the request options pick another codec
+	 * @param path The path to the REST service, not the full URL
+	 * @param object The object to put. Its class must be registered with RestItMapper
+	 * @param requestOptions Additional options for the request
+	 * @throws ServerErrorException 
+	 */
+	public static Object put(String path, Object object, RequestOptions requestOptions) throws ServerErrorException
+	{
+		return sendObject(path, object, RequestMethod.PUT, requestOptions);
+	}
+	
+	/**
+	 * Send a registered object as request body
+	 * @param path The path to the REST service, not the full URL
+	 * @param object The object to send
+	 * @param requestMethod POST or PUT
+	 * @param requestOptions Additional options for the request, may be null
+	 * @return
+	 * @throws ServerErrorException
+	 */
+	private static Object sendObject(String path, Object object, String requestMethod, RequestOptions requestOptions) throws ServerErrorException
+	{
+		//make sure that base URL has been set
+		if(getClient().getBaseUrl() == null)
+		{
+			Log.e(LOG_TAG, "Could not make " + requestMethod + " request because a base URL has not been set. Please use RestIt.setBaseUrl().");
+			return null;
+		}
+		
+		if(object == null || RestItMapper.getJsonName(object.getClass()) == null)
+		{
+			throw new ServerErrorException("Could not make " + requestMethod + " request because no json key is registered for " + (object != null ? object.getClass().getName() : null));
+		}
+
+		String fullUrlValue = getUrlWithPath(path);
+		if(requestOptions != null && requestOptions.getOverrideBaseUrl() != null)
+		{
+			fullUrlValue = getUrlWithPath(requestOptions.getOverrideBaseUrl(), path);
+		}
+		
+		RetryPolicy retryPolicy = getRetryPolicy(requestOptions);
+		for(int attempt = 1; ; attempt++)
+		{
+			HttpURLConnection connection = null;
+		
+			try {
 			
-			throw new ServerErrorException(e);
+				Log.d(LOG_TAG, "Starting " + requestMethod + " request to: " +fullUrlValue);
 			
-		} finally
-		{
-			if(connection != null)
+				URL fullUrl = new URL(fullUrlValue);
+			
+				//make server call
+				connection = getClient().getConnection(fullUrl, requestMethod, getRequestHeaders(requestOptions));
+				connection.setDoOutput(true);
+				//pick the wire format of the body
+				RestItCodec codec = RestItMapper.getCodec(requestOptions != null ? requestOptions.getBodyContentType() : null);
+				String contentType = codec.getContentTypes()[0];
+				if(codec.isTextual())
+				{
+					//binary formats have no charset
+					contentType += ";charset=" + RestItClient.CHARSET;
+				}
+				connection.setRequestProperty("Content-Type", contentType);
+			
+				//stream the body instead of letting the connection buffer it
+				if(requestOptions == null || requestOptions.isChunckedStreamingMode())
+				{
+					connection.setChunkedStreamingMode(0);
+				}
+			
+				//write the object
+				OutputStream outputStream = openRequestStream(connection, requestOptions);
+				try
+				{
+					codec.encode(object, outputStream, RestItClient.CHARSET);
+				} finally
+				{
+					outputStream.close();
+				}
+
+				//get response from server and convert to POJO
+				Object result = processResponse(connection, canRetry(retryPolicy, requestMethod, attempt));
+				invalidateCache(fullUrlValue);
+				return result;
+			
+			} catch (ClientProtocolException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+			
+				throw new ServerErrorException(e);
+			
+			} catch (IOException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, requestMethod, attempt, e))
+					continue;
+				
+				// UnknownHostException thrown when there is no service - handled by network listener
+			
+				throw toServerErrorException(e, attempt);
+			
+			} catch (ServerErrorException e) {
+				if(awaitRetry(retryPolicy, requestMethod, attempt, e))
+					continue;
+				
+				e.setAttemptCount(attempt);
+				throw e;
+				
+			} finally
 			{
-				connection.disconnect();
+				getClient().releaseConnection(connection);
 			}
 		}
 	}
@@ -485,6 +1038,158 @@ public class RestIt {
 	 * @throws ServerErrorException
 	 */
 	public static Object multipartPostObject(String path, byte[] postObjectBytes, String formElementName, String fileName, Map<String, String> additionalParameters, ProgressListener progressListener, RequestOptions requestOptions) throws ServerErrorException
+	{
+		return multipartPost(path, postObjectBytes != null ? UploadSource.of(postObjectBytes) : null, formElementName, fileName, additionalParameters, progressListener, requestOptions);
+	}
+	
+	/**
+	 * Make POST request to given path using a multipart form, streaming the file from disk
+	 * @param path Url path not including server name
+	 * @param file The file to post
+	 * @param formElementName The name of element in the HTML form
+	 * @param fileName The file name sent to the server, or null for the name of the file
+	 * @param additionalParameters A map of additional form field values to add on the request
+	 * @param progressListener A listener that will respond to upload progress
+	 * @return
+	 * @throws ServerErrorException
+	 */
+	public static Object multipartPostObject(String path, File file, String formElementName, String fileName, Map<String, String> additionalParameters, ProgressListener progressListener) throws ServerErrorException
+	{
+		return multipartPostObject(path, file, formElementName, fileName, additionalParameters, progressListener, null);
+	}
+	
+	/**
+	 * Make POST request to given path using a multipart form, streaming the file from disk
+	 * @param path Url path not including server name
+	 * @param file The file to post
+	 * @param formElementName The name of element in the HTML form
+	 * @param fileName The file name sent to the server, or null for the name of the file
+	 * @param additionalParameters A map of additional form field values to add on the request
+	 * @param progressListener A listener that will respond to upload progress
+	 * @param requestOptions Additional options for the request
+	 * @return
+	 * @throws ServerErrorException
+	 */
+	public static Object multipartPostObject(String path, File file, String formElementName, String fileName, Map<String, String> additionalParameters, ProgressListener progressListener, RequestOptions requestOptions) throws ServerErrorException
+	{
+		return multipartPost(path, file != null ? UploadSource.of(file) : null, formElementName, fileName != null || file == null ? fileName : file.getName(), additionalParameters, progressListener, requestOptions);
+	}
+	
+	/**
+	 * Make POST request to given path using a multipart form, streaming the file from a channel. The channel is
+	 *  read from its position to its end and left open
+	 * @param path Url path not including server name
+	 * @param fileChannel The channel of the file to post
+	 * @param formElementName The name of element in the HTML form
+	 * @param fileName The file name of the file
+	 * @param additionalParameters A map of additional form field values to add on the request
+	 * @param progressListener A listener that will respond to upload progress
+	 * @param requestOptions Additional options for the request
+	 * @return
+	 * @throws ServerErrorException
+	 */
+	public static Object multipartPostObject(String path, FileChannel fileChannel, String formElementName, String fileName, Map<String, String> additionalParameters, ProgressListener progressListener, RequestOptions requestOptions) throws ServerErrorException
+	{
+		UploadSource source = null;
+		if(fileChannel != null)
+		{
+			try
+			{
+				source = UploadSource.of(fileChannel);
+			} catch (IOException e)
+			{
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				throw new ServerErrorException(e);
+			}
+		}
+		
+		return multipartPost(path, source, formElementName, fileName, additionalParameters, progressListener, requestOptions);
+	}
+	
+	/**
+	 * Make POST request to given path using a multipart form, streaming the file from a stream. The stream is
+	 *  read to its end and closed
+	 * @param path Url path not including server name
+	 * @param inputStream The content of the file to post
+	 * @param length The number of bytes in the stream, or -1 if it is not known
+	 * @param formElementName The name of element in the HTML form
+	 * @param fileName The file name of the file
+	 * @param additionalParameters A map of additional form field values to add on the request
+	 * @param progressListener A listener that will respond to upload progress
+	 * @param requestOptions Additional options for the request
+	 * @return
+	 * @throws ServerErrorException
+	 */
+	public static Object multipartPostObject(String path, InputStream inputStream, long length, String formElementName, String fileName, Map<String, String> additionalParameters, ProgressListener progressListener, RequestOptions requestOptions) throws ServerErrorException
+	{
+		return multipartPost(path, inputStream != null ? UploadSource.of(inputStream, length) : null, formElementName, fileName, additionalParameters, progressListener, requestOptions);
+	}
+	
+	/**
+	 * Make POST request to given path using a multipart form with one file
+	 * @param path Url path not including server name
+	 * @param source The content of the file, or null to only post the form fields
+	 * @param formElementName The name of element in the HTML form
+	 * @param fileName The file name of the file
+	 * @param additionalParameters A map of additional form field values to add on the request
+	 * @param progressListener A listener that will respond to upload progress
+	 * @param requestOptions Additional options for the request
+	 * @return
+	 * @throws ServerErrorException
+	 */
+	private static Object multipartPost(String path, UploadSource source, String formElementName, String fileName, Map<String, String> additionalParameters, ProgressListener progressListener, RequestOptions requestOptions) throws ServerErrorException
+	{
+		//build the form
+		MultipartForm form = new MultipartForm();
+		if(additionalParameters != null && additionalParameters.keySet().size() > 0)
+		{
+			Iterator<String> it = additionalParameters.keySet().iterator();
+			while(it.hasNext())
+			{
+				String fieldName = it.next();
+				if(fieldName != null)
+				{
+					String value = additionalParameters.get(fieldName);
+					if(value != null)
+					{
+						//add form field to upload form
+						form.addField(fieldName, value);
+					}
+				}
+			}
+		}
+		
+		if(source != null)
+		{
+			form.addFile(formElementName, fileName, null, source);
+		}
+		
+		return multipartPost(path, form, progressListener, requestOptions);
+	}
+	
+	/**
+	 * Make POST request to given path with a multipart form of any number of fields and files
+	 * @param path Url path not including server name
+	 * @param form The form to post
+	 * @param progressListener A listener that will respond to the upload progress of all the files together
+	 * @return
+	 * @throws ServerErrorException
+	 */
+	public static Object multipartPost(String path, MultipartForm form, ProgressListener progressListener) throws ServerErrorException
+	{
+		return multipartPost(path, form, progressListener, null);
+	}
+	
+	/**
+	 * Make POST request to given path with a multipart form of any number of fields and files
+	 * @param path Url path not including server name
+	 * @param form The form to post
+	 * @param progressListener A listener that will respond to the upload progress of all the files together
+	 * @param requestOptions Additional options for the request
+	 * @return
+	 * @throws ServerErrorException
+	 */
+	public static Object multipartPost(String path, MultipartForm form, ProgressListener progressListener, RequestOptions requestOptions) throws ServerErrorException
 	{
 		//make sure that base URL has been set
 		if(getClient().getBaseUrl() == null)
@@ -499,156 +1204,844 @@ public class RestIt {
 			fullUrlValue = getUrlWithPath(requestOptions.getOverrideBaseUrl(), path);
 		}
 		
-		HttpURLConnection connection = null;
+		//a body that can not be read again is sent once
+		RetryPolicy retryPolicy = form.isRepeatable() ? getRetryPolicy(requestOptions) : null;
+		for(int attempt = 1; ; attempt++)
+		{
+			HttpURLConnection connection = null;
 		
-		try {
+			try {
 			
-			Log.d(LOG_TAG, "Starting multipart POST request to: " +fullUrlValue);
+				Log.d(LOG_TAG, "Starting multipart POST request to: " +fullUrlValue);
 			
-			URL fullUrl = new URL(fullUrlValue);
+				URL fullUrl = new URL(fullUrlValue);
 			
-			//make server call
-			connection = getClient().getConnection(fullUrl, RequestMethod.POST);
-			connection.setReadTimeout(10000);
-			connection.setConnectTimeout(60000); //60 seconds to complete an upload 
-			connection.setUseCaches(false);
-			connection.setDoInput(true);
-			connection.setDoOutput(true);
+				//make server call
+				connection = getClient().getConnection(fullUrl, RequestMethod.POST, getRequestHeaders(requestOptions));
+				connection.setReadTimeout(10000);
+				connection.setConnectTimeout(60000); //60 seconds to complete an upload 
+				connection.setUseCaches(false);
+				connection.setDoInput(true);
+				connection.setDoOutput(true);
 
-			//see if we are streaming the upload
-			if(requestOptions == null || requestOptions.isChunckedStreamingMode())
-			{
-				connection.setChunkedStreamingMode(2048);
-			}
-			
-		    String boundry = "z6fQbdm2TTgLwPQj9u1HjAM25z9AJuGSx7WG9dnD";
-		    		
-			connection.setRequestProperty("Connection", "Keep-Alive");
-			connection.setRequestProperty("Cache-Control", "no-cache");
-			connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundry);
-			
-			//attach post objects
-			DataOutputStream outputStream = new DataOutputStream(connection.getOutputStream());
-			
-			//add form fields
-			if(additionalParameters != null && additionalParameters.keySet().size() > 0)
-			{
-				Iterator<String> it = additionalParameters.keySet().iterator();
-				while(it.hasNext())
+				//see if we are streaming the upload
+				boolean compressed = requestOptions != null && requestOptions.isCompressRequestBody();
+				long contentLength = form.getContentLength();
+				if(requestOptions == null || requestOptions.isChunckedStreamingMode())
 				{
-					String fieldName = it.next();
-					if(fieldName != null)
+					if(contentLength >= 0 && contentLength <= Integer.MAX_VALUE && !compressed)
 					{
-						String value = additionalParameters.get(fieldName);
-						if(value != null)
-						{
-							//add form field to upload form
-							outputStream.writeBytes("--" + boundry + "\r\n" + "Content-Disposition: form-data; name=\"" + fieldName + "\"\r\nContent-Type: text/plain; charset=UTF-8\r\n\r\n"+value+"\r\n");
-						}
+						//the length is known, no chunk framing needed
+						connection.setFixedLengthStreamingMode((int) contentLength);
+					} else
+					{
+						connection.setChunkedStreamingMode(2048);
 					}
 				}
-			}
-			
-			//attach file
-			if(postObjectBytes != null)
-			{	
-			    //build the request body
-				outputStream.writeBytes("--" + boundry + "\r\n" + "Content-Disposition: form-data; name=\"" + formElementName + "\"; filename=\"" + fileName + "\"\r\n\r\n");
-    
-
-			    //object upload content size
-			    long totalUploadSize = postObjectBytes.length;
-			    
-				//we have to manually process the stream in order to correctly update the progress listener
-				byte[] buffer = new byte[2048];
-		        long totalBytes = 0;
-		        int bytesRead = 0;
-		        
-		        InputStream inputStream = new ByteArrayInputStream(postObjectBytes);
-		        
-		        while ((bytesRead = inputStream.read(buffer)) > -1) {
-		            totalBytes += bytesRead;
-		            outputStream.write(buffer, 0, bytesRead);
-		            
-		            if(progressListener != null){
-		            	progressListener.transferred(totalBytes, totalUploadSize);
-		            }
-		        }
-		        
-		        outputStream.writeBytes("\r\n--" + boundry + "--\r\n");
-				
-			}
+		    		
+				connection.setRequestProperty("Connection", "Keep-Alive");
+				connection.setRequestProperty("Cache-Control", "no-cache");
+				connection.setRequestProperty("Content-Type", form.getContentType());
 			
-			outputStream.flush();
-			outputStream.close();
+				//attach post objects
+				OutputStream outputStream = openRequestStream(connection, requestOptions);
+				try
+				{
+					form.writeTo(outputStream, progressListener);
+				} finally
+				{
+					outputStream.close();
+				}
 
-			//get response from server
-			String result = processConnection(connection);
+				//get response from server and convert to POJO
+				Object result = processResponse(connection, canRetry(retryPolicy, RequestMethod.POST, attempt));
+				invalidateCache(fullUrlValue);
+				return result;
 			
-			//convert to POJO
-			Object response = RestItMapper.parseResponse(result);
-			return response;
-			
-		} catch (ClientProtocolException e) {
-			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+			} catch (ClientProtocolException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
 			
-			throw new ServerErrorException(e);
+				throw new ServerErrorException(e);
 			
-		} catch (IOException e) {
-			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
-			// UnknownHostException thrown when there is no service - handled by network listener
-
-			// check for the following exceptions related to server connection errors:
-			// SocketException, ConnectException, SocketTimeoutException
-
-			if (e instanceof SocketTimeoutException || e instanceof SocketException || e instanceof ConnectException) {
-				//sendNetworkStatusDisconnected();
-			}
+			} catch (IOException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, RequestMethod.POST, attempt, e))
+					continue;
+				
+				// UnknownHostException thrown when there is no service - handled by network listener
 			
-			throw new ServerErrorException(e);
+				throw toServerErrorException(e, attempt);
 			
-		} finally
-		{
-			if(connection != null)
+			} catch (ServerErrorException e) {
+				if(awaitRetry(retryPolicy, RequestMethod.POST, attempt, e))
+					continue;
+				
+				e.setAttemptCount(attempt);
+				throw e;
+				
+			} finally
 			{
-				connection.disconnect();
+				getClient().releaseConnection(connection);
 			}
 		}
 	}
 	
 	/**
-	 * Handle core processing, like redirects
-	 * @param connection
+	 * Keep the journals of resumable uploads in a directory, so that an interrupted upload continues where it
+	 *  stopped after the app is restarted
+	 * @param directory The directory or null to keep the offsets in memory only
+	 */
+	public static void setUploadJournalDirectory(File directory)
+	{
+		getClient().setUploadJournalDirectory(directory);
+	}
+	
+	/**
+	 * Create an upload of a file in ranged chunks to the given path, which continues from the last confirmed chunk
+	 *  after a network failure
+	 * @param path Url path not including server name, the upload URL handed out by the server
+	 * @param file The file to upload
+	 * @return The upload, started with ResumableUpload.upload()
+	 */
+	public static ResumableUpload createResumableUpload(String path, File file)
+	{
+		return new ResumableUpload(getClient(), getUrlWithPath(path), file, getClient().getUploadJournalDirectory());
+	}
+	
+	/**
+	 * Upload a file in ranged chunks to the given path, continuing an earlier upload of it when there is one
+	 * @param path Url path not including server name, the upload URL handed out by the server
+	 * @param file The file to upload
+	 * @param contentType The Content-Type of the file
+	 * @param progressListener A listener that will respond to upload progress, including the bytes of earlier attempts
 	 * @return
-	 * @throws ServerErrorException 
+	 * @throws ServerErrorException
 	 */
-	protected static String processConnection(HttpURLConnection connection) throws IOException, ServerErrorException
+	public static Object resumableUpload(String path, File file, String contentType, ProgressListener progressListener) throws ServerErrorException
 	{
-		int status = ((HttpURLConnection) connection).getResponseCode();
+		//make sure that base URL has been set
+		if(getClient().getBaseUrl() == null)
+		{
+			Log.e(LOG_TAG, "Could not make resumable upload because a base URL has not been set. Please use RestIt.setBaseUrl().");
+			return null;
+		}
 		
-		//figure out the response
-		if (status == HttpStatus.SC_OK) {
-			//200 OK
-            InputStream istream = new BufferedInputStream(connection.getInputStream());
-            
-            //parse
-            String result = NetworkUtil.parseStream(istream);
-            
-            Log.d(LOG_TAG, "Received response: " + result);
-            
-            //close connection
-            istream.close();
-            
-            //execute callback to originating code
-            return result;
-            
-		} else if(status == HttpURLConnection.HTTP_NOT_FOUND )
+		ResumableUpload upload = createResumableUpload(path, file);
+		if(contentType != null)
 		{
-			//404, URL not found
-			String errorMessage = "The requested URL '"+connection.getURL().toString()+"' does not exist";
-			Log.e(LOG_TAG, errorMessage);
-			
-			ServerError error = new ServerError(errorMessage);
+			upload.setContentType(contentType);
+		}
+		
+		Log.d(LOG_TAG, "Starting resumable upload to: " + getUrlWithPath(path));
+		
+		Object result = upload.upload(progressListener);
+		invalidateCache(getUrlWithPath(path));
+		return result;
+	}
+	
+	/**
+	 * Download the body of the given path to a file. The body is streamed to a ".part" file next to the file, which
+	 *  is renamed when the download is complete. A ".part" file left by an interrupted download is continued with a
+	 *  Range request
+	 * @param path The path to the REST service, not the full URL
+	 * @param file The file to write the body to
+	 * @param progressListener A listener that will respond to download progress, including the bytes of earlier attempts
+	 * @return The file or null if the download was not made
+	 * @throws ServerErrorException
+	 */
+	public static File download(String path, File file, ProgressListener progressListener) throws ServerErrorException
+	{
+		return download(path, file, progressListener, null);
+	}
+	
+	/**
+	 * Download the body of the given path to a file. The body is streamed to a ".part" file next to the file, which
+	 *  is renamed when the download is complete. A ".part" file left by an interrupted download is continued with a
+	 *  Range request
+	 * @param path The path to the REST service, not the full URL
+	 * @param file The file to write the body to
+	 * @param progressListener A listener that will respond to download progress, including the bytes of earlier attempts
+	 * @param requestOptions Additional options for the request
+	 * @return The file or null if the download was not made
+	 * @throws ServerErrorException
+	 */
+	public static File download(String path, File file, ProgressListener progressListener, RequestOptions requestOptions) throws ServerErrorException
+	{
+		return download(path, DownloadTarget.of(file), progressListener, requestOptions, true) >= 0 ? file : null;
+	}
+	
+	/**
+	 * Download the body of the given path to a channel
+	 * @param path The path to the REST service, not the full URL
+	 * @param channel The channel to write the body to, it is left open
+	 * @param progressListener A listener that will respond to download progress
+	 * @param requestOptions Additional options for the request
+	 * @return The number of bytes written or -1 if the download was not made
+	 * @throws ServerErrorException
+	 */
+	public static long download(String path, WritableByteChannel channel, ProgressListener progressListener, RequestOptions requestOptions) throws ServerErrorException
+	{
+		return download(path, DownloadTarget.of(channel), progressListener, requestOptions, false);
+	}
+	
+	/**
+	 * Download the body of the given path into a buffer, from its position up to its limit. The download fails
+	 *  when the body does not fit
+	 * @param path The path to the REST service, not the full URL
+	 * @param buffer The buffer to put the body in, its position is moved past the body
+	 * @param progressListener A listener that will respond to download progress
+	 * @param requestOptions Additional options for the request
+	 * @return The number of bytes put in the buffer or -1 if the download was not made
+	 * @throws ServerErrorException
+	 */
+	public static long download(String path, ByteBuffer buffer, ProgressListener progressListener, RequestOptions requestOptions) throws ServerErrorException
+	{
+		return download(path, DownloadTarget.of(buffer), progressListener, requestOptions, false);
+	}
+	
+	/**
+	 * Make a GET request and stream the body to a download target
+	 * @param path The path to the REST service, not the full URL
+	 * @param target Where to write the body
+	 * @param progressListener A listener that will respond to download progress, may be null
+	 * @param requestOptions Additional options for the request, may be null
+	 * @param resume Continue from the offset of the target with a Range request
+	 * @return The size of the downloaded body or -1 if the download was not made
+	 * @throws ServerErrorException
+	 */
+	private static long download(String path, DownloadTarget target, ProgressListener progressListener, RequestOptions requestOptions, boolean resume) throws ServerErrorException
+	{
+		//make sure that base URL has been set
+		if(getClient().getBaseUrl() == null)
+		{
+			Log.e(LOG_TAG, "Could not make download because a base URL has not been set. Please use RestIt.setBaseUrl().");
+			return -1;
+		}
+
+		String fullUrlValue = getUrlWithPath(path);
+		if(requestOptions != null && requestOptions.getOverrideBaseUrl() != null)
+		{
+			fullUrlValue = getUrlWithPath(requestOptions.getOverrideBaseUrl(), path);
+		}
+		
+		//a body that can not be read again is sent once
+		RetryPolicy retryPolicy = target.isRepeatable() ? getRetryPolicy(requestOptions) : null;
+		for(int attempt = 1; ; attempt++)
+		{
+			HttpURLConnection connection = null;
+		
+			try {
+			
+				Log.d(LOG_TAG, "Starting download from: " + fullUrlValue);
+			
+				long offset = resume ? target.getOffset() : 0;
+			
+				//ranges count the bytes as sent, so ask for the body without a content coding
+				Map<String, String> requestHeaders = getRequestHeaders(requestOptions);
+				requestHeaders.put("Accept-Encoding", "identity");
+				if(offset > 0)
+				{
+					requestHeaders.put("Range", "bytes=" + offset + "-");
+				}
+			
+				//make server call
+				connection = getClient().getConnection(new URL(fullUrlValue), RequestMethod.GET, requestHeaders);
+				connection.setUseCaches(false);
+				connection = resolveConnection(connection);
+				int status = connection.getResponseCode();
+			
+				long totalSize;
+				if(status == HttpURLConnection.HTTP_PARTIAL && offset > 0)
+				{
+					//206 Partial Content, the rest of an earlier attempt
+					long[] range = parseContentRange(connection.getHeaderField("Content-Range"));
+					if(range == null || range[0] != offset)
+						throw new IOException("The server sent the range " + connection.getHeaderField("Content-Range") + " instead of the bytes from " + offset);
+				
+					totalSize = range[2];
+					Log.d(LOG_TAG, "Resuming download of " + fullUrlValue + " at " + offset);
+				
+				} else if(status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && offset > 0)
+				{
+					//416, nothing is left after the offset
+					long[] range = parseContentRange(connection.getHeaderField("Content-Range"));
+					getClient().completeResponse(connection, connection.getErrorStream());
+				
+					if(range != null && range[2] == offset)
+					{
+						target.complete();
+						if(progressListener != null)
+						{
+							progressListener.transferred(offset, offset);
+						}
+						return offset;
+					}
+				
+					//the earlier attempt does not belong to this body, start over
+					getClient().releaseConnection(connection);
+					connection = null;
+					return download(path, target, progressListener, requestOptions, false);
+				
+				} else if(status == HttpStatus.SC_OK)
+				{
+					//200 OK, the whole body
+					offset = 0;
+					totalSize = connection.getContentEncoding() == null ? getContentLength(connection) : -1;
+				
+				} else
+				{
+					processErrorResponse(connection, status, true);
+				
+					ServerError error = new ServerError("The download from " + fullUrlValue + " failed with status " + status);
+					error.setServerCode(status);
+					throw new ServerErrorException(error);
+				}
+			
+				//stream the body to the target
+				InputStream istream = NetworkUtil.decodeStream(connection, connection.getInputStream());
+				long size;
+				try
+				{
+					WritableByteChannel channel = target.openChannel(offset, totalSize >= 0 ? totalSize - offset : -1);
+					try
+					{
+						size = offset + NetworkUtil.copy(Channels.newChannel(istream), channel, progressListener, offset, totalSize);
+					} finally
+					{
+						if(target.isOwnChannel())
+						{
+							channel.close();
+						}
+					}
+				} finally
+				{
+					getClient().completeResponse(connection, istream);
+				}
+			
+				if(totalSize >= 0 && size != totalSize)
+					throw new IOException("The download from " + fullUrlValue + " ended after " + size + " of " + totalSize + " bytes");
+			
+				target.complete();
+			
+				Log.d(LOG_TAG, "Downloaded " + size + " bytes from: " + fullUrlValue);
+			
+				return size;
+			
+			} catch (ClientProtocolException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+			
+				throw new ServerErrorException(e);
+			
+			} catch (IOException e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				getClient().recordFailure(connection, e);
+				if(awaitRetry(retryPolicy, RequestMethod.GET, attempt, e))
+					continue;
+				
+				// UnknownHostException thrown when there is no service - handled by network listener
+			
+				throw toServerErrorException(e, attempt);
+			
+			} catch (ServerErrorException e) {
+				if(awaitRetry(retryPolicy, RequestMethod.GET, attempt, e))
+					continue;
+				
+				e.setAttemptCount(attempt);
+				throw e;
+				
+			} finally
+			{
+				getClient().releaseConnection(connection);
+			}
+		}
+	}
+	
+	/**
+	 * Read a Content-Range header like "bytes 100-199/1000" or "bytes *&#47;1000"
+	 * @param contentRange The header value, may be null
+	 * @return The first byte, the last byte and the total size, -1 where the header has "*", or null if the header can not be read
+	 */
+	private static long[] parseContentRange(String contentRange)
+	{
+		if(contentRange == null || !contentRange.trim().startsWith("bytes "))
+			return null;
+		
+		String value = contentRange.trim().substring(6).trim();
+		int slash = value.indexOf('/');
+		if(slash < 0)
+			return null;
+		
+		try
+		{
+			long[] range = new long[] { -1, -1, -1 };
+			String bytes = value.substring(0, slash).trim();
+			String total = value.substring(slash + 1).trim();
+			
+			if(!bytes.equals("*"))
+			{
+				int dash = bytes.indexOf('-');
+				range[0] = Long.parseLong(bytes.substring(0, dash).trim());
+				range[1] = Long.parseLong(bytes.substring(dash + 1).trim());
+			}
+			if(!total.equals("*"))
+			{
+				range[2] = Long.parseLong(total);
+			}
+			return range;
+			
+		} catch (RuntimeException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Get the Content-Length of a response, which may be larger than an int
+	 * @param connection
+	 * @return The length or -1 if it is not known
+	 */
+	private static long getContentLength(HttpURLConnection connection)
+	{
+		String contentLength = connection.getHeaderField("Content-Length");
+		if(contentLength == null)
+			return -1;
+		
+		try
+		{
+			return Long.parseLong(contentLength.trim());
+		} catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+	
+	/**
+	 * Make a GET request to the given path without blocking
+	 * @param path The path to the REST service, not the full URL
+	 * @param callback The code that will be executed upon completion by the server
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest getAsync(String path, AsyncCallback<Object> callback)
+	{
+		return getAsync(path, null, callback, null);
+	}
+	
+	/**
+	 * Make a GET request to the given path without blocking
+	 * @param path The path to the REST service, not the full URL
+	 * @param requestOptions Additional options for the request
+	 * @param callback The code that will be executed upon completion by the server
+	 * @param callbackExecutor The executor to call the callback on, or null for the RestIt callback executor
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest getAsync(final String path, final RequestOptions requestOptions, AsyncCallback<Object> callback, Executor callbackExecutor)
+	{
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return get(path, requestOptions);
+			}
+		}, getPriority(requestOptions, RequestPriority.INTERACTIVE), callback, callbackExecutor);
+	}
+	
+	/**
+	 * Make a DELETE request to the given path without blocking
+	 * @param path The path to the REST service, not the full URL
+	 * @param callback The code that will be executed upon completion by the server
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest deleteAsync(String path, AsyncCallback<Object> callback)
+	{
+		return deleteAsync(path, callback, null);
+	}
+	
+	/**
+	 * Make a DELETE request to the given path without blocking
+	 * @param path The path to the REST service, not the full URL
+	 * @param callback The code that will be executed upon completion by the server
+	 * @param callbackExecutor The executor to call the callback on, or null for the RestIt callback executor
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest deleteAsync(final String path, AsyncCallback<Object> callback, Executor callbackExecutor)
+	{
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return delete(path);
+			}
+		}, RequestPriority.INTERACTIVE, callback, callbackExecutor);
+	}
+	
+	/**
+	 * Make a POST request to the given path without blocking
+	 * @param path The path to the REST service, not the full URL
+	 * @param postObjectBytes Take the string representation of the parameters and put them in byte format
+	 * @param callback The code that will be executed upon completion by the server
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest postAsync(String path, byte[] postObjectBytes, AsyncCallback<Object> callback)
+	{
+		return postAsync(path, postObjectBytes, null, callback, null);
+	}
+	
+	/**
+	 * Make a POST request to the given path without blocking
+	 * @param path The path to the REST service, not the full URL
+	 * @param postObjectBytes Take the string representation of the parameters and put them in byte format
+	 * @param requestOptions Additional options for the request
+	 * @param callback The code that will be executed upon completion by the server
+	 * @param callbackExecutor The executor to call the callback on, or null for the RestIt callback executor
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest postAsync(final String path, final byte[] postObjectBytes, final RequestOptions requestOptions, AsyncCallback<Object> callback, Executor callbackExecutor)
+	{
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return post(path, postObjectBytes, requestOptions);
+			}
+		}, getPriority(requestOptions, RequestPriority.INTERACTIVE), callback, callbackExecutor);
+	}
+	
+	/**
+	 * Make a POST request to the given path with a registered object as body without blocking
+	 * @param path The path to the REST service, not the full URL
+	 * @param object The object to post. Its class must be registered with RestItMapper
+	 * @param callback The code that will be executed upon completion by the server
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest postAsync(String path, Object object, AsyncCallback<Object> callback)
+	{
+		return postAsync(path, object, null, callback, null);
+	}
+	
+	/**
+	 * Make a POST request to the given path with a registered object as body without blocking
+	 * @param path The path to the REST service, not the full URL
+	 * @param object The object to post. Its class must be registered with RestItMapper
+	 * @param requestOptions Additional options for the request
+	 * @param callback The code that will be executed upon completion by the server
+	 * @param callbackExecutor The executor to call the callback on, or null for the RestIt callback executor
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest postAsync(final String path, final Object object, final RequestOptions requestOptions, AsyncCallback<Object> callback, Executor callbackExecutor)
+	{
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return post(path, object, requestOptions);
+			}
+		}, getPriority(requestOptions, RequestPriority.INTERACTIVE), callback, callbackExecutor);
+	}
+	
+	/**
+	 * Make POST request to given path using a multipart form without blocking
+	 * @param path Url path not including server name
+	 * @param postObjectBytes The byte array of the object to post
+	 * @param formElementName The name of element in the HTML form
+	 * @param fileName The file name of the file
+	 * @param additionalParameters A map of additional form field values to add on the request
+	 * @param progressListener A listener that will respond to upload progress, called on the request thread
+	 * @param callback The code that will be executed upon completion by the server
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest multipartPostAsync(String path, byte[] postObjectBytes, String formElementName, String fileName, Map<String, String> additionalParameters, ProgressListener progressListener, AsyncCallback<Object> callback)
+	{
+		return multipartPostAsync(path, postObjectBytes, formElementName, fileName, additionalParameters, progressListener, null, callback, null);
+	}
+	
+	/**
+	 * Make POST request to given path using a multipart form without blocking
+	 * @param path Url path not including server name
+	 * @param postObjectBytes The byte array of the object to post
+	 * @param formElementName The name of element in the HTML form
+	 * @param fileName The file name of the file
+	 * @param additionalParameters A map of additional form field values to add on the request
+	 * @param progressListener A listener that will respond to upload progress, called on the request thread
+	 * @param requestOptions Additional options for the request
+	 * @param callback The code that will be executed upon completion by the server
+	 * @param callbackExecutor The executor to call the callback on, or null for the RestIt callback executor
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest multipartPostAsync(final String path, final byte[] postObjectBytes, final String formElementName, final String fileName, final Map<String, String> additionalParameters, final ProgressListener progressListener, final RequestOptions requestOptions, AsyncCallback<Object> callback, Executor callbackExecutor)
+	{
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return multipartPostObject(path, postObjectBytes, formElementName, fileName, additionalParameters, progressListener, requestOptions);
+			}
+		}, getPriority(requestOptions, RequestPriority.BULK), callback, callbackExecutor);
+	}
+	
+	/**
+	 * Make POST request to given path with a multipart form of any number of fields and files without blocking
+	 * @param path Url path not including server name
+	 * @param form The form to post
+	 * @param progressListener A listener that will respond to the upload progress of all the files together, called on the request thread
+	 * @param requestOptions Additional options for the request
+	 * @param callback The code that will be executed upon completion by the server
+	 * @param callbackExecutor The executor to call the callback on, or null for the RestIt callback executor
+	 * @return A handle to cancel the request with
+	 */
+	public static AsyncRequest multipartPostAsync(final String path, final MultipartForm form, final ProgressListener progressListener, final RequestOptions requestOptions, AsyncCallback<Object> callback, Executor callbackExecutor)
+	{
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return multipartPost(path, form, progressListener, requestOptions);
+			}
+		}, getPriority(requestOptions, RequestPriority.BULK), callback, callbackExecutor);
+	}
+	
+	/**
+	 * Run a request in a lane of the RestIt scheduler
+	 * @param request
+	 * @param priority The lane to run the request in
+	 * @param callback
+	 * @param callbackExecutor The executor to call the callback on, or null for the RestIt callback executor
+	 * @return
+	 */
+	private static AsyncRequest submit(Callable<Object> request, RequestPriority priority, AsyncCallback<Object> callback, Executor callbackExecutor)
+	{
+		AsyncRequest asyncRequest = new AsyncRequest(request, callback, callbackExecutor != null ? callbackExecutor : getClient().getCallbackExecutor());
+		asyncRequest.submit(getClient().getExecutor(priority));
+		return asyncRequest;
+	}
+	
+	/**
+	 * Get the lane of an async request
+	 * @param requestOptions Additional options for the request, may be null
+	 * @param defaultPriority The lane when the options do not pick one
+	 * @return
+	 */
+	private static RequestPriority getPriority(RequestOptions requestOptions, RequestPriority defaultPriority)
+	{
+		return requestOptions != null && requestOptions.getPriority() != null ? requestOptions.getPriority() : defaultPriority;
+	}
+	
+	/**
+	 * Handle core processing, like redirects
+	 * @param connection
+	 * @return
+	 * @throws ServerErrorException 
+	 */
+	protected static String processConnection(HttpURLConnection connection) throws IOException, ServerErrorException
+	{
+		connection = resolveConnection(connection);
+		int status = connection.getResponseCode();
+		
+		//figure out the response
+		if (status == HttpStatus.SC_OK) {
+			//200 OK
+            InputStream istream = NetworkUtil.decodeStream(connection, connection.getInputStream());
+            
+            //parse
+            String result = NetworkUtil.parseStream(connection, istream);
+            
+            Log.d(LOG_TAG, "Received response: " + result);
+            
+            //the stream has been read to the end and closed
+            getClient().completeResponse(connection, null);
+            
+            //execute callback to originating code
+            return result;
+		}
+		
+		processErrorResponse(connection, status, false);
+		return null;
+	}
+	
+	/**
+	 * Handle core processing, like redirects, and map the response to a POJO while it is read from the connection
+	 * @param connection
+	 * @return The mapped POJO or the raw response string if no class is registered for it
+	 * @throws ServerErrorException 
+	 */
+	protected static Object processResponse(HttpURLConnection connection) throws IOException, ServerErrorException
+	{
+		return processResponse(connection, null, null, null, false);
+	}
+	
+	/**
+	 * Handle core processing, like redirects, and map the response to a POJO while it is read from the connection
+	 * @param connection
+	 * @param retryable Will the request be retried when it fails, see processErrorResponse()
+	 * @return The mapped POJO or the raw response string if no class is registered for it
+	 * @throws ServerErrorException 
+	 */
+	private static Object processResponse(HttpURLConnection connection, boolean retryable) throws IOException, ServerErrorException
+	{
+		return processResponse(connection, null, null, null, retryable);
+	}
+	
+	/**
+	 * Handle core processing, like redirects, and map the response to a POJO while it is read from the connection.
+	 *  A 200 response is stored in the cache while it is read, a 304 response is answered with the stored response.
+	 * @param connection
+	 * @param cache The response cache or null
+	 * @param cached The stored response the request was made conditional with, or null
+	 * @param requestHeaders The headers the connection was configured with
+	 * @param retryable Will the request be retried when it fails, see processErrorResponse()
+	 * @return The mapped POJO or the raw response string if no class is registered for it
+	 * @throws ServerErrorException 
+	 */
+	private static Object processResponse(HttpURLConnection connection, HttpDiskCache cache, CacheEntry cached, Map<String, String> requestHeaders, boolean retryable) throws IOException, ServerErrorException
+	{
+		String requestUrl = connection.getURL().toString();
+		connection = resolveConnection(connection);
+		int status = connection.getResponseCode();
+		
+		if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+			//304 Not Modified, there is no body to read
+			getClient().completeResponse(connection, null);
+			cache.update(cached, connection);
+			
+			Log.d(LOG_TAG, "Received not modified response from: " + connection.getURL());
+			
+			return readCachedResponse(cached);
+		}
+		
+		//figure out the response
+		if (status == HttpStatus.SC_OK) {
+			//200 OK
+			InputStream istream = NetworkUtil.decodeStream(connection, connection.getInputStream());
+			if(cache != null)
+			{
+				//store the body while it is read
+				istream = cache.put(requestUrl, requestHeaders, connection, istream);
+			}
+			
+			try
+			{
+				//convert to POJO
+				Object result = RestItMapper.parseResponse(istream, connection.getContentType(), NetworkUtil.getCharset(connection));
+				
+				Log.d(LOG_TAG, "Received response from: " + connection.getURL());
+				
+				return result;
+				
+			} finally
+			{
+				//read what is left and close the stream
+				getClient().completeResponse(connection, istream);
+			}
+		}
+		
+		processErrorResponse(connection, status, retryable);
+		return null;
+	}
+	
+	/**
+	 * Get the headers of a request, the client headers adjusted by the request options
+	 * @param requestOptions Additional options for the request, may be null
+	 * @return
+	 */
+	private static Map<String, String> getRequestHeaders(RequestOptions requestOptions)
+	{
+		Map<String, String> requestHeaders = getClient().getRequestHeaders();
+		if(requestOptions != null && !requestOptions.isAcceptCompressedResponse())
+		{
+			requestHeaders.put("Accept-Encoding", "identity");
+		}
+		return requestHeaders;
+	}
+	
+	/**
+	 * Open the stream to write a request body to, compressed when the request options ask for it and the body
+	 *  is larger than their threshold
+	 * @param connection
+	 * @param requestOptions Additional options for the request, may be null
+	 * @return
+	 * @throws IOException
+	 */
+	private static OutputStream openRequestStream(HttpURLConnection connection, RequestOptions requestOptions) throws IOException
+	{
+		if(requestOptions != null && requestOptions.isCompressRequestBody())
+		{
+			return new CompressingOutputStream(connection, requestOptions.getCompressionThreshold());
+		}
+		
+		return connection.getOutputStream();
+	}
+	
+	/**
+	 * Map a stored response to a POJO
+	 * @param cached
+	 * @return The mapped POJO or the raw response string if no class is registered for it
+	 * @throws IOException
+	 */
+	private static Object readCachedResponse(CacheEntry cached) throws IOException
+	{
+		InputStream istream = cached.openBody();
+		try
+		{
+			return RestItMapper.parseResponse(istream, cached.getContentType(), NetworkUtil.getCharset(cached.getContentType()));
+		} finally
+		{
+			istream.close();
+		}
+	}
+	
+	/**
+	 * Keep a mapped GET response in the object cache
+	 * @param objectCache The cache or null
+	 * @param url
+	 * @param requestHeaders
+	 * @param result The mapped response
+	 * @param timeToLive Time in milliseconds, -1 for the default of the cache
+	 */
+	private static void cacheObject(ObjectCache objectCache, String url, Map<String, String> requestHeaders, Object result, long timeToLive)
+	{
+		if(objectCache == null || result == null)
+			return;
+		
+		if(timeToLive < 0)
+		{
+			objectCache.put(url, requestHeaders, result);
+		} else
+		{
+			objectCache.put(url, requestHeaders, result, timeToLive);
+		}
+	}
+	
+	/**
+	 * Remove the stored response and the cached objects of a URL after a request changed it
+	 * @param url
+	 */
+	private static void invalidateCache(String url)
+	{
+		HttpDiskCache cache = getClient().getResponseCache();
+		if(cache != null)
+		{
+			cache.remove(url);
+		}
+		
+		ObjectCache objectCache = getClient().getObjectCache();
+		if(objectCache != null)
+		{
+			objectCache.invalidate(url);
+		}
+	}
+	
+	/**
+	 * Follow redirects and stop on missing URLs
+	 * @param connection
+	 * @return The connection that holds the final response
+	 * @throws ServerErrorException 
+	 */
+	private static HttpURLConnection resolveConnection(HttpURLConnection connection) throws IOException, ServerErrorException
+	{
+		int status = connection.getResponseCode();
+		getClient().recordResponse(connection, status);
+		
+		if(status == HttpURLConnection.HTTP_NOT_FOUND )
+		{
+			//404, URL not found
+			String errorMessage = "The requested URL '"+connection.getURL().toString()+"' does not exist";
+			Log.e(LOG_TAG, errorMessage);
+			
+			ServerError error = new ServerError(errorMessage);
 			error.setServerCode(status);
 			throw new ServerErrorException(error);
 			
@@ -667,33 +2060,182 @@ public class RestIt {
 			newConnection.setRequestMethod(connection.getRequestMethod());
 			
 			//close old connection
-			connection.disconnect();
+			getClient().releaseConnection(connection);
 			
 			//process new connection
-			return processConnection(newConnection);
-			
+			return resolveConnection(newConnection);
 		}
 		
-		//We don't have a 200 OK response but see if we have a readable error
-		
-		//parse error stream
-		InputStream istream = new BufferedInputStream(connection.getErrorStream());
-        String result = NetworkUtil.parseStream(istream);
+		return connection;
+	}
+	
+	/**
+	 * We don't have a 200 OK response but see if we have a readable error
+	 * @param connection
+	 * @param status The response code of the connection
+	 * @param retryable Will the request be retried when it fails. Only then is a 429 or 5xx response without a
+	 *  readable error thrown, so that it can be retried; otherwise the caller gets null for it as before
+	 * @throws ServerErrorException 
+	 */
+	private static void processErrorResponse(HttpURLConnection connection, int status, boolean retryable) throws IOException, ServerErrorException
+	{
+		InputStream istream = NetworkUtil.decodeStream(connection, connection.getErrorStream());
 		
-        //log
-        Log.d(LOG_TAG, "Received possible error response: " + result);
-        
-		if(result != null)
+		Object error = null;
+		if(istream != null)
 		{
-			Object error = RestItMapper.parseResponse(result);
-			if(error instanceof ServerError)
+			try
+			{
+				//parse error stream
+				error = RestItMapper.parseResponse(istream, connection.getContentType(), NetworkUtil.getCharset(connection));
+			} finally
 			{
-				((ServerError) error).setServerCode(status);
-				throw new ServerErrorException((ServerError)error);
+				//read what is left and close the stream
+				getClient().completeResponse(connection, istream);
 			}
+			
+			//log
+			Log.d(LOG_TAG, "Received possible error response: " + error);
 		}
 		
-		return null;
+		ServerErrorException exception;
+		if(error instanceof ServerError)
+		{
+			((ServerError) error).setServerCode(status);
+			exception = new ServerErrorException((ServerError)error);
+			
+		} else if(retryable && (status == 429 || status >= 500))
+		{
+			//report overloaded and failing servers even without a readable error, so that they can be retried
+			ServerError serverError = new ServerError("The server answered " + connection.getURL() + " with status " + status);
+			serverError.setServerCode(status);
+			exception = new ServerErrorException(serverError);
+			
+		} else
+		{
+			return;
+		}
+		
+		exception.setRetryAfter(getRetryAfter(connection));
+		throw exception;
+	}
+	
+	/**
+	 * Read the Retry-After header of a response, either a number of seconds or a date
+	 * @param connection
+	 * @return The milliseconds to wait or -1 if the header is missing
+	 */
+	private static long getRetryAfter(HttpURLConnection connection)
+	{
+		String retryAfter = connection.getHeaderField("Retry-After");
+		if(retryAfter == null)
+			return -1;
+		
+		try
+		{
+			return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+		} catch (NumberFormatException e)
+		{
+			long date = connection.getHeaderFieldDate("Retry-After", -1);
+			return date > 0 ? Math.max(0, date - System.currentTimeMillis()) : -1;
+		}
+	}
+	
+	/**
+	 * Get the retry policy of a request
+	 * @param requestOptions Additional options for the request, may be null
+	 * @return The policy or null if the request is not retried
+	 */
+	private static RetryPolicy getRetryPolicy(RequestOptions requestOptions)
+	{
+		if(requestOptions != null && requestOptions.getRetryPolicy() != null)
+		{
+			return requestOptions.getRetryPolicy();
+		}
+		return getClient().getRetryPolicy();
+	}
+	
+	/**
+	 * Decide whether a failed attempt of a request is made again, and wait for the backoff if it is
+	 * @param retryPolicy The policy of the request, null to never retry
+	 * @param requestMethod
+	 * @param attempt The number of the attempt that failed, starting at 1
+	 * @param error The failure, an IOException or a ServerErrorException
+	 * @return true if the request should be made again
+	 */
+	private static boolean awaitRetry(RetryPolicy retryPolicy, String requestMethod, int attempt, Exception error)
+	{
+		if(retryPolicy == null)
+			return false;
+		
+		long delay = retryPolicy.getRetryDelay(requestMethod, attempt, error);
+		if(delay < 0)
+			return false;
+		
+		Log.w(LOG_TAG, "Attempt " + attempt + " of " + requestMethod + " request failed, retrying in " + delay + " ms: " + error);
+		
+		try
+		{
+			Thread.sleep(delay);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		
+		retryPolicy.retried();
+		return true;
+	}
+	
+	/**
+	 * Can a failed attempt of a request be made again under its retry policy
+	 * @param retryPolicy The retry policy of the request, may be null
+	 * @param requestMethod
+	 * @param attempt The number of the attempt, starting at 1
+	 * @return
+	 */
+	private static boolean canRetry(RetryPolicy retryPolicy, String requestMethod, int attempt)
+	{
+		return retryPolicy != null && attempt < retryPolicy.getMaxAttempts()
+				&& (retryPolicy.isRetryNonIdempotent() || retryPolicy.isIdempotent(requestMethod));
+	}
+	
+	/**
+	 * Wrap a failure of the connection, keeping the number of attempts that were made
+	 * @param e
+	 * @param attempt The number of the last attempt
+	 * @return
+	 */
+	private static ServerErrorException toServerErrorException(IOException e, int attempt)
+	{
+		ServerErrorException exception = new ServerErrorException(e);
+		exception.setAttemptCount(attempt);
+		if(e instanceof CircuitOpenException)
+		{
+			exception.setRetryAfter(((CircuitOpenException) e).getRetryAfter());
+		}
+		return exception;
+	}
+	
+	/**
+	 * Report that the server could not be reached, like sendNetworkStatusUpdate(DISCONNECTED), keeping the number of
+	 *  attempts that were made
+	 * @param e The failure of the last attempt
+	 * @param attempt The number of the last attempt
+	 * @return The exception to throw when no network listener is set
+	 * @throws NetworkNotAvailableException When a network listener is set
+	 */
+	private static ServerErrorException toDisconnectedException(IOException e, int attempt) throws NetworkNotAvailableException
+	{
+		Log.w(LOG_TAG, "Could not connect to server");
+		
+		if(restItNetworkListener != null)
+			throw new NetworkNotAvailableException();
+		
+		ServerErrorException exception = new ServerErrorException("Could not connect to server");
+		exception.initCause(e);
+		exception.setAttemptCount(attempt);
+		return exception;
 	}
 	
 	/**
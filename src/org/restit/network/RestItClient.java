@@ -1,11 +1,19 @@
 package org.restit.network;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -13,6 +21,8 @@ import javax.net.ssl.SSLContext;
 import org.restit.model.ServerError;
 import org.restit.model.serialization.ServerErrorDeserializer;
 import org.restit.model.serialization.ServerErrorSerializer;
+import org.restit.network.cache.HttpDiskCache;
+import org.restit.network.cache.ObjectCache;
 import org.restit.objectmapping.RestItMapper;
 
 public class RestItClient {
@@ -28,6 +38,52 @@ public class RestItClient {
 	
 	 /** Timeout (in ms) we specify for each http request */
     protected int httpRequestTimeout = 30 * 1000;
+    
+    /** Keep connections open after a request so the next request to the same host can use them */
+    protected boolean connectionReuse = false;
+    protected int maxConnectionsPerHost = 5;
+    protected long keepAliveDuration = 5 * 60 * 1000;
+    
+    /** Largest remaining response body (in bytes) that is read to release a connection instead of closing it */
+    protected static final int MAX_DRAIN_BYTES = 64 * 1024;
+    
+    protected final ConnectionStats connectionStats = new ConnectionStats();
+    
+    /** Identical GET requests in flight */
+    protected final RequestCoalescer requestCoalescer = new RequestCoalescer();
+    
+    /** On-disk cache of GET responses, null when responses are not cached */
+    protected volatile HttpDiskCache responseCache;
+    
+    /** In-memory cache of mapped GET responses, null when they are not cached */
+    protected volatile ObjectCache objectCache;
+    
+    /** Decides when failed requests are made again, null to never retry */
+    protected volatile RetryPolicy retryPolicy = new RetryPolicy();
+    
+    /** Fails requests to hosts that keep failing without connecting, null to always connect */
+    protected volatile CircuitBreaker circuitBreaker;
+    
+    /** Directory resumable uploads keep their journals in, null to keep them in memory */
+    protected volatile File uploadJournalDirectory;
+    
+    /** Runs async requests, unless an executor is set */
+    protected RequestScheduler scheduler;
+    protected ExecutorService executor;
+    
+    /** Executor async callbacks are delivered on, by default the RestIt thread that made the request */
+    protected volatile Executor callbackExecutor = new Executor() {
+		@Override
+		public void execute(Runnable runnable) {
+			runnable.run();
+		}
+	};
+    
+    //connections whose response has been read to the end and can go back to the pool
+    private final Set<HttpURLConnection> completedConnections = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<HttpURLConnection, Boolean>()));
+    
+    /** The circuit breaker permits of the open connections, each records one outcome */
+    private final Map<HttpURLConnection, CircuitBreaker.Permit> permits = Collections.synchronizedMap(new WeakHashMap<HttpURLConnection, CircuitBreaker.Permit>());
 	
 	protected RestItClient()
 	{
@@ -115,6 +171,324 @@ public class RestItClient {
 		this.httpRequestTimeout = httpRequestTimeout;
 	}
 
+	/**
+	 * Are connections kept open and reused after a request
+	 * @return
+	 */
+	public boolean isConnectionReuse() {
+		return connectionReuse;
+	}
+
+	/**
+	 * Keep connections open after a request instead of disconnecting them. The rest of each response is read and
+	 *  the connection is released to the keep-alive pool, so that the next request to the same host does not
+	 *  have to connect and do a TLS handshake again. This only changes how this client releases its connections,
+	 *  the platform pool itself is left as it is.
+	 * @param connectionReuse
+	 */
+	public void setConnectionReuse(boolean connectionReuse) {
+		this.connectionReuse = connectionReuse;
+	}
+
+	/**
+	 * Get the number of idle connections kept per host
+	 * @return
+	 */
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Set the number of idle connections the keep-alive pool keeps per host. This sets the http.maxConnections
+	 *  system property, so it applies to every HttpURLConnection of the process, not only to RestIt. The platform
+	 *  reads it once when its pool is created: call this before the first HTTP request of the app, later calls
+	 *  have no effect on the pool
+	 * @param maxConnectionsPerHost
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		System.setProperty("http.maxConnections", String.valueOf(maxConnectionsPerHost));
+	}
+
+	/**
+	 * Get the number of milliseconds an idle connection stays in the pool
+	 * @return
+	 */
+	public long getKeepAliveDuration() {
+		return keepAliveDuration;
+	}
+
+	/**
+	 * Set the number of milliseconds an idle connection stays in the pool. This sets the http.keepAliveDuration
+	 *  system property, so it applies to every HttpURLConnection of the process, not only to RestIt. The platform
+	 *  reads it once when its pool is created: call this before the first HTTP request of the app, later calls
+	 *  have no effect on the pool
+	 * @param keepAliveDuration The time in milliseconds
+	 */
+	public void setKeepAliveDuration(long keepAliveDuration) {
+		this.keepAliveDuration = keepAliveDuration;
+		System.setProperty("http.keepAliveDuration", String.valueOf(keepAliveDuration));
+	}
+	
+	/**
+	 * Get the counters of new and reused connections. Reuse is estimated, see ConnectionStats
+	 * @return
+	 */
+	public ConnectionStats getConnectionStats() {
+		return connectionStats;
+	}
+	
+	/**
+	 * Get the GET requests in flight that identical requests wait for
+	 * @return
+	 */
+	RequestCoalescer getRequestCoalescer() {
+		return requestCoalescer;
+	}
+	
+	/**
+	 * Get the scheduler async requests run on when no executor is set
+	 * @return
+	 */
+	public synchronized RequestScheduler getScheduler() {
+		if(scheduler == null)
+		{
+			scheduler = new RequestScheduler();
+		}
+		
+		return scheduler;
+	}
+
+	/**
+	 * Set the scheduler async requests run on when no executor is set
+	 * @param scheduler
+	 */
+	public synchronized void setScheduler(RequestScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+	
+	/**
+	 * Get the executor async requests of a priority run on, the lane of the scheduler unless an executor is set
+	 * @param priority
+	 * @return
+	 */
+	public synchronized Executor getExecutor(RequestPriority priority) {
+		if(executor != null)
+			return executor;
+		
+		return getScheduler().getExecutor(priority);
+	}
+
+	/**
+	 * Set an executor that runs every async request instead of the priority lanes of the scheduler
+	 * @param executor The executor or null to go back to the scheduler
+	 */
+	public synchronized void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Get the executor async callbacks are delivered on when the request does not pick one
+	 * @return
+	 */
+	public Executor getCallbackExecutor() {
+		return callbackExecutor;
+	}
+
+	/**
+	 * Set the executor async callbacks are delivered on when the request does not pick one, e.g. one that posts
+	 *  to the main thread
+	 * @param callbackExecutor
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+	}
+	
+	/**
+	 * Get the on-disk cache of GET responses
+	 * @return The cache or null if responses are not cached
+	 */
+	public HttpDiskCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Set the on-disk cache of GET responses. Fresh responses are then served from the cache and stale responses
+	 *  are revalidated with their ETag or Last-Modified date
+	 * @param responseCache The cache or null to stop caching responses
+	 */
+	public void setResponseCache(HttpDiskCache responseCache) {
+		this.responseCache = responseCache;
+	}
+	
+	/**
+	 * Get the in-memory cache of mapped GET responses
+	 * @return The cache or null if mapped responses are not cached
+	 */
+	public ObjectCache getObjectCache() {
+		return objectCache;
+	}
+
+	/**
+	 * Set the in-memory cache of mapped GET responses. A GET found in it returns the cached object without a
+	 *  request or a decode
+	 * @param objectCache The cache or null to stop caching mapped responses
+	 */
+	public void setObjectCache(ObjectCache objectCache) {
+		this.objectCache = objectCache;
+	}
+	
+	/**
+	 * Get the policy that decides when failed requests are made again
+	 * @return The policy or null if requests are not retried
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Set the policy that decides when failed requests are made again, unless the request options have their own
+	 * @param retryPolicy The policy or null to never retry
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+	
+	/**
+	 * Get the circuit breaker that fails requests to hosts that keep failing
+	 * @return The circuit breaker or null if requests always connect
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Set the circuit breaker that fails requests to hosts that keep failing
+	 * @param circuitBreaker The circuit breaker or null to always connect
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+	
+	/**
+	 * Get the directory resumable uploads keep their journals in
+	 * @return The directory or null if uploads do not survive a restart
+	 */
+	public File getUploadJournalDirectory() {
+		return uploadJournalDirectory;
+	}
+
+	/**
+	 * Set the directory resumable uploads keep their journals in, so that an upload continues after a restart
+	 * @param uploadJournalDirectory The directory or null to keep the offsets in memory only
+	 */
+	public void setUploadJournalDirectory(File uploadJournalDirectory) {
+		this.uploadJournalDirectory = uploadJournalDirectory;
+	}
+	
+	/**
+	 * Finish reading a response. When connections are reused the rest of the body is read, up to MAX_DRAIN_BYTES,
+	 *  so that the connection can go back to the pool. The stream is closed either way
+	 * @param connection The connection the response belongs to
+	 * @param stream The response or error stream, or null if it has already been read to the end and closed
+	 */
+	public void completeResponse(HttpURLConnection connection, InputStream stream)
+	{
+		boolean drained = true;
+		
+		if(stream != null)
+		{
+			try
+			{
+				if(isConnectionReuse())
+				{
+					drained = NetworkUtil.drain(stream, MAX_DRAIN_BYTES);
+				}
+			} catch (IOException e)
+			{
+				drained = false;
+			} finally
+			{
+				try
+				{
+					stream.close();
+				} catch (IOException e)
+				{
+					drained = false;
+				}
+			}
+		}
+		
+		if(drained && isConnectionReuse())
+		{
+			this.completedConnections.add(connection);
+		}
+	}
+	
+	/**
+	 * Release a connection after a request. A connection whose response was completed goes back to the keep-alive
+	 *  pool when connections are reused. Any other connection is disconnected.
+	 * @param connection
+	 */
+	public void releaseConnection(HttpURLConnection connection)
+	{
+		if(connection == null)
+			return;
+		
+		//a connection released without an outcome did not get a response
+		CircuitBreaker.Permit permit = this.permits.remove(connection);
+		if(permit != null)
+		{
+			permit.record(false);
+		}
+		
+		if(this.completedConnections.remove(connection) && isConnectionReuse())
+		{
+			this.connectionStats.connectionReleased(getHostKey(connection.getURL()), getMaxConnectionsPerHost());
+			return;
+		}
+		
+		connection.disconnect();
+		this.connectionStats.connectionDisconnected();
+	}
+	
+	/**
+	 * Record the response of a connection with the circuit breaker. A server error counts as a failure of the host.
+	 *  Only the first outcome of a connection counts
+	 * @param connection
+	 * @param status The response code
+	 */
+	public void recordResponse(HttpURLConnection connection, int status)
+	{
+		CircuitBreaker.Permit permit = connection != null ? this.permits.get(connection) : null;
+		if(permit != null)
+		{
+			permit.record(status < 500);
+		}
+	}
+	
+	/**
+	 * Record a connection that failed with the circuit breaker. Only the first outcome of a connection counts
+	 * @param connection The connection, may be null if none was opened. getConnection() records its own failures
+	 * @param exception The failure
+	 */
+	public void recordFailure(HttpURLConnection connection, IOException exception)
+	{
+		CircuitBreaker.Permit permit = connection != null ? this.permits.get(connection) : null;
+		if(permit != null)
+		{
+			permit.record(false);
+		}
+	}
+	
+	/**
+	 * Get the key connections to a URL are pooled by
+	 */
+	private static String getHostKey(URL url)
+	{
+		return url.getProtocol() + "://" + url.getHost() + ":" + (url.getPort() == -1 ? url.getDefaultPort() : url.getPort());
+	}
+	
     /**
      * Configure the connection with the default settings
      * @param url The URL to connect to
@@ -148,6 +522,32 @@ public class RestItClient {
     	getDefaultHeaders().put(header, value);
     }
     
+    /**
+     * Get the headers a new connection is configured with, the RestIt headers followed by the default headers
+     * @return
+     */
+    public Map<String, String> getRequestHeaders()
+    {
+    	Map<String, String> headers = new LinkedHashMap<String, String>();
+    	headers.put("Charset", CHARSET);
+    	headers.put("Content-Type", getDefaultContentType()+";charset=" + CHARSET);
+    	headers.put("Accept", RestItMapper.getAcceptHeader());
+    	headers.put("Accept-Encoding", "gzip, deflate");
+    	
+    	//add default headers
+    	Iterator<String> it = getDefaultHeaders().keySet().iterator();
+    	while(it.hasNext())
+    	{
+    		String header = it.next();
+    		if(header != null)
+    		{
+    			headers.put(header, getDefaultHeaders().get(header));
+    		}
+    	}
+    	
+    	return headers;
+    }
+    
     /**
      * Configure the connection with the default settings
      * @param url The URL to connect to
@@ -155,17 +555,63 @@ public class RestItClient {
      * @return HttpURLConnection
      */
     public HttpURLConnection getConnection(URL url, String requestMethod) throws IOException
+    {
+    	return getConnection(url, requestMethod, getRequestHeaders());
+    }
+    
+    /**
+     * Configure the connection with the default settings
+     * @param url The URL to connect to
+     * @param requestMethod The request method to use
+     * @param requestHeaders The headers to set on the connection, see getRequestHeaders()
+     * @return HttpURLConnection
+     */
+    public HttpURLConnection getConnection(URL url, String requestMethod, Map<String, String> requestHeaders) throws IOException
     {
     	if(url == null)
     		return null;
     	
+    	//fail at once instead of waiting for the timeout of a host that is down
+    	CircuitBreaker circuitBreaker = this.circuitBreaker;
+    	CircuitBreaker.Permit permit = circuitBreaker != null ? circuitBreaker.acquire(getHostKey(url)) : null;
+    	
+    	HttpURLConnection connection;
+    	try
+    	{
+    		connection = openConnection(url, requestMethod, requestHeaders);
+    	} catch (IOException e)
+    	{
+    		if(permit != null)
+    		{
+    			permit.record(false);
+    		}
+    		throw e;
+    	} catch (RuntimeException e)
+    	{
+    		if(permit != null)
+    		{
+    			permit.record(false);
+    		}
+    		throw e;
+    	}
+    	
+    	if(permit != null)
+    	{
+    		this.permits.put(connection, permit);
+    	}
+    	return connection;
+    }
+    
+    /**
+     * Open and configure a connection
+     */
+    private HttpURLConnection openConnection(URL url, String requestMethod, Map<String, String> requestHeaders) throws IOException
+    {
 		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		this.connectionStats.connectionOpened(getHostKey(url), isConnectionReuse() ? getKeepAliveDuration() : 0);
 		connection.setConnectTimeout(getHttpRequestTimeout());
         connection.setRequestMethod(requestMethod);
-        connection.setRequestProperty("Charset", CHARSET);
         connection.setInstanceFollowRedirects(true);
-        connection.setRequestProperty("Content-Type", getDefaultContentType()+";charset=" + CHARSET);
-        connection.setRequestProperty("Accept", ContentType.JSON +", " + ContentType.TEXT_HTML + ", " + ContentType.TEXT_PLAIN + ", " + ContentType.XML);
         
         //see if we need to allow insecure connections
         if(isAllowInsecureConnection() && (connection instanceof HttpsURLConnection) )
@@ -174,19 +620,10 @@ public class RestItClient {
         	secureConnection.setSSLSocketFactory(getInsecureSSLContext().getSocketFactory());
         }
         
-        //set default headers
-        if(getDefaultHeaders().size() > 0)
+        //set the request headers
+        for(Map.Entry<String, String> header : requestHeaders.entrySet())
         {
-        	Iterator<String> it = getDefaultHeaders().keySet().iterator();
-        	while(it.hasNext())
-        	{
-        		String header = it.next();
-        		if(header != null)
-        		{
-        			String headerValue = getDefaultHeaders().get(header);
-        			connection.setRequestProperty(header, headerValue);
-        		}
-        	}
+        	connection.setRequestProperty(header.getKey(), header.getValue());
         }
         
         return connection;
@@ -0,0 +1,477 @@
+package org.restit.network;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import org.restit.model.ServerError;
+import org.restit.objectmapping.RestItMapper;
+
+import android.util.Log;
+
+/**
+ * Uploads a file in ranged chunks so that a failed upload continues where it stopped instead of starting over.
+ * 
+ * Every chunk is a PUT to the upload URL with a Content-Range header, e.g. "bytes 0-1048575/5242880". The server
+ *  answers 308 with a Range header ("bytes=0-1048575") naming the bytes it has stored, or 200/201 with the
+ *  response of the finished upload. To learn where to continue, an empty PUT with "Content-Range: bytes *&#47;5242880"
+ *  is sent, answered the same way.
+ * 
+ * The confirmed offset is written to a journal in the upload journal directory after every chunk, so an upload
+ *  of the same file to the same URL continues after the process is restarted. The journal is removed when the
+ *  upload finishes or the file changes.
+ *
+ */
+public class ResumableUpload {
+
+	private static final String LOG_TAG = "ResumableUpload";
+	private static final int HTTP_RESUME_INCOMPLETE = 308;
+	
+	private static final String JOURNAL_URL = "url";
+	private static final String JOURNAL_FILE = "file";
+	private static final String JOURNAL_LENGTH = "length";
+	private static final String JOURNAL_LAST_MODIFIED = "lastModified";
+	private static final String JOURNAL_OFFSET = "offset";
+	
+	private final RestItClient client;
+	private final String url;
+	private final File file;
+	private final File journal;
+	
+	private int chunkSize = 1024 * 1024;
+	private String contentType = "application/octet-stream";
+	private int maxRetries = 5;
+	private long retryDelay = 1000;
+	
+	private long offset;
+	
+	/**
+	 * @param client The client to make the requests with
+	 * @param url The full upload URL
+	 * @param file The file to upload
+	 * @param journalDirectory The directory to keep the journal in, or null to not survive a restart
+	 */
+	ResumableUpload(RestItClient client, String url, File file, File journalDirectory)
+	{
+		this.client = client;
+		this.url = url;
+		this.file = file;
+		
+		if(journalDirectory != null)
+		{
+			journalDirectory.mkdirs();
+			this.journal = new File(journalDirectory, getKey(url + "\n" + file.getAbsolutePath()) + ".upload");
+		} else
+		{
+			this.journal = null;
+		}
+	}
+	
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Set the number of bytes sent per request, 1 MB by default. Smaller chunks lose less on a failure, larger
+	 *  chunks need fewer requests
+	 * @param chunkSize
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Set the Content-Type of the file
+	 * @param contentType
+	 */
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Set how often a failed chunk is resumed before the upload gives up
+	 * @param maxRetries
+	 */
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public long getRetryDelay() {
+		return retryDelay;
+	}
+
+	/**
+	 * Set the milliseconds to wait before the first resume, doubled for every following one
+	 * @param retryDelay
+	 */
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+	
+	/**
+	 * @return The number of bytes the server has confirmed
+	 */
+	public long getConfirmedOffset() {
+		return offset;
+	}
+	
+	/**
+	 * Upload the file, continuing a previous upload of it when the journal has one
+	 * @param progressListener A listener that will respond to upload progress, counting the bytes of earlier attempts
+	 * @return The mapped response of the finished upload
+	 * @throws ServerErrorException When the server rejects the upload or it keeps failing
+	 */
+	public Object upload(ProgressListener progressListener) throws ServerErrorException
+	{
+		long length = this.file.length();
+		boolean resuming = readJournal(length);
+		int failures = 0;
+		
+		while(true)
+		{
+			try
+			{
+				Result result;
+				boolean probe = resuming;
+				if(resuming)
+				{
+					//ask the server what it has
+					result = send(-1, length, null);
+					resuming = false;
+				} else
+				{
+					result = send(this.offset, length, progressListener);
+				}
+				
+				if(result.complete)
+				{
+					this.offset = length;
+					deleteJournal();
+					if(progressListener != null)
+					{
+						progressListener.transferred(length, length);
+					}
+					
+					return result.response;
+				}
+				
+				boolean progress = result.offset > this.offset;
+				this.offset = result.offset;
+				writeJournal(length);
+				
+				if(progressListener != null)
+				{
+					progressListener.transferred(this.offset, length);
+				}
+				
+				if(progress)
+				{
+					//progress resets the retries
+					failures = 0;
+				} else if(!probe)
+				{
+					//the server did not store the chunk, don't send it again at full speed
+					if(++failures > this.maxRetries)
+						throw new ServerErrorException("The upload to " + this.url + " makes no progress at byte " + this.offset);
+					
+					backOff(failures);
+				}
+				
+			} catch (IOException e)
+			{
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+				
+				//an open circuit fails at once, the offset is kept for the next call
+				if(e instanceof CircuitOpenException || ++failures > this.maxRetries || e instanceof InterruptedIOException && Thread.currentThread().isInterrupted())
+					throw new ServerErrorException(e);
+				
+				//continue from what the server confirms
+				resuming = true;
+				backOff(failures);
+			}
+		}
+	}
+	
+	/**
+	 * Wait before the next attempt, doubling the retry delay with every failure
+	 * @param failures The number of failures in a row
+	 * @throws ServerErrorException When the thread is interrupted
+	 */
+	private void backOff(int failures) throws ServerErrorException
+	{
+		try
+		{
+			Thread.sleep(Math.min(this.retryDelay << (failures - 1), 30 * 1000));
+		} catch (InterruptedException interrupted)
+		{
+			Thread.currentThread().interrupt();
+			throw new ServerErrorException(interrupted);
+		}
+	}
+	
+	/**
+	 * Send a chunk, or ask for the confirmed offset
+	 * @param start The first byte of the chunk or -1 to ask for the offset
+	 * @param length The length of the file
+	 * @param progressListener
+	 * @return
+	 * @throws IOException On failures worth retrying
+	 * @throws ServerErrorException When the server rejects the upload
+	 */
+	private Result send(long start, long length, ProgressListener progressListener) throws IOException, ServerErrorException
+	{
+		HttpURLConnection connection = this.client.getConnection(new URL(this.url), RequestMethod.PUT);
+		
+		try
+		{
+			connection.setInstanceFollowRedirects(false);
+			connection.setUseCaches(false);
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", this.contentType);
+			
+			long count = start < 0 ? 0 : Math.min(this.chunkSize, length - start);
+			if(start < 0 || count == 0)
+			{
+				connection.setRequestProperty("Content-Range", "bytes */" + length);
+			} else
+			{
+				connection.setRequestProperty("Content-Range", "bytes " + start + "-" + (start + count - 1) + "/" + length);
+			}
+			
+			connection.setFixedLengthStreamingMode((int) count);
+			int status;
+			try
+			{
+				OutputStream outputStream = connection.getOutputStream();
+				try
+				{
+					if(count > 0)
+					{
+						UploadSource.of(this.file, start, count).writeTo(Channels.newChannel(outputStream), progressListener, start, length);
+					}
+				} finally
+				{
+					outputStream.close();
+				}
+				
+				status = connection.getResponseCode();
+			} catch (IOException e)
+			{
+				this.client.recordFailure(connection, e);
+				throw e;
+			}
+			this.client.recordResponse(connection, status);
+			
+			if(status == HTTP_RESUME_INCOMPLETE)
+			{
+				this.client.completeResponse(connection, connection.getErrorStream());
+				return new Result(false, getConfirmedOffset(connection.getHeaderField("Range")), null);
+				
+			} else if(status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_CREATED)
+			{
+				InputStream istream = NetworkUtil.decodeStream(connection, connection.getInputStream());
+				try
+				{
+					return new Result(true, length, RestItMapper.parseResponse(istream, connection.getContentType(), NetworkUtil.getCharset(connection)));
+				} finally
+				{
+					this.client.completeResponse(connection, istream);
+				}
+			}
+			
+			//the server is having trouble, try again
+			if(status >= 500)
+				throw new IOException("The upload to " + this.url + " failed with status " + status);
+			
+			ServerError error = new ServerError("The upload to " + this.url + " was rejected with status " + status);
+			error.setServerCode(status);
+			
+			//the session is gone, start over next time
+			deleteJournal();
+			throw new ServerErrorException(error);
+			
+		} finally
+		{
+			this.client.releaseConnection(connection);
+		}
+	}
+	
+	/**
+	 * Read the offset after the last byte in a Range header like "bytes=0-1048575"
+	 */
+	private static long getConfirmedOffset(String range)
+	{
+		if(range == null)
+			return 0;
+		
+		int dash = range.lastIndexOf('-');
+		try
+		{
+			return Long.parseLong(range.substring(dash + 1).trim()) + 1;
+		} catch (NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+	
+	/**
+	 * Load the offset of an earlier upload of the file
+	 * @return true if there is one
+	 */
+	private boolean readJournal(long length)
+	{
+		if(this.journal == null || !this.journal.exists())
+			return this.offset > 0;
+		
+		Properties properties = new Properties();
+		InputStream in = null;
+		try
+		{
+			in = new FileInputStream(this.journal);
+			properties.load(in);
+		} catch (IOException e)
+		{
+			Log.w(LOG_TAG, "Unable to read the upload journal", e);
+			return false;
+		} finally
+		{
+			closeQuietly(in);
+		}
+		
+		//a changed file is a new upload
+		if(!this.url.equals(properties.getProperty(JOURNAL_URL))
+				|| !this.file.getAbsolutePath().equals(properties.getProperty(JOURNAL_FILE))
+				|| !String.valueOf(length).equals(properties.getProperty(JOURNAL_LENGTH))
+				|| !String.valueOf(this.file.lastModified()).equals(properties.getProperty(JOURNAL_LAST_MODIFIED)))
+		{
+			deleteJournal();
+			return false;
+		}
+		
+		try
+		{
+			this.offset = Long.parseLong(properties.getProperty(JOURNAL_OFFSET, "0"));
+		} catch (NumberFormatException e)
+		{
+			this.offset = 0;
+		}
+		
+		return true;
+	}
+	
+	private void writeJournal(long length)
+	{
+		if(this.journal == null)
+			return;
+		
+		Properties properties = new Properties();
+		properties.setProperty(JOURNAL_URL, this.url);
+		properties.setProperty(JOURNAL_FILE, this.file.getAbsolutePath());
+		properties.setProperty(JOURNAL_LENGTH, String.valueOf(length));
+		properties.setProperty(JOURNAL_LAST_MODIFIED, String.valueOf(this.file.lastModified()));
+		properties.setProperty(JOURNAL_OFFSET, String.valueOf(this.offset));
+		
+		//write next to the journal and swap, so a crash never leaves half a journal
+		File temp = new File(this.journal.getPath() + ".tmp");
+		OutputStream out = null;
+		try
+		{
+			out = new FileOutputStream(temp);
+			properties.store(out, null);
+			out.close();
+			out = null;
+			
+			if(!temp.renameTo(this.journal))
+			{
+				this.journal.delete();
+				temp.renameTo(this.journal);
+			}
+		} catch (IOException e)
+		{
+			Log.w(LOG_TAG, "Unable to write the upload journal", e);
+		} finally
+		{
+			closeQuietly(out);
+		}
+	}
+	
+	private void deleteJournal()
+	{
+		if(this.journal != null)
+		{
+			this.journal.delete();
+		}
+	}
+	
+	private static String getKey(String value)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(RestItClient.CHARSET));
+			StringBuilder key = new StringBuilder(digest.length * 2);
+			for(byte b : digest)
+			{
+				key.append(Character.forDigit((b >> 4) & 0xf, 16));
+				key.append(Character.forDigit(b & 0xf, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new AssertionError(e);
+		} catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+	
+	private static void closeQuietly(Closeable closeable)
+	{
+		if(closeable == null)
+			return;
+		
+		try
+		{
+			closeable.close();
+		} catch (IOException e)
+		{
+			//nothing to do
+		}
+	}
+	
+	/**
+	 * The answer of the server to a chunk
+	 *
+	 */
+	private static class Result {
+		
+		final boolean complete;
+		final long offset;
+		final Object response;
+		
+		Result(boolean complete, long offset, Object response)
+		{
+			this.complete = complete;
+			this.offset = offset;
+			this.response = response;
+		}
+	}
+}
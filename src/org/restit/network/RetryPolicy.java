@@ -0,0 +1,228 @@
+package org.restit.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.ClientProtocolException;
+import org.restit.model.ServerError;
+
+/**
+ * Decides when a failed request is made again and how long to wait before it. Timeouts, dropped connections and
+ *  the statuses of an overloaded server (429, 502, 503, 504) are retried, waiting a capped exponential backoff with
+ *  jitter or the time the server asks for in Retry-After. Only idempotent methods are retried unless the policy
+ *  allows more, since a POST may have reached the server before the connection failed.
+ *
+ */
+public class RetryPolicy {
+
+	private int maxAttempts = 3;
+	private long initialDelay = 500;
+	private long maxDelay = 30 * 1000;
+	private double multiplier = 2;
+	private double jitter = 0.5;
+	private long maxRetryAfter = 60 * 1000;
+	private boolean retryNonIdempotent = false;
+	
+	private final Random random = new Random();
+	private final AtomicLong retryCount = new AtomicLong();
+	
+	/**
+	 * A policy that never retries
+	 * @return
+	 */
+	public static RetryPolicy noRetries()
+	{
+		RetryPolicy retryPolicy = new RetryPolicy();
+		retryPolicy.setMaxAttempts(1);
+		return retryPolicy;
+	}
+	
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Set the most attempts a request makes, the first one included. 1 turns retries off
+	 * @param maxAttempts
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	/**
+	 * Set the backoff before the first retry in milliseconds
+	 * @param initialDelay
+	 */
+	public void setInitialDelay(long initialDelay) {
+		this.initialDelay = initialDelay;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Set the longest backoff in milliseconds
+	 * @param maxDelay
+	 */
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = maxDelay;
+	}
+
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	/**
+	 * Set the factor the backoff grows by with every retry
+	 * @param multiplier
+	 */
+	public void setMultiplier(double multiplier) {
+		this.multiplier = multiplier;
+	}
+
+	public double getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * Set the part of the backoff that is randomized, from 0 for none to 1 for anything between 0 and the backoff.
+	 *  Keeps clients that failed together from retrying together
+	 * @param jitter
+	 */
+	public void setJitter(double jitter) {
+		this.jitter = Math.max(0, Math.min(jitter, 1));
+	}
+
+	public long getMaxRetryAfter() {
+		return maxRetryAfter;
+	}
+
+	/**
+	 * Set the longest Retry-After in milliseconds that is waited for. A request asked to wait longer fails
+	 * @param maxRetryAfter
+	 */
+	public void setMaxRetryAfter(long maxRetryAfter) {
+		this.maxRetryAfter = maxRetryAfter;
+	}
+
+	public boolean isRetryNonIdempotent() {
+		return retryNonIdempotent;
+	}
+
+	/**
+	 * Should POST requests be retried as well. Only safe when the server recognizes a repeated request
+	 * @param retryNonIdempotent
+	 */
+	public void setRetryNonIdempotent(boolean retryNonIdempotent) {
+		this.retryNonIdempotent = retryNonIdempotent;
+	}
+	
+	/**
+	 * @return The number of retries made with this policy
+	 */
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+	
+	/**
+	 * Get how long to wait before a failed request is made again
+	 * @param requestMethod The method of the request
+	 * @param attempt The number of the attempt that failed, starting at 1
+	 * @param error The failure, an IOException or a ServerErrorException
+	 * @return The delay in milliseconds or -1 if the request should not be retried
+	 */
+	public long getRetryDelay(String requestMethod, int attempt, Exception error)
+	{
+		if(attempt >= this.maxAttempts)
+			return -1;
+		
+		if(!this.retryNonIdempotent && !isIdempotent(requestMethod))
+			return -1;
+		
+		ServerError serverError = error instanceof ServerErrorException ? ((ServerErrorException) error).getError() : null;
+		if(serverError != null && serverError.getException() instanceof IOException)
+		{
+			//a failure of the connection that was already reported
+			error = serverError.getException();
+		}
+		
+		if(error instanceof IOException)
+		{
+			return isRetryable((IOException) error) ? getBackoff(attempt) : -1;
+		}
+		
+		if(serverError != null && isRetryableStatus(serverError.getServerCode()))
+		{
+			long retryAfter = ((ServerErrorException) error).getRetryAfter();
+			if(retryAfter > this.maxRetryAfter)
+				return -1;
+			
+			return retryAfter >= 0 ? retryAfter : getBackoff(attempt);
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Does repeating a request of this method have the same effect as making it once
+	 * @param requestMethod
+	 * @return
+	 */
+	public boolean isIdempotent(String requestMethod)
+	{
+		return RequestMethod.GET.equals(requestMethod) || RequestMethod.PUT.equals(requestMethod) || RequestMethod.DELETE.equals(requestMethod)
+				|| "HEAD".equals(requestMethod) || "OPTIONS".equals(requestMethod);
+	}
+	
+	/**
+	 * Is a failure of the connection likely to pass
+	 * @param e
+	 * @return
+	 */
+	public boolean isRetryable(IOException e)
+	{
+		if(e instanceof ClientProtocolException)
+			return false;
+		
+		//timeouts, resets and reused connections the server already closed
+		return e instanceof SocketTimeoutException || e instanceof SocketException || e instanceof EOFException;
+	}
+	
+	/**
+	 * Is a response status likely to pass
+	 * @param status
+	 * @return
+	 */
+	public boolean isRetryableStatus(int status)
+	{
+		return status == 429 || status == 502 || status == 503 || status == 504;
+	}
+	
+	/**
+	 * Get the backoff before a retry
+	 * @param attempt The number of the attempt that failed, starting at 1
+	 * @return The delay in milliseconds
+	 */
+	public long getBackoff(int attempt)
+	{
+		double backoff = Math.min(this.maxDelay, this.initialDelay * Math.pow(this.multiplier, attempt - 1));
+		return (long) (backoff - backoff * this.jitter * this.random.nextDouble());
+	}
+	
+	/**
+	 * A retry is being made
+	 */
+	void retried()
+	{
+		this.retryCount.incrementAndGet();
+	}
+}
@@ -9,6 +9,19 @@ public abstract class ServerAsyncTask<Params, Progress, Result> extends AsyncTas
 	private ServerError serverError;
 	private boolean connectionError;
 	
+	/**
+	 * Run the task in a lane of the RestIt scheduler instead of the serial AsyncTask executor, so that it does not
+	 *  wait for unrelated tasks. Call on the main thread, like execute
+	 * @param priority The lane to run the task in
+	 * @param params
+	 * @return This task
+	 */
+	@SuppressWarnings("unchecked")
+	public final AsyncTask<Params, Progress, Result> executeOnScheduler(RequestPriority priority, Params... params)
+	{
+		return executeOnExecutor(RestIt.getScheduler().getExecutor(priority), params);
+	}
+	
 	/**
 	 * Perform server task on background thread. This is a final method so it cannot be overridden. Implement
 	 * doOnServer instead. 
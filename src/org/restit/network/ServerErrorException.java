@@ -10,6 +10,8 @@ public class ServerErrorException extends Exception {
 	private static final long serialVersionUID = -5525943103533374970L;
 	
 	private ServerError error;
+	private long retryAfter = -1;
+	private int attemptCount = 1;
 	
 	public ServerErrorException()
 	{
@@ -38,6 +40,28 @@ public class ServerErrorException extends Exception {
 	public void setError(ServerError error) {
 		this.error = error;
 	}
+
+	/**
+	 * @return The milliseconds the server asked to wait before another request, or -1 if it did not say
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+
+	public void setRetryAfter(long retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return The number of attempts that were made before the request failed
+	 */
+	public int getAttemptCount() {
+		return attemptCount;
+	}
+
+	public void setAttemptCount(int attemptCount) {
+		this.attemptCount = attemptCount;
+	}
 	
 	
 }
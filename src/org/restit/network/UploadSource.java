@@ -0,0 +1,241 @@
+package org.restit.network;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The content of an uploaded file. The content is read from its channel into a pooled direct buffer, so an upload
+ *  never holds more than one buffer of the file in memory.
+ *
+ */
+abstract class UploadSource {
+
+	/**
+	 * @return The number of bytes of the content or -1 if it is not known
+	 */
+	public abstract long getLength();
+	
+	/**
+	 * Open the channel to read the content from
+	 */
+	protected abstract ReadableByteChannel openChannel() throws IOException;
+	
+	/**
+	 * Can the content be read again, for another attempt of the upload
+	 */
+	protected boolean isRepeatable()
+	{
+		return true;
+	}
+	
+	/**
+	 * Should the channel be closed after the upload
+	 */
+	protected boolean isOwnChannel()
+	{
+		return true;
+	}
+	
+	/**
+	 * Copy the content to an output
+	 * @param out The channel to write to
+	 * @param progressListener A listener that will respond to upload progress, may be null
+	 * @param transferred The bytes that were already reported to the listener
+	 * @param totalSize The total size reported to the listener
+	 * @return The number of bytes copied
+	 * @throws IOException
+	 */
+	public long writeTo(WritableByteChannel out, ProgressListener progressListener, long transferred, long totalSize) throws IOException
+	{
+		ReadableByteChannel channel = openChannel();
+		try
+		{
+			return NetworkUtil.copy(channel, out, progressListener, transferred, totalSize);
+		} finally
+		{
+			if(isOwnChannel())
+			{
+				channel.close();
+			}
+		}
+	}
+	
+	/**
+	 * Upload a byte array
+	 */
+	static UploadSource of(final byte[] bytes)
+	{
+		return new UploadSource() {
+			@Override
+			public long getLength() {
+				return bytes.length;
+			}
+			
+			@Override
+			protected ReadableByteChannel openChannel() {
+				return new ReadableByteChannel() {
+					
+					private int position;
+					
+					@Override
+					public int read(ByteBuffer destination) {
+						if(this.position == bytes.length)
+							return -1;
+						
+						int count = Math.min(destination.remaining(), bytes.length - this.position);
+						destination.put(bytes, this.position, count);
+						this.position += count;
+						return count;
+					}
+					
+					@Override
+					public boolean isOpen() {
+						return true;
+					}
+					
+					@Override
+					public void close() {
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Upload a file
+	 */
+	static UploadSource of(final File file)
+	{
+		return new UploadSource() {
+			@Override
+			public long getLength() {
+				return file.length();
+			}
+			
+			@Override
+			protected ReadableByteChannel openChannel() throws IOException {
+				return new FileInputStream(file).getChannel();
+			}
+		};
+	}
+	
+	/**
+	 * Upload a range of a file
+	 * @param offset The first byte of the range
+	 * @param count The number of bytes of the range
+	 */
+	static UploadSource of(final File file, final long offset, final long count)
+	{
+		return new UploadSource() {
+			@Override
+			public long getLength() {
+				return count;
+			}
+			
+			@Override
+			protected ReadableByteChannel openChannel() throws IOException {
+				final FileChannel fileChannel = new FileInputStream(file).getChannel();
+				fileChannel.position(offset);
+				
+				//stop at the end of the range
+				return new ReadableByteChannel() {
+					
+					private long remaining = count;
+					
+					@Override
+					public int read(ByteBuffer destination) throws IOException {
+						if(this.remaining <= 0)
+							return -1;
+						
+						int limit = destination.limit();
+						if(destination.remaining() > this.remaining)
+						{
+							destination.limit(destination.position() + (int) this.remaining);
+						}
+						
+						try
+						{
+							int read = fileChannel.read(destination);
+							if(read > 0)
+							{
+								this.remaining -= read;
+							}
+							return read;
+						} finally
+						{
+							destination.limit(limit);
+						}
+					}
+					
+					@Override
+					public boolean isOpen() {
+						return fileChannel.isOpen();
+					}
+					
+					@Override
+					public void close() throws IOException {
+						fileChannel.close();
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Upload the rest of a file channel, from its position to its end. The channel is left open
+	 */
+	static UploadSource of(final FileChannel fileChannel) throws IOException
+	{
+		final long position = fileChannel.position();
+		final long length = fileChannel.size() - position;
+		return new UploadSource() {
+			@Override
+			public long getLength() {
+				return length;
+			}
+			
+			@Override
+			protected ReadableByteChannel openChannel() throws IOException {
+				//start from the same position on every attempt
+				fileChannel.position(position);
+				return fileChannel;
+			}
+			
+			@Override
+			protected boolean isOwnChannel() {
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * Upload a stream. The stream is read to its end and closed
+	 * @param length The number of bytes in the stream or -1 if it is not known
+	 */
+	static UploadSource of(final InputStream stream, final long length)
+	{
+		return new UploadSource() {
+			@Override
+			public long getLength() {
+				return length;
+			}
+			
+			@Override
+			protected ReadableByteChannel openChannel() {
+				return Channels.newChannel(stream);
+			}
+			
+			@Override
+			protected boolean isRepeatable() {
+				return false;
+			}
+		};
+	}
+}
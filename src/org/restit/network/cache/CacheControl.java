@@ -0,0 +1,63 @@
+package org.restit.network.cache;
+
+/**
+ * The directives of a Cache-Control header that matter to a private client cache
+ *
+ */
+class CacheControl {
+
+	private boolean noCache;
+	private boolean noStore;
+	private long maxAgeSeconds = -1;
+	
+	/**
+	 * Parse a Cache-Control header
+	 * @param header The header value, may be null
+	 */
+	public CacheControl(String header)
+	{
+		if(header == null)
+			return;
+		
+		for(String directive : header.split(","))
+		{
+			directive = directive.trim().toLowerCase();
+			
+			if(directive.equals("no-cache") || directive.startsWith("no-cache="))
+			{
+				this.noCache = true;
+			} else if(directive.equals("no-store"))
+			{
+				this.noStore = true;
+			} else if(directive.startsWith("max-age="))
+			{
+				try
+				{
+					this.maxAgeSeconds = Long.parseLong(directive.substring(8).replace("\"", "").trim());
+				} catch (NumberFormatException e)
+				{
+					//a broken max-age makes the response stale
+					this.maxAgeSeconds = 0;
+				}
+			}
+		}
+	}
+	
+	public boolean isNoCache()
+	{
+		return this.noCache;
+	}
+	
+	public boolean isNoStore()
+	{
+		return this.noStore;
+	}
+	
+	/**
+	 * @return The max-age in seconds, or -1 if it is not set
+	 */
+	public long getMaxAgeSeconds()
+	{
+		return this.maxAgeSeconds;
+	}
+}
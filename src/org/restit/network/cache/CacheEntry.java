@@ -0,0 +1,228 @@
+package org.restit.network.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A response stored in the HttpDiskCache. Holds the validators and the freshness information of the response; the
+ *  body stays on disk until it is opened.
+ *
+ */
+public class CacheEntry {
+
+	static final String URL = "url";
+	static final String RESPONSE_TIME = "responseTime";
+	static final String DATE = "date";
+	static final String EXPIRES = "expires";
+	static final String LAST_MODIFIED = "lastModified";
+	static final String LAST_MODIFIED_TIME = "lastModifiedTime";
+	static final String ETAG = "etag";
+	static final String CACHE_CONTROL = "cacheControl";
+	static final String AGE = "age";
+	static final String CONTENT_TYPE = "contentType";
+	static final String VARY_PREFIX = "vary.";
+	
+	private String key;
+	private Properties metadata;
+	private File body;
+	
+	CacheEntry(String key, Properties metadata, File body)
+	{
+		this.key = key;
+		this.metadata = metadata;
+		this.body = body;
+	}
+	
+	String getKey()
+	{
+		return this.key;
+	}
+	
+	Properties getMetadata()
+	{
+		return this.metadata;
+	}
+	
+	public String getUrl()
+	{
+		return this.metadata.getProperty(URL);
+	}
+	
+	public String getContentType()
+	{
+		return this.metadata.getProperty(CONTENT_TYPE);
+	}
+	
+	public String getETag()
+	{
+		return this.metadata.getProperty(ETAG);
+	}
+	
+	public String getLastModified()
+	{
+		return this.metadata.getProperty(LAST_MODIFIED);
+	}
+	
+	/**
+	 * Can the response be used without asking the server
+	 * @param requestHeaders The headers of the new request
+	 * @return
+	 */
+	public boolean isFresh(Map<String, String> requestHeaders)
+	{
+		//the caller asked for an end to end revalidation
+		String pragma = getHeader(requestHeaders, "Pragma");
+		CacheControl requestCacheControl = new CacheControl(getHeader(requestHeaders, "Cache-Control"));
+		if(requestCacheControl.isNoCache() || (pragma != null && pragma.toLowerCase().contains("no-cache")))
+			return false;
+		
+		long freshness = getFreshnessLifetime();
+		if(requestCacheControl.getMaxAgeSeconds() > -1)
+		{
+			freshness = Math.min(freshness, requestCacheControl.getMaxAgeSeconds() * 1000);
+		}
+		
+		return freshness > getCurrentAge(System.currentTimeMillis());
+	}
+	
+	/**
+	 * Get how long the response is fresh for, in milliseconds (RFC 7234 section 4.2.1)
+	 */
+	long getFreshnessLifetime()
+	{
+		CacheControl cacheControl = new CacheControl(this.metadata.getProperty(CACHE_CONTROL));
+		if(cacheControl.isNoCache())
+			return 0;
+		
+		if(cacheControl.getMaxAgeSeconds() > -1)
+			return cacheControl.getMaxAgeSeconds() * 1000;
+		
+		long date = getLong(DATE);
+		long served = date != -1 ? date : getLong(RESPONSE_TIME);
+		
+		long expires = getLong(EXPIRES);
+		if(expires != -1)
+			return Math.max(0, expires - served);
+		
+		//heuristic freshness, a tenth of the time since the last modification
+		long lastModified = getLong(LAST_MODIFIED_TIME);
+		if(lastModified != -1 && lastModified < served)
+			return (served - lastModified) / 10;
+		
+		return 0;
+	}
+	
+	/**
+	 * Get the age of the response, in milliseconds (RFC 7234 section 4.2.3)
+	 */
+	long getCurrentAge(long now)
+	{
+		long responseTime = getLong(RESPONSE_TIME);
+		long date = getLong(DATE);
+		
+		long apparentAge = date != -1 ? Math.max(0, responseTime - date) : 0;
+		long ageHeader = getLong(AGE);
+		long correctedAge = Math.max(apparentAge, ageHeader != -1 ? ageHeader * 1000 : 0);
+		
+		return correctedAge + Math.max(0, now - responseTime);
+	}
+	
+	/**
+	 * Does a new request select this response, based on the Vary header of the response
+	 * @param requestHeaders The headers of the new request
+	 * @return
+	 */
+	boolean matchesVary(Map<String, String> requestHeaders)
+	{
+		for(String name : this.metadata.stringPropertyNames())
+		{
+			if(!name.startsWith(VARY_PREFIX))
+				continue;
+			
+			String header = name.substring(VARY_PREFIX.length());
+			String stored = this.metadata.getProperty(name);
+			String current = getHeader(requestHeaders, header);
+			if(!stored.equals(current != null ? current : ""))
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Get a request header, header names are case insensitive
+	 */
+	static String getHeader(Map<String, String> headers, String name)
+	{
+		if(headers == null)
+			return null;
+		
+		String value = headers.get(name);
+		if(value != null)
+			return value;
+		
+		for(Map.Entry<String, String> header : headers.entrySet())
+		{
+			if(name.equalsIgnoreCase(header.getKey()))
+				return header.getValue();
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Ask the server to only send the response if it changed
+	 * @param connection A connection that has not been connected yet
+	 */
+	public void addValidators(HttpURLConnection connection)
+	{
+		if(getETag() != null)
+		{
+			connection.setRequestProperty("If-None-Match", getETag());
+		}
+		
+		if(getLastModified() != null)
+		{
+			connection.setRequestProperty("If-Modified-Since", getLastModified());
+		}
+	}
+	
+	/**
+	 * Does the entry have a validator to revalidate it with
+	 * @return
+	 */
+	public boolean hasValidators()
+	{
+		return getETag() != null || getLastModified() != null;
+	}
+	
+	/**
+	 * Open the stored body
+	 * @return
+	 * @throws IOException
+	 */
+	public InputStream openBody() throws IOException
+	{
+		return new FileInputStream(this.body);
+	}
+	
+	private long getLong(String name)
+	{
+		String value = this.metadata.getProperty(name);
+		if(value == null)
+			return -1;
+		
+		try
+		{
+			return Long.parseLong(value);
+		} catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+}
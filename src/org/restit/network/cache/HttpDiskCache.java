@@ -0,0 +1,636 @@
+package org.restit.network.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.restit.network.BufferPool;
+
+import android.util.Log;
+
+/**
+ * An on-disk cache of GET responses following the HTTP caching rules (RFC 7234). Fresh responses are served without
+ *  a request, stale responses with an ETag or Last-Modified validator are revalidated with a conditional request.
+ *  The least recently used responses are removed once the cache grows beyond its maximum size.
+ *
+ */
+public class HttpDiskCache {
+
+	private static final String LOG_TAG = "HttpDiskCache";
+	private static final String BODY_SUFFIX = ".body";
+	private static final String METADATA_SUFFIX = ".meta";
+	private static final String TEMP_SUFFIX = ".tmp";
+	
+	private final File directory;
+	private final long maxSize;
+	
+	/**
+	 * The keys of the stored responses with their body size, in least recently used order
+	 */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long size;
+	
+	private int hitCount;
+	private int conditionalHitCount;
+	private int missCount;
+	
+	/**
+	 * Open a cache in a directory, keeping responses that are already stored there
+	 * @param directory The directory to store the responses in
+	 * @param maxSize The maximum size of the stored bodies, in bytes
+	 */
+	public HttpDiskCache(File directory, long maxSize)
+	{
+		this.directory = directory;
+		this.maxSize = maxSize;
+		
+		directory.mkdirs();
+		
+		File[] files = directory.listFiles();
+		if(files == null)
+			return;
+		
+		//rebuild the usage order from the last access time of the bodies
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long left = lhs.lastModified();
+				long right = rhs.lastModified();
+				return left < right ? -1 : (left == right ? 0 : 1);
+			}
+		});
+		
+		for(File file : files)
+		{
+			String name = file.getName();
+			if(name.endsWith(TEMP_SUFFIX))
+			{
+				file.delete();
+			} else if(name.endsWith(BODY_SUFFIX))
+			{
+				String key = name.substring(0, name.length() - BODY_SUFFIX.length());
+				if(getMetadataFile(key).exists())
+				{
+					this.entries.put(key, file.length());
+					this.size += file.length();
+				} else
+				{
+					file.delete();
+				}
+			}
+		}
+		
+		trimToSize();
+	}
+	
+	/**
+	 * Get the stored response for a request
+	 * @param url The url of the request
+	 * @param requestHeaders The headers of the request
+	 * @return The stored response or null
+	 */
+	public synchronized CacheEntry get(String url, Map<String, String> requestHeaders)
+	{
+		String key = getKey(url);
+		if(!this.entries.containsKey(key))
+		{
+			this.missCount++;
+			return null;
+		}
+		
+		Properties metadata = readMetadata(key);
+		if(metadata == null || !url.equals(metadata.getProperty(CacheEntry.URL)))
+		{
+			this.missCount++;
+			return null;
+		}
+		
+		CacheEntry entry = new CacheEntry(key, metadata, getBodyFile(key));
+		if(!entry.matchesVary(requestHeaders))
+		{
+			this.missCount++;
+			return null;
+		}
+		
+		//keep the access order across restarts
+		getBodyFile(key).setLastModified(System.currentTimeMillis());
+		
+		return entry;
+	}
+	
+	/**
+	 * Start storing a response. The body is written to the cache while the returned stream is read, and the
+	 *  response is stored once the stream is closed after the whole body was read.
+	 * @param url The url of the request
+	 * @param requestHeaders The headers of the request
+	 * @param connection The connected connection of the response
+	 * @param body The body of the response
+	 * @return The stream to read the body from
+	 */
+	public InputStream put(String url, Map<String, String> requestHeaders, HttpURLConnection connection, InputStream body)
+	{
+		Properties metadata = createMetadata(url, requestHeaders, connection);
+		if(metadata == null)
+		{
+			//the response can't be stored, drop a stored response that it replaces
+			remove(url);
+			return body;
+		}
+		
+		try
+		{
+			File temp = File.createTempFile(getKey(url), TEMP_SUFFIX, this.directory);
+			return new CachingInputStream(body, getKey(url), metadata, temp);
+		} catch (IOException e)
+		{
+			Log.w(LOG_TAG, "Unable to cache the response of " + url, e);
+			return body;
+		}
+	}
+	
+	/**
+	 * Refresh a stored response with the headers of a 304 Not Modified response
+	 * @param entry The stored response
+	 * @param connection The connection of the 304 response
+	 */
+	public synchronized void update(CacheEntry entry, HttpURLConnection connection)
+	{
+		this.conditionalHitCount++;
+		
+		Properties metadata = entry.getMetadata();
+		metadata.setProperty(CacheEntry.RESPONSE_TIME, String.valueOf(System.currentTimeMillis()));
+		
+		long date = connection.getHeaderFieldDate("Date", -1);
+		if(date != -1)
+		{
+			metadata.setProperty(CacheEntry.DATE, String.valueOf(date));
+		}
+		
+		String cacheControl = connection.getHeaderField("Cache-Control");
+		if(cacheControl != null)
+		{
+			metadata.setProperty(CacheEntry.CACHE_CONTROL, cacheControl);
+		}
+		
+		if(connection.getHeaderField("Expires") != null)
+		{
+			metadata.setProperty(CacheEntry.EXPIRES, String.valueOf(connection.getHeaderFieldDate("Expires", 0)));
+		}
+		
+		String age = connection.getHeaderField("Age");
+		metadata.setProperty(CacheEntry.AGE, age != null ? age.trim() : "-1");
+		
+		String etag = connection.getHeaderField("ETag");
+		if(etag != null)
+		{
+			metadata.setProperty(CacheEntry.ETAG, etag);
+		}
+		
+		String lastModified = connection.getHeaderField("Last-Modified");
+		if(lastModified != null)
+		{
+			metadata.setProperty(CacheEntry.LAST_MODIFIED, lastModified);
+			metadata.setProperty(CacheEntry.LAST_MODIFIED_TIME, String.valueOf(connection.getHeaderFieldDate("Last-Modified", -1)));
+		}
+		
+		if(this.entries.containsKey(entry.getKey()))
+		{
+			writeMetadata(entry.getKey(), metadata);
+		}
+	}
+	
+	/**
+	 * Record that a stored response was used without a request
+	 */
+	public synchronized void recordHit()
+	{
+		this.hitCount++;
+	}
+	
+	/**
+	 * Remove the stored response of a url, done when the resource is changed with POST, PUT or DELETE
+	 * @param url
+	 */
+	public synchronized void remove(String url)
+	{
+		String key = getKey(url);
+		Long length = this.entries.remove(key);
+		if(length != null)
+		{
+			this.size -= length;
+			getBodyFile(key).delete();
+			getMetadataFile(key).delete();
+		}
+	}
+	
+	/**
+	 * Remove all the stored responses
+	 */
+	public synchronized void clear()
+	{
+		for(String key : this.entries.keySet())
+		{
+			getBodyFile(key).delete();
+			getMetadataFile(key).delete();
+		}
+		
+		this.entries.clear();
+		this.size = 0;
+	}
+	
+	public synchronized long getSize()
+	{
+		return this.size;
+	}
+	
+	public long getMaxSize()
+	{
+		return this.maxSize;
+	}
+	
+	/**
+	 * @return The number of responses served without a request
+	 */
+	public synchronized int getHitCount()
+	{
+		return this.hitCount;
+	}
+	
+	/**
+	 * @return The number of responses served after the server answered 304 Not Modified
+	 */
+	public synchronized int getConditionalHitCount()
+	{
+		return this.conditionalHitCount;
+	}
+	
+	/**
+	 * @return The number of requests without a usable stored response
+	 */
+	public synchronized int getMissCount()
+	{
+		return this.missCount;
+	}
+	
+	/**
+	 * Build the metadata of a response, or null if the response may not be stored
+	 */
+	private Properties createMetadata(String url, Map<String, String> requestHeaders, HttpURLConnection connection)
+	{
+		try
+		{
+			if(connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+				return null;
+		} catch (IOException e)
+		{
+			return null;
+		}
+		
+		if(requestHeaders != null && new CacheControl(requestHeaders.get("Cache-Control")).isNoStore())
+			return null;
+		
+		String cacheControl = connection.getHeaderField("Cache-Control");
+		if(new CacheControl(cacheControl).isNoStore())
+			return null;
+		
+		Properties metadata = new Properties();
+		metadata.setProperty(CacheEntry.URL, url);
+		metadata.setProperty(CacheEntry.RESPONSE_TIME, String.valueOf(System.currentTimeMillis()));
+		metadata.setProperty(CacheEntry.DATE, String.valueOf(connection.getHeaderFieldDate("Date", -1)));
+		
+		if(cacheControl != null)
+		{
+			metadata.setProperty(CacheEntry.CACHE_CONTROL, cacheControl);
+		}
+		
+		//an invalid Expires date means the response is already expired
+		if(connection.getHeaderField("Expires") != null)
+		{
+			metadata.setProperty(CacheEntry.EXPIRES, String.valueOf(connection.getHeaderFieldDate("Expires", 0)));
+		}
+		
+		String age = connection.getHeaderField("Age");
+		if(age != null)
+		{
+			metadata.setProperty(CacheEntry.AGE, age.trim());
+		}
+		
+		String etag = connection.getHeaderField("ETag");
+		if(etag != null)
+		{
+			metadata.setProperty(CacheEntry.ETAG, etag);
+		}
+		
+		String lastModified = connection.getHeaderField("Last-Modified");
+		if(lastModified != null)
+		{
+			metadata.setProperty(CacheEntry.LAST_MODIFIED, lastModified);
+			metadata.setProperty(CacheEntry.LAST_MODIFIED_TIME, String.valueOf(connection.getHeaderFieldDate("Last-Modified", -1)));
+		}
+		
+		if(connection.getContentType() != null)
+		{
+			metadata.setProperty(CacheEntry.CONTENT_TYPE, connection.getContentType());
+		}
+		
+		String vary = connection.getHeaderField("Vary");
+		if(vary != null)
+		{
+			for(String header : vary.split(","))
+			{
+				header = header.trim();
+				if(header.equals("*"))
+					return null;
+				
+				String value = null;
+				if(requestHeaders != null)
+				{
+					for(Map.Entry<String, String> requestHeader : requestHeaders.entrySet())
+					{
+						if(requestHeader.getKey().equalsIgnoreCase(header))
+						{
+							value = requestHeader.getValue();
+							header = requestHeader.getKey();
+						}
+					}
+				}
+				
+				metadata.setProperty(CacheEntry.VARY_PREFIX + header, value != null ? value : "");
+			}
+		}
+		
+		//a response that is never fresh and can't be revalidated is not worth storing
+		CacheEntry entry = new CacheEntry(null, metadata, null);
+		if(entry.getFreshnessLifetime() <= 0 && !entry.hasValidators())
+			return null;
+		
+		return metadata;
+	}
+	
+	/**
+	 * Store a fully read response
+	 */
+	private synchronized void commit(String key, Properties metadata, File temp)
+	{
+		Long previous = this.entries.remove(key);
+		if(previous != null)
+		{
+			this.size -= previous;
+		}
+		
+		File body = getBodyFile(key);
+		body.delete();
+		if(!temp.renameTo(body) || !writeMetadata(key, metadata))
+		{
+			temp.delete();
+			body.delete();
+			getMetadataFile(key).delete();
+			return;
+		}
+		
+		this.entries.put(key, body.length());
+		this.size += body.length();
+		
+		trimToSize();
+	}
+	
+	private synchronized void trimToSize()
+	{
+		Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+		while(this.size > this.maxSize && iterator.hasNext())
+		{
+			Map.Entry<String, Long> entry = iterator.next();
+			iterator.remove();
+			
+			this.size -= entry.getValue();
+			getBodyFile(entry.getKey()).delete();
+			getMetadataFile(entry.getKey()).delete();
+		}
+	}
+	
+	private Properties readMetadata(String key)
+	{
+		InputStream in = null;
+		try
+		{
+			in = new FileInputStream(getMetadataFile(key));
+			Properties metadata = new Properties();
+			metadata.load(in);
+			return metadata;
+		} catch (IOException e)
+		{
+			return null;
+		} finally
+		{
+			closeQuietly(in);
+		}
+	}
+	
+	private boolean writeMetadata(String key, Properties metadata)
+	{
+		OutputStream out = null;
+		try
+		{
+			out = new FileOutputStream(getMetadataFile(key));
+			metadata.store(out, null);
+			return true;
+		} catch (IOException e)
+		{
+			Log.w(LOG_TAG, "Unable to write the cache metadata", e);
+			return false;
+		} finally
+		{
+			closeQuietly(out);
+		}
+	}
+	
+	private File getBodyFile(String key)
+	{
+		return new File(this.directory, key + BODY_SUFFIX);
+	}
+	
+	private File getMetadataFile(String key)
+	{
+		return new File(this.directory, key + METADATA_SUFFIX);
+	}
+	
+	private static String getKey(String url)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder(digest.length * 2);
+			for(byte b : digest)
+			{
+				key.append(Character.forDigit((b >> 4) & 0xf, 16));
+				key.append(Character.forDigit(b & 0xf, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new AssertionError(e);
+		} catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+	
+	private static void closeQuietly(java.io.Closeable closeable)
+	{
+		if(closeable == null)
+			return;
+		
+		try
+		{
+			closeable.close();
+		} catch (IOException e)
+		{
+			//nothing to do
+		}
+	}
+	
+	/**
+	 * Copies a response body to a temporary file while it is read and stores it when it is closed
+	 *
+	 */
+	private class CachingInputStream extends FilterInputStream {
+		
+		private final String key;
+		private final Properties metadata;
+		private final File temp;
+		private OutputStream out;
+		private boolean complete;
+		
+		public CachingInputStream(InputStream in, String key, Properties metadata, File temp) throws IOException
+		{
+			super(in);
+			this.key = key;
+			this.metadata = metadata;
+			this.temp = temp;
+			this.out = new FileOutputStream(temp);
+		}
+		
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if(b == -1)
+			{
+				this.complete = true;
+			} else if(this.out != null)
+			{
+				try
+				{
+					this.out.write(b);
+				} catch (IOException e)
+				{
+					abort();
+				}
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException
+		{
+			int read = super.read(buffer, offset, count);
+			if(read == -1)
+			{
+				this.complete = true;
+			} else if(this.out != null)
+			{
+				try
+				{
+					this.out.write(buffer, offset, read);
+				} catch (IOException e)
+				{
+					abort();
+				}
+			}
+			return read;
+		}
+		
+		@Override
+		public long skip(long count) throws IOException
+		{
+			//skipped bytes still have to reach the file
+			byte[] buffer = BufferPool.getShared().acquireBytes(BufferPool.SMALL);
+			try
+			{
+				int read = read(buffer, 0, (int) Math.min(count, buffer.length));
+				return read == -1 ? 0 : read;
+			} finally
+			{
+				BufferPool.getShared().release(buffer);
+			}
+		}
+		
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				//the decoder may stop before the end of the body, read the rest for the cache
+				if(this.out != null && !this.complete)
+				{
+					byte[] buffer = BufferPool.getShared().acquireBytes(BufferPool.SMALL);
+					try
+					{
+						while(read(buffer, 0, buffer.length) != -1)
+						{
+							//copied by read
+						}
+					} finally
+					{
+						BufferPool.getShared().release(buffer);
+					}
+				}
+			} catch (IOException e)
+			{
+				abort();
+			} finally
+			{
+				if(this.out != null)
+				{
+					try
+					{
+						this.out.close();
+						commit(this.key, this.metadata, this.temp);
+					} catch (IOException e)
+					{
+						this.temp.delete();
+					}
+					this.out = null;
+				}
+				
+				super.close();
+			}
+		}
+		
+		private void abort()
+		{
+			closeQuietly(this.out);
+			this.out = null;
+			this.temp.delete();
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package org.restit.network.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in-memory cache of mapped responses, so that a repeated GET returns the POJO or List RestItMapper produced
+ *  without a request or a decode. Entries are keyed by the URL and the request headers, expire after their time to
+ *  live and the least recently used entries are removed once the cache is full.
+ * 
+ * The cached objects are shared by every caller that gets them, treat them as read only.
+ *
+ */
+public class ObjectCache {
+
+	private final int maxEntries;
+	private final long defaultTimeToLive;
+	
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	
+	private int hitCount;
+	private int missCount;
+	
+	/**
+	 * Create a cache
+	 * @param maxEntries The most objects to keep
+	 * @param defaultTimeToLive The milliseconds an object is kept when no other time is given
+	 */
+	public ObjectCache(int maxEntries, long defaultTimeToLive)
+	{
+		this.maxEntries = maxEntries;
+		this.defaultTimeToLive = defaultTimeToLive;
+	}
+	
+	/**
+	 * Get the object mapped from a request
+	 * @param url The url of the request
+	 * @param requestHeaders The headers of the request
+	 * @return The object or null if it is not cached or has expired
+	 */
+	public synchronized Object get(String url, Map<String, String> requestHeaders)
+	{
+		String key = getKey(url, requestHeaders);
+		Entry entry = this.entries.get(key);
+		
+		if(entry != null && entry.expires <= System.currentTimeMillis())
+		{
+			this.entries.remove(key);
+			entry = null;
+		}
+		
+		if(entry == null)
+		{
+			this.missCount++;
+			return null;
+		}
+		
+		this.hitCount++;
+		return entry.value;
+	}
+	
+	/**
+	 * Cache the object mapped from a request for the default time to live
+	 * @param url The url of the request
+	 * @param requestHeaders The headers of the request
+	 * @param value The mapped object
+	 */
+	public void put(String url, Map<String, String> requestHeaders, Object value)
+	{
+		put(url, requestHeaders, value, this.defaultTimeToLive);
+	}
+	
+	/**
+	 * Cache the object mapped from a request
+	 * @param url The url of the request
+	 * @param requestHeaders The headers of the request
+	 * @param value The mapped object
+	 * @param timeToLive The milliseconds to keep the object for
+	 */
+	public synchronized void put(String url, Map<String, String> requestHeaders, Object value, long timeToLive)
+	{
+		if(value == null || timeToLive <= 0)
+			return;
+		
+		this.entries.put(getKey(url, requestHeaders), new Entry(url, value, System.currentTimeMillis() + timeToLive));
+		
+		Iterator<Entry> iterator = this.entries.values().iterator();
+		while(this.entries.size() > this.maxEntries && iterator.hasNext())
+		{
+			iterator.next();
+			iterator.remove();
+		}
+	}
+	
+	/**
+	 * Remove the objects of a url and of every url below it, e.g. http://host/users also removes
+	 *  http://host/users/5 and http://host/users?page=2
+	 * @param urlPrefix
+	 */
+	public synchronized void invalidate(String urlPrefix)
+	{
+		Iterator<Entry> iterator = this.entries.values().iterator();
+		while(iterator.hasNext())
+		{
+			String url = iterator.next().url;
+			if(url.startsWith(urlPrefix) && (url.length() == urlPrefix.length() || urlPrefix.endsWith("/") || "/?#".indexOf(url.charAt(urlPrefix.length())) != -1))
+			{
+				iterator.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Remove all the objects
+	 */
+	public synchronized void clear()
+	{
+		this.entries.clear();
+	}
+	
+	public synchronized int size()
+	{
+		return this.entries.size();
+	}
+	
+	public int getMaxEntries()
+	{
+		return this.maxEntries;
+	}
+	
+	public long getDefaultTimeToLive()
+	{
+		return this.defaultTimeToLive;
+	}
+	
+	public synchronized int getHitCount()
+	{
+		return this.hitCount;
+	}
+	
+	public synchronized int getMissCount()
+	{
+		return this.missCount;
+	}
+	
+	/**
+	 * Build the key of a request from its url and its headers in name order
+	 */
+	private static String getKey(String url, Map<String, String> requestHeaders)
+	{
+		StringBuilder key = new StringBuilder(url);
+		if(requestHeaders != null)
+		{
+			for(Map.Entry<String, String> header : new TreeMap<String, String>(requestHeaders).entrySet())
+			{
+				key.append('\n').append(header.getKey()).append(':').append(header.getValue());
+			}
+		}
+		return key.toString();
+	}
+	
+	private static class Entry {
+		
+		final String url;
+		final Object value;
+		final long expires;
+		
+		Entry(String url, Object value, long expires)
+		{
+			this.url = url;
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+}
@@ -1,13 +1,20 @@
 package org.restit.objectmapping;
 
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapterFactory;
 
 public class ClassRegistration {
 
 	private Class clazz;
 	private JsonDeserializer jsonDeserializer;
 	private JsonSerializer jsonSerializer;
+	private TypeAdapterFactory typeAdapterFactory;
+	private volatile Gson gson;
 	
 	public ClassRegistration(Class clazz, JsonSerializer jsonSerializer, JsonDeserializer jsonDeserializer)
 	{
@@ -15,6 +22,12 @@ public class ClassRegistration {
 		setJsonSerializer(jsonSerializer);
 		setJsonDeserializer(jsonDeserializer);
 	}
+	
+	public ClassRegistration(Class<?> clazz, TypeAdapterFactory typeAdapterFactory)
+	{
+		setClazz(clazz);
+		setTypeAdapterFactory(typeAdapterFactory);
+	}
 
 	public Class getClazz() {
 		return clazz;
@@ -22,6 +35,7 @@ public class ClassRegistration {
 
 	public void setClazz(Class clazz) {
 		this.clazz = clazz;
+		invalidate();
 	}
 
 	public JsonDeserializer getJsonDeserializer() {
@@ -30,6 +44,7 @@ public class ClassRegistration {
 
 	public void setJsonDeserializer(JsonDeserializer jsonDeserializer) {
 		this.jsonDeserializer = jsonDeserializer;
+		invalidate();
 	}
 
 	public JsonSerializer getJsonSerializer() {
@@ -38,7 +53,81 @@ public class ClassRegistration {
 
 	public void setJsonSerializer(JsonSerializer jsonSerializer) {
 		this.jsonSerializer = jsonSerializer;
+		invalidate();
 	}
 	
+	public TypeAdapterFactory getTypeAdapterFactory() {
+		return typeAdapterFactory;
+	}
+
+	/**
+	 * Set a factory for streaming adapters, like the ones generated for RestItModel classes
+	 * @param typeAdapterFactory
+	 */
+	public void setTypeAdapterFactory(TypeAdapterFactory typeAdapterFactory) {
+		this.typeAdapterFactory = typeAdapterFactory;
+		invalidate();
+	}
+	
+	/**
+	 * Get the Gson instance used to map json to and from this class. It is built the first time it is needed and
+	 *  then shared by every decode for this registration
+	 * @return
+	 */
+	public Gson getGson()
+	{
+		Gson result = this.gson;
+		if(result == null)
+		{
+			synchronized (this)
+			{
+				result = this.gson;
+				if(result == null)
+				{
+					List<TypeAdapterFactory> factories = RestItMapper.getTypeAdapterFactories();
+					
+					if(this.jsonDeserializer != null || this.jsonSerializer != null || !factories.isEmpty())
+					{
+						//perform custom object mapping
+						GsonBuilder builder = new GsonBuilder();
+						
+						if(this.jsonDeserializer != null)
+						{
+							builder.registerTypeAdapter(this.clazz, this.jsonDeserializer);
+						}
+						
+						if(this.jsonSerializer != null)
+						{
+							builder.registerTypeAdapter(this.clazz, this.jsonSerializer);
+						}
+						
+						//generated adapters also map nested model objects without reflection
+						for(TypeAdapterFactory factory : factories)
+						{
+							builder.registerTypeAdapterFactory(factory);
+						}
+						
+						result = builder.create();
+					} else
+					{
+						//do simple automatic mapping
+						result = new Gson();
+					}
+					
+					this.gson = result;
+				}
+			}
+		}
+		
+		return result;
+	}
 	
+	/**
+	 * Throw away the cached Gson instance so that it is rebuilt on the next decode. Waits for a Gson instance that
+	 *  is being built so that it can not be cached after this call
+	 */
+	public synchronized void invalidate()
+	{
+		this.gson = null;
+	}
 }
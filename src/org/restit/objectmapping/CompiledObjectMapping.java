@@ -0,0 +1,313 @@
+package org.restit.objectmapping;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * An ObjectMapping compiled into a binding plan. Fields and setters are looked up once, when the mapping is
+ *  registered. Decoding streams each json value straight into its binding without building a tree and without
+ *  looking anything up by name through reflection.
+ * 
+ * Keys that are not in the mapping are bound to the field with the same name, like Gson does.
+ *
+ */
+class CompiledObjectMapping implements TypeAdapterFactory {
+
+	private Class<?> clazz;
+	private Constructor<?> constructor;
+	private Map<String, Binding> bindings = new HashMap<String, Binding>();
+	private List<Binding> orderedBindings = new ArrayList<Binding>();
+	
+	/**
+	 * Compile an object mapping
+	 * @param objectMapping
+	 * @throws IllegalArgumentException if an attribute can not be found on the class
+	 */
+	public CompiledObjectMapping(ObjectMapping objectMapping)
+	{
+		this.clazz = objectMapping.getClazz();
+		
+		try
+		{
+			this.constructor = this.clazz.getDeclaredConstructor();
+			this.constructor.setAccessible(true);
+			
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(this.clazz.getName() + " needs a constructor without arguments to be mapped", e);
+		}
+		
+		Map<String, String> attributeMappings = objectMapping.getAttributeMappings();
+		
+		//default bindings use the field name as the json key
+		for(Class<?> current = this.clazz; current != null && current != Object.class; current = current.getSuperclass())
+		{
+			for(Field field : current.getDeclaredFields())
+			{
+				int modifiers = field.getModifiers();
+				if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers))
+					continue;
+				
+				//a mapped attribute or a response key taken by the mapping is not bound by its field name
+				if(attributeMappings.containsValue(field.getName()) || attributeMappings.containsKey(field.getName()) || this.bindings.containsKey(field.getName()))
+					continue;
+				
+				addBinding(field.getName(), field.getName());
+			}
+		}
+		
+		//mapped attributes use the response key
+		Iterator<Map.Entry<String, String>> it = attributeMappings.entrySet().iterator();
+		while(it.hasNext())
+		{
+			Map.Entry<String, String> attributeMapping = it.next();
+			addBinding(attributeMapping.getKey(), attributeMapping.getValue());
+		}
+	}
+	
+	/**
+	 * Resolve the setter and getter of an attribute and bind them to a json key
+	 * @param jsonKey
+	 * @param attribute The name of the POJO attribute
+	 */
+	private void addBinding(String jsonKey, String attribute)
+	{
+		if(attribute.length() == 0)
+			throw new IllegalArgumentException("The response key '" + jsonKey + "' is mapped to an empty attribute name on " + this.clazz.getName());
+		
+		Field field = findField(attribute);
+		String capitalized = Character.toUpperCase(attribute.charAt(0)) + attribute.substring(1);
+		
+		Binding binding = new Binding(this.orderedBindings.size(), jsonKey);
+		binding.field = field;
+		
+		//prefer public accessors, fall back to the field itself
+		Class<?> fieldType = field != null ? field.getType() : null;
+		binding.setter = findMethod("set" + capitalized, fieldType);
+		binding.getter = findMethod((fieldType == boolean.class ? "is" : "get") + capitalized, null);
+		if(binding.getter == null && fieldType == boolean.class)
+		{
+			binding.getter = findMethod("get" + capitalized, null);
+		}
+		
+		if(binding.setter != null)
+		{
+			binding.type = binding.setter.getGenericParameterTypes()[0];
+			binding.primitive = binding.setter.getParameterTypes()[0].isPrimitive();
+		} else if(field != null)
+		{
+			field.setAccessible(true);
+			binding.type = field.getGenericType();
+			binding.primitive = field.getType().isPrimitive();
+		} else
+		{
+			throw new IllegalArgumentException("No field or setter named '" + attribute + "' on " + this.clazz.getName());
+		}
+		
+		if(binding.getter == null && field != null)
+		{
+			field.setAccessible(true);
+		}
+		
+		this.bindings.put(jsonKey, binding);
+		this.orderedBindings.add(binding);
+	}
+	
+	private Field findField(String name)
+	{
+		for(Class<?> current = this.clazz; current != null && current != Object.class; current = current.getSuperclass())
+		{
+			try
+			{
+				return current.getDeclaredField(name);
+			} catch (NoSuchFieldException e) {
+				//look in the super class
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Find a public method
+	 * @param name
+	 * @param parameterType The type of the single parameter, null for a method without parameters. A setter with
+	 *  any single parameter is accepted when the type is not known
+	 * @return
+	 */
+	private Method findMethod(String name, Class<?> parameterType)
+	{
+		for(Method method : this.clazz.getMethods())
+		{
+			if(!method.getName().equals(name) || Modifier.isStatic(method.getModifiers()))
+				continue;
+			
+			Class<?>[] parameters = method.getParameterTypes();
+			if(name.startsWith("set") ? (parameters.length == 1 && (parameterType == null || parameters[0] == parameterType)) : parameters.length == 0)
+			{
+				return method;
+			}
+		}
+		
+		return null;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+	{
+		if(type.getRawType() != this.clazz)
+			return null;
+		
+		return (TypeAdapter<T>) new Adapter(gson);
+	}
+	
+	/**
+	 * A json key bound to a POJO attribute
+	 */
+	private static class Binding {
+		
+		private int index;
+		private String jsonKey;
+		private Type type;
+		private boolean primitive;
+		private Field field;
+		private Method setter;
+		private Method getter;
+		
+		public Binding(int index, String jsonKey)
+		{
+			this.index = index;
+			this.jsonKey = jsonKey;
+		}
+		
+		public void set(Object object, Object value) throws IllegalAccessException, InvocationTargetException
+		{
+			if(this.setter != null)
+				this.setter.invoke(object, value);
+			else
+				this.field.set(object, value);
+		}
+		
+		public Object get(Object object) throws IllegalAccessException, InvocationTargetException
+		{
+			if(this.getter != null)
+				return this.getter.invoke(object);
+			
+			return this.field != null ? this.field.get(object) : null;
+		}
+		
+		public boolean isReadable()
+		{
+			return this.getter != null || this.field != null;
+		}
+	}
+	
+	/**
+	 * Streams json into the bindings of the plan
+	 */
+	@SuppressWarnings("unchecked")
+	private class Adapter extends TypeAdapter<Object> {
+		
+		//value adapters, in the same order as the bindings
+		private TypeAdapter<?>[] valueAdapters;
+		
+		public Adapter(Gson gson)
+		{
+			this.valueAdapters = new TypeAdapter<?>[orderedBindings.size()];
+			for(int i = 0; i < this.valueAdapters.length; i++)
+			{
+				this.valueAdapters[i] = gson.getAdapter(TypeToken.get(orderedBindings.get(i).type));
+			}
+		}
+		
+		@Override
+		public Object read(JsonReader in) throws IOException
+		{
+			if(in.peek() == JsonToken.NULL)
+			{
+				in.nextNull();
+				return null;
+			}
+			
+			try
+			{
+				Object object = constructor.newInstance();
+				
+				in.beginObject();
+				while(in.hasNext())
+				{
+					Binding binding = bindings.get(in.nextName());
+					if(binding == null)
+					{
+						in.skipValue();
+						continue;
+					}
+					
+					Object value = this.valueAdapters[binding.index].read(in);
+					if(value != null || !binding.primitive)
+					{
+						binding.set(object, value);
+					}
+				}
+				in.endObject();
+				
+				return object;
+				
+			} catch (InstantiationException e) {
+				throw new JsonParseException(e);
+			} catch (IllegalAccessException e) {
+				throw new JsonParseException(e);
+			} catch (InvocationTargetException e) {
+				throw new JsonParseException(e.getCause());
+			}
+		}
+		
+		@Override
+		public void write(JsonWriter out, Object object) throws IOException
+		{
+			if(object == null)
+			{
+				out.nullValue();
+				return;
+			}
+			
+			try
+			{
+				out.beginObject();
+				for(Binding binding : orderedBindings)
+				{
+					if(!binding.isReadable())
+						continue;
+					
+					out.name(binding.jsonKey);
+					((TypeAdapter<Object>) this.valueAdapters[binding.index]).write(out, binding.get(object));
+				}
+				out.endObject();
+				
+			} catch (IllegalAccessException e) {
+				throw new JsonParseException(e);
+			} catch (InvocationTargetException e) {
+				throw new JsonParseException(e.getCause());
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.restit.objectmapping;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -26,6 +27,14 @@ public class ObjectMapping {
 		this.clazz = clazz;
 	}
 	
+	public Class<?> getClazz() {
+		return clazz;
+	}
+
+	public String getJsonName() {
+		return jsonName;
+	}
+	
 	/**
 	 * Get the attribute map
 	 * @return
@@ -34,7 +43,7 @@ public class ObjectMapping {
 	{
 		if(this.attributeMap == null)
 		{
-			this.attributeMap = new HashMap<String, String>();
+			this.attributeMap = new LinkedHashMap<String, String>();
 		}
 		
 		return this.attributeMap;
@@ -53,4 +62,12 @@ public class ObjectMapping {
 		getAttributeMap().put(responseKey, pojoAttribute);
 	}
 	
+	/**
+	 * Get the mappings between response keys and POJO attributes
+	 * @return
+	 */
+	public Map<String, String> getAttributeMappings()
+	{
+		return Collections.unmodifiableMap(getAttributeMap());
+	}
 }
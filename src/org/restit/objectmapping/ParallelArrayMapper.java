@@ -0,0 +1,328 @@
+package org.restit.objectmapping;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Parses and maps the elements of a large JSON array on a bounded pool of worker threads. The calling thread only
+ *  scans the raw characters for the commas between the elements and cuts the array into chunks of raw JSON, which
+ *  the workers parse and bind while the rest of the array is still being scanned. An array that ends before the
+ *  threshold is parsed on the calling thread.
+ *
+ */
+class ParallelArrayMapper {
+
+	//number of elements that are mapped together by one worker
+	private static final int CHUNK_SIZE = 256;
+	
+	private static ExecutorService executor;
+	
+	/**
+	 * Get the shared worker pool
+	 * @return
+	 */
+	private static synchronized ExecutorService getExecutor()
+	{
+		if(executor == null)
+		{
+			final AtomicInteger threadCount = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(RestItMapper.getParallelMappingThreads(), new ThreadFactory() {
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "RestItMapper-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		return executor;
+	}
+	
+	/**
+	 * Shut down the worker pool so that it is rebuilt with the current settings on next use
+	 */
+	static synchronized void reset()
+	{
+		if(executor != null)
+		{
+			executor.shutdown();
+			executor = null;
+		}
+	}
+	
+	/**
+	 * Find the array of a response that starts with the given key, like {"key": [ ... Only plain JSON is recognized,
+	 *  responses that need a lenient reader are left to the JsonReader
+	 * @param text The beginning of the response
+	 * @param key The root key that has been read from the response
+	 * @return The index right after the opening bracket of the array or -1 if it was not found
+	 */
+	static int findRootArray(CharSequence text, String key)
+	{
+		int i = skipWhitespace(text, 0);
+		if(i < text.length() && text.charAt(i) == '\ufeff')
+		{
+			i = skipWhitespace(text, i + 1);
+		}
+		
+		if(i >= text.length() || text.charAt(i) != '{')
+			return -1;
+		
+		i = skipWhitespace(text, i + 1);
+		if(i >= text.length() || text.charAt(i) != '"')
+			return -1;
+		
+		//an escaped key is left to the JsonReader
+		int end = i + 1;
+		while(end < text.length() && text.charAt(end) != '"' && text.charAt(end) != '\\')
+		{
+			end++;
+		}
+		
+		if(end >= text.length() || text.charAt(end) != '"' || !key.contentEquals(text.subSequence(i + 1, end)))
+			return -1;
+		
+		i = skipWhitespace(text, end + 1);
+		if(i >= text.length() || text.charAt(i) != ':')
+			return -1;
+		
+		i = skipWhitespace(text, i + 1);
+		if(i >= text.length() || text.charAt(i) != '[')
+			return -1;
+		
+		return i + 1;
+	}
+	
+	private static int skipWhitespace(CharSequence text, int index)
+	{
+		while(index < text.length())
+		{
+			char c = text.charAt(index);
+			if(c != ' ' && c != '\t' && c != '\n' && c != '\r')
+				break;
+			
+			index++;
+		}
+		return index;
+	}
+	
+	/**
+	 * Read the rest of an array and map every element, keeping the order of the response. The first chunk holds the
+	 *  threshold number of elements and is only handed to a worker once the array turns out to be longer
+	 * @param reader The reader positioned right after the opening bracket of the array
+	 * @param classRegistration The registration of the elements
+	 * @param threshold The number of elements needed before the workers are used
+	 * @return The mapped elements
+	 * @throws IOException
+	 */
+	static List<Object> readArray(Reader reader, ClassRegistration classRegistration, int threshold) throws IOException
+	{
+		Class<?> clazz = classRegistration.getClazz();
+		TypeAdapter<?> adapter = classRegistration.getGson().getAdapter(clazz);
+		List<Future<List<Object>>> chunks = new ArrayList<Future<List<Object>>>();
+		boolean completed = false;
+		try
+		{
+			StringBuilder chunk = new StringBuilder().append('[');
+			int chunkLimit = Math.max(threshold, 1);
+			int chunkElements = 0;
+			
+			//state of the scan inside the current element
+			int depth = 0;
+			char quote = 0;
+			boolean escaped = false;
+			
+			char[] buffer = new char[4096];
+			int count;
+			scan:
+			while((count = reader.read(buffer)) > -1)
+			{
+				int from = 0;
+				for(int i = 0; i < count; i++)
+				{
+					char c = buffer[i];
+					if(quote != 0)
+					{
+						if(escaped)
+						{
+							escaped = false;
+						} else if(c == '\\')
+						{
+							escaped = true;
+						} else if(c == quote)
+						{
+							quote = 0;
+						}
+						continue;
+					}
+					
+					switch(c)
+					{
+						case '"':
+						case '\'':
+							quote = c;
+							break;
+						case '[':
+						case '{':
+							depth++;
+							break;
+						case '}':
+						case ']':
+							if(depth > 0)
+							{
+								depth--;
+								break;
+							}
+							
+							if(c == '}')
+								throw new MalformedJsonException("Unexpected '}' in the array of the response");
+							
+							//the end of the array
+							chunk.append(buffer, from, i - from).append(']');
+							break scan;
+						case ',':
+							if(depth > 0)
+								break;
+							
+							if(++chunkElements < chunkLimit)
+								break;
+							
+							//hand this chunk to a worker and keep scanning
+							chunk.append(buffer, from, i - from).append(']');
+							chunks.add(submit(new MapChunk(chunk.toString(), adapter)));
+							
+							chunk = new StringBuilder().append('[');
+							chunkLimit = CHUNK_SIZE;
+							chunkElements = 0;
+							from = i + 1;
+							break;
+					}
+				}
+				
+				chunk.append(buffer, from, count - from);
+			}
+			
+			if(count < 0)
+				throw new EOFException("End of input inside the array of the response");
+			
+			//map whatever is left on this thread
+			List<Object> remainder = new MapChunk(chunk.toString(), adapter).call();
+			
+			List<Object> results = new ArrayList<Object>();
+			for(Future<List<Object>> future : chunks)
+			{
+				results.addAll(future.get());
+			}
+			results.addAll(remainder);
+			
+			completed = true;
+			return results;
+			
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while mapping the response");
+			
+		} catch (ExecutionException e) {
+			
+			//surface mapping errors as if they happened on this thread
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			
+			if(cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			
+			throw new JsonIOException(cause);
+			
+		} finally {
+			
+			if(!completed)
+			{
+				//the response failed, stop mapping the other chunks
+				for(Future<List<Object>> future : chunks)
+				{
+					future.cancel(true);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Hand a chunk to the workers. When the pool has just been shut down by reset() the chunk is mapped on this
+	 *  thread instead
+	 * @param chunk
+	 * @return
+	 */
+	private static Future<List<Object>> submit(MapChunk chunk)
+	{
+		try
+		{
+			return getExecutor().submit(chunk);
+			
+		} catch (RejectedExecutionException e) {
+			
+			FutureTask<List<Object>> task = new FutureTask<List<Object>>(chunk);
+			task.run();
+			return task;
+		}
+	}
+	
+	/**
+	 * Parses a chunk of raw array elements and maps them to POJOs
+	 *
+	 */
+	private static class MapChunk implements Callable<List<Object>> {
+		
+		private String json;
+		private TypeAdapter<?> adapter;
+		
+		public MapChunk(String json, TypeAdapter<?> adapter)
+		{
+			this.json = json;
+			this.adapter = adapter;
+		}
+		
+		@Override
+		public List<Object> call() throws IOException
+		{
+			JsonReader reader = new JsonReader(new StringReader(this.json));
+			reader.setLenient(true);
+			
+			List<Object> results = new ArrayList<Object>();
+			reader.beginArray();
+			while(reader.hasNext())
+			{
+				results.add(this.adapter.read(reader));
+			}
+			reader.endArray();
+			
+			return results;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package org.restit.objectmapping;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import android.util.Log;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Iterates over the POJOs of a response while they are read from the server. Only the current element is held in
+ *  memory. The iterator closes itself once the last element has been read. Call close() to stop early, which also
+ *  closes the underlying connection.
+ *
+ * @param <T> The registered class of the elements
+ */
+public class RestItIterator<T> implements Iterator<T>, Closeable {
+
+	private static final String LOG_TAG = RestItIterator.class.getName();
+	
+	private JsonReader reader;
+	private TypeAdapter<? extends T> adapter;
+	private Closeable resource;
+	private boolean array;
+	private boolean singleValueRead;
+	private boolean closed;
+	
+	/**
+	 * Constructor
+	 * @param reader The reader positioned at the value of the registered key
+	 * @param adapter The adapter used to map each element
+	 * @param resource Closed together with the iterator, for example the connection the response is read from
+	 * @throws IOException
+	 */
+	public RestItIterator(JsonReader reader, TypeAdapter<? extends T> adapter, Closeable resource) throws IOException
+	{
+		this.reader = reader;
+		this.adapter = adapter;
+		this.resource = resource;
+		
+		JsonToken token = reader.peek();
+		if(token == JsonToken.BEGIN_ARRAY)
+		{
+			//step inside the array so that elements can be read one at a time
+			reader.beginArray();
+			this.array = true;
+			
+		} else if(token == JsonToken.NULL)
+		{
+			//nothing to iterate
+			reader.nextNull();
+			this.singleValueRead = true;
+		}
+	}
+	
+	@Override
+	public boolean hasNext()
+	{
+		if(this.closed)
+			return false;
+		
+		boolean hasNext = false;
+		try
+		{
+			hasNext = this.array ? this.reader.hasNext() : !this.singleValueRead;
+			
+		} catch (IOException e) {
+			close();
+			throw new JsonIOException(e);
+		}
+		
+		if(!hasNext)
+		{
+			//all elements have been read, release the connection
+			close();
+		}
+		
+		return hasNext;
+	}
+	
+	@Override
+	public T next()
+	{
+		if(!hasNext())
+			throw new NoSuchElementException();
+		
+		try
+		{
+			this.singleValueRead = true;
+			return this.adapter.read(this.reader);
+			
+		} catch (IOException e) {
+			close();
+			throw new JsonIOException(e);
+		}
+	}
+	
+	/**
+	 * Elements are read from the server and can not be removed
+	 */
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Stop reading the response and close the connection
+	 */
+	@Override
+	public void close()
+	{
+		if(this.closed)
+			return;
+		
+		this.closed = true;
+		
+		try
+		{
+			//the resource owns the stream, so it can finish reading it before it is closed
+			if(this.resource != null)
+			{
+				this.resource.close();
+			} else
+			{
+				this.reader.close();
+			}
+		} catch (IOException e)
+		{
+			Log.w(LOG_TAG, e.getLocalizedMessage(), e);
+		}
+	}
+}
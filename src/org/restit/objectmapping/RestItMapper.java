@@ -1,27 +1,65 @@
 package org.restit.objectmapping;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackReader;
+import java.io.Reader;
 import java.io.StringReader;
+import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.restit.objectmapping.codec.JsonCodec;
+import org.restit.objectmapping.codec.RestItCodec;
 
 import android.util.Log;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 
 public class RestItMapper {
 
 	private static final String LOG_TAG = RestItMapper.class.getName();
-	protected static Map<String, ClassRegistration> classMaps;
+	
+	//factories generated by the RestIt model processor, listed per library
+	private static final String GENERATED_MODELS_RESOURCE = "META-INF/services/org.restit.objectmapping.RestItModel";
+	private static final String GENERATED_FACTORY_SUFFIX = "_RestItAdapterFactory";
+	
+	//read lock free by every request, written through storeClassRegistration
+	protected static final Map<String, ClassRegistration> classMaps = new ConcurrentHashMap<String, ClassRegistration>();
+	
+	//codecs in order of preference, the last one is the default JSON codec
+	private static final List<RestItCodec> codecs = new CopyOnWriteArrayList<RestItCodec>(Collections.singletonList(new JsonCodec()));
+	private static volatile String acceptHeader = buildAcceptHeader();
+	
+	//json key of each registered class, used when writing objects
+	private static final Map<Class<?>, String> jsonNames = new ConcurrentHashMap<Class<?>, String>();
+	
+	private static volatile boolean parallelMapping = false;
+	private static volatile int parallelMappingThreshold = 2000;
+	private static volatile int parallelMappingThreads = Runtime.getRuntime().availableProcessors();
 	
 	/**
 	 * Get the map of java classes and json class names
@@ -29,16 +67,191 @@ public class RestItMapper {
 	 */
 	protected static Map<String, ClassRegistration> getClassMaps()
 	{
-		if(classMaps == null)
+		return classMaps;
+	}
+	
+	/**
+	 * Is parallel mapping of large array responses turned on
+	 * @return
+	 */
+	public static boolean isParallelMapping() {
+		return parallelMapping;
+	}
+
+	/**
+	 * Map the elements of large array responses on a pool of worker threads. The order of the response is kept.
+	 *  Off by default.
+	 * @param parallelMapping
+	 */
+	public static void setParallelMapping(boolean parallelMapping) {
+		RestItMapper.parallelMapping = parallelMapping;
+	}
+
+	/**
+	 * Get the number of array elements needed before parallel mapping is used
+	 * @return
+	 */
+	public static int getParallelMappingThreshold() {
+		return parallelMappingThreshold;
+	}
+
+	/**
+	 * Set the number of array elements needed before parallel mapping is used. Smaller arrays are mapped on the
+	 *  calling thread.
+	 * @param parallelMappingThreshold
+	 */
+	public static void setParallelMappingThreshold(int parallelMappingThreshold) {
+		RestItMapper.parallelMappingThreshold = parallelMappingThreshold;
+	}
+
+	/**
+	 * Get the number of worker threads used for parallel mapping
+	 * @return
+	 */
+	public static int getParallelMappingThreads() {
+		return parallelMappingThreads;
+	}
+
+	/**
+	 * Set the number of worker threads used for parallel mapping. Defaults to the number of processors.
+	 * @param parallelMappingThreads
+	 */
+	public static void setParallelMappingThreads(int parallelMappingThreads) {
+		if(parallelMappingThreads < 1)
+			return;
+		
+		RestItMapper.parallelMappingThreads = parallelMappingThreads;
+		
+		//rebuild the pool with the new size
+		ParallelArrayMapper.reset();
+	}
+	
+	/**
+	 * Register a codec for another wire format. Codecs that are added later are preferred in the Accept header
+	 * @param codec
+	 */
+	public static synchronized void addCodec(RestItCodec codec)
+	{
+		if(codec == null)
+			return;
+		
+		codecs.add(0, codec);
+		acceptHeader = buildAcceptHeader();
+	}
+	
+	/**
+	 * Get the codec for a content type
+	 * @param contentType The Content-Type header of a response, parameters are ignored
+	 * @return The matching codec or the default JSON codec
+	 */
+	public static RestItCodec getCodec(String contentType)
+	{
+		if(contentType != null)
 		{
-			classMaps = new HashMap<String, ClassRegistration>();
+			int parametersStart = contentType.indexOf(';');
+			String mediaType = (parametersStart > -1 ? contentType.substring(0, parametersStart) : contentType).trim();
+			
+			for(RestItCodec codec : codecs)
+			{
+				for(String codecType : codec.getContentTypes())
+				{
+					if(codecType.equalsIgnoreCase(mediaType))
+					{
+						return codec;
+					}
+				}
+			}
 		}
 		
-		return classMaps;
+		return getDefaultCodec();
 	}
 	
 	/**
-	 * Register a java class with a json class
+	 * Get the default JSON codec
+	 * @return
+	 */
+	public static RestItCodec getDefaultCodec()
+	{
+		return codecs.get(codecs.size() - 1);
+	}
+	
+	/**
+	 * Get the Accept header that lists the content types of every registered codec
+	 * @return
+	 */
+	public static String getAcceptHeader()
+	{
+		return acceptHeader;
+	}
+	
+	private static String buildAcceptHeader()
+	{
+		StringBuilder sb = new StringBuilder();
+		for(RestItCodec codec : codecs)
+		{
+			for(String contentType : codec.getContentTypes())
+			{
+				if(sb.indexOf(contentType) > -1)
+					continue;
+				
+				if(sb.length() > 0)
+				{
+					sb.append(", ");
+				}
+				sb.append(contentType);
+			}
+		}
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Parse the response from the server with the codec for its content type
+	 * @param stream The server response stream
+	 * @param contentType The Content-Type header of the response
+	 * @param charset The charset the response is encoded in
+	 * @return
+	 * @throws IOException
+	 */
+	public static Object parseResponse(InputStream stream, String contentType, String charset) throws IOException
+	{
+		return getCodec(contentType).decode(stream, charset);
+	}
+	
+	/**
+	 * Get the class registration for a json key
+	 * @param jsonName The name of the json key
+	 * @return The registration or null if no class is registered for the key
+	 */
+	public static ClassRegistration getClassRegistration(String jsonName)
+	{
+		if(jsonName == null)
+			return null;
+		
+		return getClassMaps().get(jsonName);
+	}
+	
+	/**
+	 * Get the json key a class is registered with. Super classes are checked if the class itself is not registered
+	 * @param clazz
+	 * @return The json key or null if the class is not registered
+	 */
+	public static String getJsonName(Class<?> clazz)
+	{
+		for(Class<?> current = clazz; current != null; current = current.getSuperclass())
+		{
+			String jsonName = jsonNames.get(current);
+			if(jsonName != null)
+			{
+				return jsonName;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Register a java class with a json class. A class annotated with RestItModel is mapped by its generated adapter
 	 * @param jsonName The name of the json key
 	 * @param clazz The java class that is associated with the json key
 	 */
@@ -47,6 +260,13 @@ public class RestItMapper {
 		if(jsonName == null || clazz == null)
 			return;
 		
+		TypeAdapterFactory generatedFactory = getGeneratedFactory(clazz);
+		if(generatedFactory != null)
+		{
+			addClass(jsonName, clazz, generatedFactory);
+			return;
+		}
+		
 		addClass(jsonName, clazz, null, null);
 	}
 	
@@ -66,7 +286,175 @@ public class RestItMapper {
 		ClassRegistration classRegistration = new ClassRegistration(clazz, jsonSerializer, jsonDeserializer);
 		
 		//store relationship
-		getClassMaps().put(jsonName, classRegistration);
+		storeClassRegistration(jsonName, classRegistration);
+	}
+	
+	/**
+	 * Register a java class with a json class that is mapped by a streaming adapter instead of reflection
+	 * @param jsonName The name of the json key
+	 * @param clazz The java class that is associated with the json key
+	 * @param typeAdapterFactory Creates the adapter that maps the class
+	 */
+	public static void addClass(String jsonName, Class<?> clazz, TypeAdapterFactory typeAdapterFactory)
+	{
+		if(jsonName == null || clazz == null)
+			return;
+		
+		storeClassRegistration(jsonName, new ClassRegistration(clazz, typeAdapterFactory));
+	}
+	
+	/**
+	 * Register a java class with a json class using an object mapping. The mapping is compiled once, so
+	 *  attributes are resolved here and not while responses are mapped.
+	 * @param objectMapping The mapping between response keys and POJO attributes
+	 * @throws IllegalArgumentException if an attribute of the mapping does not exist on the class
+	 */
+	public static void addMapping(ObjectMapping objectMapping)
+	{
+		if(objectMapping == null || objectMapping.getJsonName() == null || objectMapping.getClazz() == null)
+			return;
+		
+		addClass(objectMapping.getJsonName(), objectMapping.getClazz(), new CompiledObjectMapping(objectMapping));
+	}
+	
+	/**
+	 * Register every class annotated with RestItModel. The adapters are generated at compile time by the RestIt model
+	 *  processor, which lists them in a resource of every library that uses it.
+	 * @return true if generated models were found
+	 */
+	public static boolean registerGeneratedModels()
+	{
+		ClassLoader classLoader = RestItMapper.class.getClassLoader();
+		
+		Set<String> factories = new LinkedHashSet<String>();
+		try
+		{
+			Enumeration<URL> resources = classLoader.getResources(GENERATED_MODELS_RESOURCE);
+			while(resources.hasMoreElements())
+			{
+				readGeneratedFactories(resources.nextElement(), factories);
+			}
+		} catch (IOException e) {
+			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+		}
+		
+		if(factories.isEmpty())
+		{
+			Log.w(LOG_TAG, "No generated models found. Is the RestIt model processor on the annotation processor path?");
+			return false;
+		}
+		
+		for(String factory : factories)
+		{
+			try
+			{
+				Class.forName(factory, true, classLoader).getMethod("register").invoke(null);
+				
+			} catch (ClassNotFoundException e) {
+				//a model that was removed after an incremental build listed it
+				Log.w(LOG_TAG, "Generated model adapter " + factory + " no longer exists");
+			} catch (Exception e) {
+				Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Read the factory class names of a generated models resource, one per line
+	 */
+	private static void readGeneratedFactories(URL resource, Set<String> factories) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), "UTF-8"));
+		try
+		{
+			for(String line = reader.readLine(); line != null; line = reader.readLine())
+			{
+				line = line.trim();
+				if(line.length() > 0 && !line.startsWith("#"))
+				{
+					factories.add(line);
+				}
+			}
+		} finally
+		{
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Get the adapter factory the RestIt model processor generated for a class
+	 * @param clazz
+	 * @return The factory or null if the class has none
+	 */
+	private static TypeAdapterFactory getGeneratedFactory(Class<?> clazz)
+	{
+		//the factory of a nested class is named after the enclosing classes, e.g. Outer_Inner_RestItAdapterFactory
+		String name = clazz.getName();
+		int lastDot = name.lastIndexOf('.');
+		String factoryName = name.substring(0, lastDot + 1) + name.substring(lastDot + 1).replace('$', '_') + GENERATED_FACTORY_SUFFIX;
+		
+		try
+		{
+			return (TypeAdapterFactory) Class.forName(factoryName, true, clazz.getClassLoader()).newInstance();
+			
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (Exception e) {
+			Log.e(LOG_TAG, e.getLocalizedMessage(), e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Store the relationship between a json key and a class registration. Registrations are serialized so that
+	 *  cached mappers are always invalidated after the registration they depend on is visible
+	 * @param jsonName
+	 * @param classRegistration
+	 */
+	private static synchronized void storeClassRegistration(String jsonName, ClassRegistration classRegistration)
+	{
+		ClassRegistration previous = getClassMaps().put(jsonName, classRegistration);
+		if(previous != null)
+		{
+			//the old registration has been replaced, drop its cached mapper
+			previous.invalidate();
+			
+			if(jsonName.equals(jsonNames.get(previous.getClazz())))
+			{
+				jsonNames.remove(previous.getClazz());
+			}
+		}
+		
+		jsonNames.put(classRegistration.getClazz(), jsonName);
+		
+		if(classRegistration.getTypeAdapterFactory() != null || (previous != null && previous.getTypeAdapterFactory() != null))
+		{
+			//every mapper uses the streaming adapters, rebuild them with the new set
+			for(ClassRegistration registration : getClassMaps().values())
+			{
+				registration.invalidate();
+			}
+		}
+	}
+	
+	/**
+	 * Get the streaming adapter factories of every registered class
+	 * @return
+	 */
+	protected static List<TypeAdapterFactory> getTypeAdapterFactories()
+	{
+		List<TypeAdapterFactory> factories = new ArrayList<TypeAdapterFactory>();
+		for(ClassRegistration registration : getClassMaps().values())
+		{
+			if(registration.getTypeAdapterFactory() != null)
+			{
+				factories.add(registration.getTypeAdapterFactory());
+			}
+		}
+		
+		return factories;
 	}
 	
 	/**
@@ -79,24 +467,36 @@ public class RestItMapper {
 		if(responseString == null || responseString.isEmpty())
 			return null;
 		
+		JsonReader reader = new JsonReader(new StringReader(responseString));
+		reader.setLenient(true);
+		
 		try 
 		{	
-			//first create JSON object
-			JSONObject parentObject = new JSONObject(responseString);
-			
-			//first see if there is a matching key to map the POJO to
-			String key = getResponseObjectKey(parentObject);
+			//only read as far as the first key to see if there is a matching POJO
+			String key = readResponseObjectKey(reader);
 			if(key == null)
 			{
 				//no key was found that matches the registered POJO, return original response
 				return responseString;
 			} else
 			{
+				if(isParallelMapping() && reader.peek() == JsonToken.BEGIN_ARRAY)
+				{
+					int start = ParallelArrayMapper.findRootArray(responseString, key);
+					if(start >= 0)
+					{
+						//parse and map a large array on the worker pool
+						StringReader array = new StringReader(responseString);
+						array.skip(start);
+						return ParallelArrayMapper.readArray(array, getClassRegistration(key), getParallelMappingThreshold());
+					}
+				}
+				
 				//key was found and registered, convert response to POJO
-				return toPojo(key, parentObject);
+				return readPojo(key, reader);
 			}
 		
-		} catch (JSONException e) {
+		} catch (IOException e) {
 			Log.w(LOG_TAG, e.getMessage(), e);
 			
 			//there was an error reading the JSON, just return the original response string
@@ -105,131 +505,295 @@ public class RestItMapper {
 	}
 	
 	/**
-	 * Look at the first part of the JSON response and see if the parent object key matches a 
-	 * register RestItkey
-	 * @param parentObject Server response in JSON format
-	 * @return String of parent key in JSON object
+	 * Parse the response from the server directly from the response stream. The root key is read and, if a class is
+	 *  registered for it, its value is mapped to a POJO in a single pass without building a String or a JSONObject
+	 *  of the whole body. Otherwise the raw response string is returned.
+	 * @param stream The server response stream
+	 * @param charset The charset the response is encoded in
+	 * @return
+	 * @throws IOException
 	 */
-	protected static String getResponseObjectKey(JSONObject parentObject) throws JSONException
+	public static Object parseResponse(InputStream stream, String charset) throws IOException
 	{
-		if(parentObject != null && parentObject.length() > 0)
+		if(stream == null)
+			return null;
+		
+		//keep the beginning of the response so it can be returned as is if it can not be mapped
+		RecordingReader reader = new RecordingReader(new InputStreamReader(stream, charset));
+		
+		JsonReader jsonReader = new JsonReader(reader);
+		jsonReader.setLenient(true);
+		
+		String key = null;
+		try
 		{
-			//get the first key to see if it matches a known class
-			String key = (String)parentObject.names().get(0);
-			if(key != null && getClassMaps().containsKey(key))
-			{
-				return key;
-			} else
+			key = readResponseObjectKey(jsonReader);
+			
+		} catch (MalformedJsonException e) {
+			Log.w(LOG_TAG, e.getMessage(), e);
+		} catch (EOFException e) {
+			//empty response
+		}
+		
+		if(key == null)
+		{
+			//no key was found that matches the registered POJO, return original response
+			String responseString = reader.stopRecording() + readFully(reader);
+			
+			return responseString.isEmpty() ? null : responseString;
+		}
+		
+		if(isParallelMapping() && jsonReader.peek() == JsonToken.BEGIN_ARRAY)
+		{
+			//the json reader has only buffered the beginning of the array, the rest is still in the stream
+			String prefix = reader.stopRecording();
+			int start = ParallelArrayMapper.findRootArray(prefix, key);
+			if(start >= 0)
 			{
-				Log.d(LOG_TAG, "No class is registered for response key '"+ key +"'");
+				//parse and map a large array on the worker pool
+				PushbackReader array = new PushbackReader(reader, Math.max(prefix.length() - start, 1));
+				array.unread(prefix.toCharArray(), start, prefix.length() - start);
+				return ParallelArrayMapper.readArray(array, getClassRegistration(key), getParallelMappingThreshold());
 			}
 		}
 		
-		//key not found
+		reader.stopRecording();
+		
+		//key was found and registered, convert the value to POJO
+		return readPojo(key, jsonReader);
+	}
+	
+	/**
+	 * Open an iterator over the POJOs of the response. Elements are mapped one at a time while they are read from
+	 *  the stream, so memory use does not depend on the size of the response.
+	 * @param stream The server response stream
+	 * @param charset The charset the response is encoded in
+	 * @param clazz The class the elements are expected to be registered as
+	 * @param resource Closed when the iterator is closed
+	 * @return The iterator or null if the response does not start with a key registered for the class
+	 * @throws IOException
+	 */
+	public static <T> RestItIterator<T> iterateResponse(InputStream stream, String charset, Class<T> clazz, Closeable resource) throws IOException
+	{
+		if(stream == null || clazz == null)
+			return null;
+		
+		JsonReader reader = new JsonReader(new InputStreamReader(stream, charset));
+		reader.setLenient(true);
+		
+		String key = readResponseObjectKey(reader);
+		ClassRegistration classRegistration = getClassRegistration(key);
+		if(classRegistration == null || !clazz.isAssignableFrom(classRegistration.getClazz()))
+		{
+			Log.d(LOG_TAG, "The response key '"+ key +"' is not registered for " + clazz.getName());
+			return null;
+		}
+		
+		//use the registered class so that a custom deserializer is picked up
+		Class<?> registeredClass = classRegistration.getClazz();
+		TypeAdapter<? extends T> adapter = classRegistration.getGson().getAdapter(registeredClass.asSubclass(clazz));
+		return new RestItIterator<T>(reader, adapter, resource);
+	}
+	
+	/**
+	 * Write a registered object as json under its json key, straight to a stream. The object is never held as a
+	 *  String or byte array. The stream is flushed but not closed
+	 * @param object The object to write
+	 * @param stream The stream to write to, for example the output stream of a connection
+	 * @param charset The charset to encode the json with
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the class of the object is not registered
+	 */
+	public static void writeObject(Object object, OutputStream stream, String charset) throws IOException
+	{
+		String jsonName = object != null ? getJsonName(object.getClass()) : null;
+		ClassRegistration classRegistration = getClassRegistration(jsonName);
+		if(classRegistration == null)
+		{
+			throw new IllegalArgumentException("No json key is registered for " + (object != null ? object.getClass().getName() : null));
+		}
+		
+		JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(stream, charset)));
+		writer.beginObject();
+		writer.name(jsonName);
+		
+		//use the registered class so that a custom serializer is picked up
+		classRegistration.getGson().toJson(object, classRegistration.getClazz(), writer);
+		
+		writer.endObject();
+		writer.flush();
+	}
+	
+	/**
+	 * Read the first key of the JSON response and see if it matches a registered RestIt key. Only the first name
+	 *  token is read, so the key is always the first one in document order. The reader is left positioned at the
+	 *  value of the key
+	 * @param reader The reader at the start of the response
+	 * @return The registered key or null if the response can not be mapped
+	 * @throws IOException
+	 */
+	protected static String readResponseObjectKey(JsonReader reader) throws IOException
+	{
+		if(reader.peek() != JsonToken.BEGIN_OBJECT)
+			return null;
+		
+		reader.beginObject();
+		if(!reader.hasNext())
+			return null;
+		
+		String key = reader.nextName();
+		if(getClassRegistration(key) != null)
+		{
+			return key;
+		}
+		
+		Log.d(LOG_TAG, "No class is registered for response key '"+ key +"'");
 		return null;
 	}
 	
 	/**
-	 * Convert a json string to a registered Pojo Object
-	 * @param jsonString
+	 * Map the value of a registered key to a POJO, or a list of POJOs if the value is an array
+	 * @param key The registered key
+	 * @param reader The reader positioned at the value of the key
 	 * @return
+	 * @throws IOException
 	 */
-	protected static Object toPojo(String key, JSONObject parentObject) throws JSONException
+	protected static Object readPojo(String key, JsonReader reader) throws IOException
 	{
-		if(key == null || parentObject == null)
+		ClassRegistration classRegistration = getClassRegistration(key);
+		if(classRegistration == null)
 			return null;
 		
-			Object convertedObject = null;
-
-			if(parentObject.length() > 0)
-			{
-				//the key that we have found matches a known class
-				ClassRegistration classRegistration = getClassMaps().get(key);
-				Object childObject = parentObject.get(key);
-				if(classRegistration != null && classRegistration.getClass() != null && childObject != null)
-				{	
-					
-					String json = null;
-		
-					if(childObject instanceof JSONArray)
-					{
-						json = childObject.toString();
-						
-						//loop through JSON Array and parse each object
-						List<Object> results = new ArrayList<Object>();
-						JSONArray array = (JSONArray) childObject;
-						for(int i = 0; i < array.length(); i++)
-						{
-							JSONObject jsonObject = (JSONObject)array.get(i);
-							Object value = toPojo(jsonObject.toString(), classRegistration.getClazz(), classRegistration.getJsonDeserializer());
-							results.add(value);
-						}
-						
-						return results;
-					}
-					else if(childObject instanceof JSONObject)
-					{
-						JSONObject jsonObject = (JSONObject)childObject;
-						
-						if(jsonObject.length() == 0)
-						{
-							//no keys have been defined, return null
-							return null;
-						}
-						
-						json = jsonObject.toString();
-					} else
-					{
-						//if we are dealing with a json object use that. If we ended up with a key value pair, use the parent Object
-						json = parentObject.toString();
-					}
-					
-
-					convertedObject = toPojo(json, classRegistration.getClazz(), classRegistration.getJsonDeserializer());
-				}
-					
-			}
-			
-			
-			
-			
-			return convertedObject;
+		Class<?> clazz = classRegistration.getClazz();
+		TypeAdapter<?> adapter = classRegistration.getGson().getAdapter(clazz);
 		
+		switch(reader.peek())
+		{
+			case BEGIN_ARRAY:
+				
+				//bind each element as it is read
+				List<Object> results = new ArrayList<Object>();
+				
+				reader.beginArray();
+				while(reader.hasNext())
+				{
+					results.add(adapter.read(reader));
+				}
+				reader.endArray();
+				
+				return results;
+				
+			case BEGIN_OBJECT:
+				
+				reader.beginObject();
+				if(!reader.hasNext())
+				{
+					//no keys have been defined, return null
+					reader.endObject();
+					return null;
+				}
+				
+				return adapter.read(new ResumedObjectReader(reader, null));
+				
+			case NULL:
+				
+				reader.nextNull();
+				return null;
+				
+			default:
+				
+				//we ended up with a key value pair, map the parent object
+				return adapter.read(new ResumedObjectReader(reader, key));
+		}
 	}
 	
 	/**
-	 * Create a POJO from a json string
-	 * @param json
-	 * @param clazz
-	 * @param jsonDeserializer
+	 * Read everything that is left in a reader
+	 * @param reader
 	 * @return
+	 * @throws IOException
 	 */
-	private static Object toPojo(String json, Class clazz, JsonDeserializer jsonDeserializer)
+	private static String readFully(Reader reader) throws IOException
 	{
-		Gson gson = null;
-		Object convertedObject = null;
+		StringBuilder sb = new StringBuilder();
+		char[] buffer = new char[2048];
+		int charsRead = 0;
 		
-		JsonReader reader = new JsonReader(new StringReader(json));
-		//reader.setLenient(true); //allow malformed JSON
+		while((charsRead = reader.read(buffer)) > -1)
+		{
+			sb.append(buffer, 0, charsRead);
+		}
 		
+		return sb.toString();
+	}
+	
+	/**
+	 * Keeps the characters read through it until recording is stopped, so that a response that can not be mapped
+	 *  can still be returned as is, however far the JSON reader buffered ahead
+	 *
+	 */
+	private static class RecordingReader extends FilterReader {
 		
-		if(jsonDeserializer != null)
+		private StringBuilder recorded = new StringBuilder();
+		
+		RecordingReader(Reader reader)
 		{
-			//perform custom object mapping
-			GsonBuilder builder = new GsonBuilder();
-			builder.registerTypeAdapter(clazz, jsonDeserializer);
-
-			gson = builder.create();
-				
-		} else
+			super(reader);
+		}
+		
+		@Override
+		public int read() throws IOException
 		{
-			//do simple automatic mapping
-			gson = new Gson();
+			int c = super.read();
+			if(c >= 0 && this.recorded != null)
+			{
+				this.recorded.append((char) c);
+			}
+			return c;
 		}
 		
-		//convert to pojo
-		convertedObject =  gson.fromJson(reader, clazz);
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException
+		{
+			int count = super.read(buffer, offset, length);
+			if(count > 0 && this.recorded != null)
+			{
+				this.recorded.append(buffer, offset, count);
+			}
+			return count;
+		}
 		
-		return convertedObject;
+		@Override
+		public long skip(long count) throws IOException
+		{
+			//read through, so that skipped characters are recorded too
+			char[] buffer = new char[(int) Math.min(count, 2048)];
+			long skipped = 0;
+			while(skipped < count)
+			{
+				int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+				if(read < 0)
+					break;
+				skipped += read;
+			}
+			return skipped;
+		}
+		
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+		
+		/**
+		 * Stop recording
+		 * @return The characters read so far
+		 */
+		String stopRecording()
+		{
+			String recorded = this.recorded != null ? this.recorded.toString() : "";
+			this.recorded = null;
+			return recorded;
+		}
 	}
 }
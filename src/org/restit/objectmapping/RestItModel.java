@@ -0,0 +1,30 @@
+package org.restit.objectmapping;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a POJO as the class for a json key. When the RestIt model processor is on the annotation processor path,
+ *  a streaming TypeAdapter is generated for the class at compile time so that no reflection is needed to map it.
+ *  Call RestItMapper.registerGeneratedModels() once at startup to register every annotated class, or register the
+ *  class with RestItMapper.addClass(), which picks up its generated adapter.
+ * 
+ * <pre>
+ * &#64;RestItModel("user")
+ * public class User { ... }
+ * </pre>
+ *
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface RestItModel {
+
+	/**
+	 * The name of the json key
+	 */
+	String value();
+}
@@ -0,0 +1,190 @@
+package org.restit.objectmapping;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Reads an object whose beginning has already been consumed from another reader, so that a TypeAdapter can bind it
+ *  straight from the stream. The object start, and optionally its first name, are replayed before the rest is read
+ *  from the underlying reader.
+ *
+ */
+class ResumedObjectReader extends JsonReader {
+
+	private final JsonReader reader;
+	private boolean objectStarted;
+	private String firstName;
+
+	/**
+	 * Constructor
+	 * @param reader The reader positioned inside the object, after beginObject() and after the first name if given
+	 * @param firstName The name that has been read from the object already or null
+	 */
+	ResumedObjectReader(JsonReader reader, String firstName)
+	{
+		super(new StringReader(""));
+		this.reader = reader;
+		this.firstName = firstName;
+	}
+
+	@Override
+	public JsonToken peek() throws IOException
+	{
+		if(!this.objectStarted)
+			return JsonToken.BEGIN_OBJECT;
+
+		if(this.firstName != null)
+			return JsonToken.NAME;
+
+		return this.reader.peek();
+	}
+
+	@Override
+	public void beginObject() throws IOException
+	{
+		if(!this.objectStarted)
+		{
+			this.objectStarted = true;
+			return;
+		}
+
+		this.reader.beginObject();
+	}
+
+	@Override
+	public boolean hasNext() throws IOException
+	{
+		if(!this.objectStarted || this.firstName != null)
+			return true;
+
+		return this.reader.hasNext();
+	}
+
+	@Override
+	public String nextName() throws IOException
+	{
+		if(this.objectStarted && this.firstName != null)
+		{
+			String name = this.firstName;
+			this.firstName = null;
+			return name;
+		}
+
+		if(!this.objectStarted)
+			throw new IllegalStateException("Expected a name but was " + peek());
+
+		return this.reader.nextName();
+	}
+
+	@Override
+	public void skipValue() throws IOException
+	{
+		if(!this.objectStarted)
+		{
+			//skip the whole object
+			this.objectStarted = true;
+			this.firstName = null;
+			while(this.reader.hasNext())
+			{
+				this.reader.skipValue();
+			}
+			this.reader.endObject();
+			return;
+		}
+
+		if(this.firstName != null)
+		{
+			//a name is skipped together with its value
+			this.firstName = null;
+		}
+
+		this.reader.skipValue();
+	}
+
+	@Override
+	public void endObject() throws IOException
+	{
+		checkValue("END_OBJECT");
+		this.reader.endObject();
+	}
+
+	@Override
+	public void beginArray() throws IOException
+	{
+		checkValue("BEGIN_ARRAY");
+		this.reader.beginArray();
+	}
+
+	@Override
+	public void endArray() throws IOException
+	{
+		checkValue("END_ARRAY");
+		this.reader.endArray();
+	}
+
+	@Override
+	public String nextString() throws IOException
+	{
+		checkValue("a string");
+		return this.reader.nextString();
+	}
+
+	@Override
+	public boolean nextBoolean() throws IOException
+	{
+		checkValue("a boolean");
+		return this.reader.nextBoolean();
+	}
+
+	@Override
+	public void nextNull() throws IOException
+	{
+		checkValue("null");
+		this.reader.nextNull();
+	}
+
+	@Override
+	public double nextDouble() throws IOException
+	{
+		checkValue("a double");
+		return this.reader.nextDouble();
+	}
+
+	@Override
+	public long nextLong() throws IOException
+	{
+		checkValue("a long");
+		return this.reader.nextLong();
+	}
+
+	@Override
+	public int nextInt() throws IOException
+	{
+		checkValue("an int");
+		return this.reader.nextInt();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.reader.close();
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.reader.toString();
+	}
+
+	/**
+	 * Fail like JsonReader while a replayed token is next
+	 */
+	private void checkValue(String expected) throws IOException
+	{
+		if(!this.objectStarted || this.firstName != null)
+			throw new IllegalStateException("Expected " + expected + " but was " + peek());
+	}
+}
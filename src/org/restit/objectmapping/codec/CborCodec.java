@@ -0,0 +1,525 @@
+package org.restit.objectmapping.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.restit.network.BufferPool;
+import org.restit.network.BufferPool.PooledInputStream;
+import org.restit.network.BufferPool.PooledOutputStream;
+import org.restit.network.ContentType;
+import org.restit.objectmapping.ClassRegistration;
+import org.restit.objectmapping.RestItMapper;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Reads and writes CBOR (RFC 7049), a binary encoding of the JSON data model. Responses are mapped with the same
+ *  rules as JSON: the first key of the root map selects the registered class. Elements of a root array are decoded
+ *  and mapped one at a time. Responses without a registered root key are returned as a Gson JsonElement.
+ *
+ */
+public class CborCodec implements RestItCodec {
+
+	private static final int MAJOR_UNSIGNED = 0;
+	private static final int MAJOR_NEGATIVE = 1;
+	private static final int MAJOR_BYTES = 2;
+	private static final int MAJOR_TEXT = 3;
+	private static final int MAJOR_ARRAY = 4;
+	private static final int MAJOR_MAP = 5;
+	private static final int MAJOR_TAG = 6;
+	private static final int MAJOR_SIMPLE = 7;
+	
+	private static final int INDEFINITE = 31;
+	private static final int BREAK = 0xff;
+	
+	private static final int FALSE = 0xf4;
+	private static final int TRUE = 0xf5;
+	private static final int NULL = 0xf6;
+	private static final int DOUBLE = 0xfb;
+	
+	private static final String UTF8 = "UTF-8";
+	
+	@Override
+	public String[] getContentTypes()
+	{
+		return new String[] { ContentType.CBOR };
+	}
+
+	@Override
+	public boolean isTextual()
+	{
+		return false;
+	}
+
+	@Override
+	public Object decode(InputStream stream, String charset) throws IOException
+	{
+		PooledInputStream buffered = BufferPool.getShared().newBufferedInputStream(stream);
+		try
+		{
+			return decode(new DataInputStream(buffered));
+		} finally
+		{
+			//the caller finishes the stream itself
+			buffered.release();
+		}
+	}
+	
+	/**
+	 * Read a response, mapping its value to a POJO when its key is registered
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private Object decode(DataInputStream in) throws IOException
+	{
+		int initialByte = in.read();
+		if(initialByte == -1)
+			return null;
+		
+		if(initialByte >>> 5 != MAJOR_MAP)
+		{
+			//not a mappable response, return it as is
+			return readItem(in, initialByte);
+		}
+		
+		long size = readLength(in, initialByte);
+		if(size == 0)
+			return new JsonObject();
+		
+		int keyByte = in.read();
+		if(keyByte == BREAK)
+			return new JsonObject();
+		
+		String key = readKey(in, keyByte);
+		ClassRegistration classRegistration = RestItMapper.getClassRegistration(key);
+		if(classRegistration == null)
+		{
+			//no class is registered for the key, return the whole map
+			JsonObject parentObject = new JsonObject();
+			parentObject.add(key, readItem(in, in.read()));
+			readEntries(in, parentObject, size, 1);
+			return parentObject;
+		}
+		
+		Gson gson = classRegistration.getGson();
+		Class<?> clazz = classRegistration.getClazz();
+		
+		int valueByte = in.read();
+		int major = valueByte >>> 5;
+		
+		if(major == MAJOR_ARRAY)
+		{
+			//map each element as it is read
+			long length = readLength(in, valueByte);
+			List<Object> results = new ArrayList<Object>();
+			for(long i = 0; length < 0 || i < length; i++)
+			{
+				int elementByte = in.read();
+				if(length < 0 && elementByte == BREAK)
+					break;
+				
+				results.add(gson.fromJson(readItem(in, elementByte), clazz));
+			}
+			
+			return results;
+		}
+		
+		JsonElement value = readItem(in, valueByte);
+		if(value.isJsonNull())
+		{
+			return null;
+		} else if(value.isJsonObject())
+		{
+			if(value.getAsJsonObject().entrySet().isEmpty())
+			{
+				//no keys have been defined, return null
+				return null;
+			}
+			
+			return gson.fromJson(value, clazz);
+		}
+		
+		//we ended up with a key value pair, map the parent object
+		JsonObject parentObject = new JsonObject();
+		parentObject.add(key, value);
+		readEntries(in, parentObject, size, 1);
+		
+		return gson.fromJson(parentObject, clazz);
+	}
+
+	@Override
+	public void encode(Object object, OutputStream stream, String charset) throws IOException
+	{
+		String jsonName = object != null ? RestItMapper.getJsonName(object.getClass()) : null;
+		ClassRegistration classRegistration = RestItMapper.getClassRegistration(jsonName);
+		if(classRegistration == null)
+		{
+			throw new IllegalArgumentException("No json key is registered for " + (object != null ? object.getClass().getName() : null));
+		}
+		
+		JsonObject parentObject = new JsonObject();
+		parentObject.add(jsonName, classRegistration.getGson().toJsonTree(object, classRegistration.getClazz()));
+		
+		PooledOutputStream buffered = BufferPool.getShared().newBufferedOutputStream(stream);
+		try
+		{
+			writeItem(new DataOutputStream(buffered), parentObject);
+		} finally
+		{
+			//the caller closes the stream itself
+			buffered.release();
+		}
+	}
+	
+	/**
+	 * Read the remaining entries of a map
+	 * @param in
+	 * @param object The object to add the entries to
+	 * @param size The size of the map, negative for an indefinite map
+	 * @param read The number of entries that have been read already
+	 * @throws IOException
+	 */
+	private void readEntries(DataInputStream in, JsonObject object, long size, long read) throws IOException
+	{
+		for(long i = read; size < 0 || i < size; i++)
+		{
+			int keyByte = in.read();
+			if(size < 0 && keyByte == BREAK)
+				break;
+			
+			String key = readKey(in, keyByte);
+			object.add(key, readItem(in, in.read()));
+		}
+	}
+	
+	/**
+	 * Read a map key. JSON only has string keys, so other keys are converted to strings
+	 */
+	private String readKey(DataInputStream in, int initialByte) throws IOException
+	{
+		JsonElement key = readItem(in, initialByte);
+		return key.isJsonPrimitive() ? key.getAsString() : key.toString();
+	}
+	
+	/**
+	 * Read a complete data item
+	 * @param in
+	 * @param initialByte The first byte of the item, already read from the stream
+	 * @return
+	 * @throws IOException
+	 */
+	private JsonElement readItem(DataInputStream in, int initialByte) throws IOException
+	{
+		if(initialByte == -1)
+			throw new EOFException("Unexpected end of CBOR data");
+		
+		int major = initialByte >>> 5;
+		int additional = initialByte & 0x1f;
+		
+		switch(major)
+		{
+			case MAJOR_UNSIGNED:
+			{
+				long value = readArgument(in, additional);
+				return new JsonPrimitive(value >= 0 ? (Number) value : unsigned(value));
+			}
+			case MAJOR_NEGATIVE:
+			{
+				long value = readArgument(in, additional);
+				return new JsonPrimitive(value >= 0 ? (Number) (-1 - value) : unsigned(value).negate().subtract(BigInteger.ONE));
+			}
+			case MAJOR_BYTES:
+			{
+				//JSON has no byte strings, Gson maps byte arrays from arrays of numbers
+				JsonArray array = new JsonArray();
+				for(byte b : readBytes(in, initialByte, MAJOR_BYTES))
+				{
+					array.add(new JsonPrimitive(b));
+				}
+				return array;
+			}
+			case MAJOR_TEXT:
+				return new JsonPrimitive(new String(readBytes(in, initialByte, MAJOR_TEXT), UTF8));
+				
+			case MAJOR_ARRAY:
+			{
+				long length = readLength(in, initialByte);
+				JsonArray array = new JsonArray();
+				for(long i = 0; length < 0 || i < length; i++)
+				{
+					int elementByte = in.read();
+					if(length < 0 && elementByte == BREAK)
+						break;
+					
+					array.add(readItem(in, elementByte));
+				}
+				return array;
+			}
+			case MAJOR_MAP:
+			{
+				JsonObject object = new JsonObject();
+				readEntries(in, object, readLength(in, initialByte), 0);
+				return object;
+			}
+			case MAJOR_TAG:
+				
+				//tags only add meaning to the item that follows
+				readArgument(in, additional);
+				return readItem(in, in.read());
+				
+			default:
+				return readSimple(in, additional);
+		}
+	}
+	
+	/**
+	 * Read a simple value or a floating point number
+	 */
+	private JsonElement readSimple(DataInputStream in, int additional) throws IOException
+	{
+		switch(additional)
+		{
+			case 20:
+				return new JsonPrimitive(Boolean.FALSE);
+			case 21:
+				return new JsonPrimitive(Boolean.TRUE);
+			case 22:
+			case 23:
+				return JsonNull.INSTANCE;
+			case 24:
+				in.readUnsignedByte();
+				return JsonNull.INSTANCE;
+			case 25:
+				return new JsonPrimitive(halfToFloat(in.readUnsignedShort()));
+			case 26:
+				return new JsonPrimitive(in.readFloat());
+			case 27:
+				return new JsonPrimitive(in.readDouble());
+			default:
+				if(additional < 20)
+					return JsonNull.INSTANCE;
+				
+				throw new JsonParseException("Unexpected CBOR simple value " + additional);
+		}
+	}
+	
+	/**
+	 * Read the content of a byte or text string, joining the chunks of an indefinite string
+	 */
+	private byte[] readBytes(DataInputStream in, int initialByte, int major) throws IOException
+	{
+		long length = readLength(in, initialByte);
+		if(length >= 0)
+		{
+			if(length > Integer.MAX_VALUE)
+				throw new JsonParseException("CBOR string is too long");
+			
+			byte[] bytes = new byte[(int) length];
+			in.readFully(bytes);
+			return bytes;
+		}
+		
+		ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+		int chunkByte;
+		while((chunkByte = in.read()) != BREAK)
+		{
+			if(chunkByte == -1)
+				throw new EOFException("Unexpected end of CBOR data");
+			
+			if(chunkByte >>> 5 != major)
+				throw new JsonParseException("Unexpected chunk in indefinite CBOR string");
+			
+			chunks.write(readBytes(in, chunkByte, major));
+		}
+		
+		return chunks.toByteArray();
+	}
+	
+	/**
+	 * Read the length of a string, array or map
+	 * @return The length, or -1 for indefinite length items
+	 */
+	private long readLength(DataInputStream in, int initialByte) throws IOException
+	{
+		int additional = initialByte & 0x1f;
+		if(additional == INDEFINITE)
+			return -1;
+		
+		long length = readArgument(in, additional);
+		if(length < 0)
+			throw new JsonParseException("CBOR item is too long");
+		
+		return length;
+	}
+	
+	/**
+	 * Read the argument that follows the initial byte
+	 */
+	private long readArgument(DataInputStream in, int additional) throws IOException
+	{
+		if(additional < 24)
+			return additional;
+		
+		switch(additional)
+		{
+			case 24:
+				return in.readUnsignedByte();
+			case 25:
+				return in.readUnsignedShort();
+			case 26:
+				return in.readInt() & 0xffffffffL;
+			case 27:
+				return in.readLong();
+			default:
+				throw new JsonParseException("Unexpected CBOR argument " + additional);
+		}
+	}
+	
+	private static BigInteger unsigned(long value)
+	{
+		return BigInteger.valueOf(value & Long.MAX_VALUE).setBit(63);
+	}
+	
+	private static float halfToFloat(int half)
+	{
+		int exponent = (half >> 10) & 0x1f;
+		int mantissa = half & 0x3ff;
+		
+		float value;
+		if(exponent == 0)
+			value = (float) (mantissa * Math.pow(2, -24));
+		else if(exponent != 31)
+			value = (float) ((mantissa + 1024) * Math.pow(2, exponent - 25));
+		else
+			value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+		
+		return (half & 0x8000) != 0 ? -value : value;
+	}
+	
+	/**
+	 * Write a data item
+	 */
+	private void writeItem(DataOutputStream out, JsonElement element) throws IOException
+	{
+		if(element == null || element.isJsonNull())
+		{
+			out.write(NULL);
+			
+		} else if(element.isJsonObject())
+		{
+			JsonObject object = element.getAsJsonObject();
+			writeHeader(out, MAJOR_MAP, object.entrySet().size());
+			
+			Iterator<Map.Entry<String, JsonElement>> it = object.entrySet().iterator();
+			while(it.hasNext())
+			{
+				Map.Entry<String, JsonElement> entry = it.next();
+				writeText(out, entry.getKey());
+				writeItem(out, entry.getValue());
+			}
+			
+		} else if(element.isJsonArray())
+		{
+			JsonArray array = element.getAsJsonArray();
+			writeHeader(out, MAJOR_ARRAY, array.size());
+			for(JsonElement item : array)
+			{
+				writeItem(out, item);
+			}
+			
+		} else
+		{
+			JsonPrimitive primitive = element.getAsJsonPrimitive();
+			if(primitive.isBoolean())
+			{
+				out.write(primitive.getAsBoolean() ? TRUE : FALSE);
+				
+			} else if(primitive.isNumber())
+			{
+				writeNumber(out, primitive.getAsString());
+				
+			} else
+			{
+				writeText(out, primitive.getAsString());
+			}
+		}
+	}
+	
+	/**
+	 * Write a number as the smallest integer that holds it, or as a double
+	 */
+	private void writeNumber(DataOutputStream out, String number) throws IOException
+	{
+		if(number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1)
+		{
+			try
+			{
+				long value = Long.parseLong(number);
+				if(value >= 0)
+					writeHeader(out, MAJOR_UNSIGNED, value);
+				else
+					writeHeader(out, MAJOR_NEGATIVE, -1 - value);
+				
+				return;
+				
+			} catch (NumberFormatException e) {
+				//too large for a long, write a double
+			}
+		}
+		
+		out.write(DOUBLE);
+		out.writeDouble(Double.parseDouble(number));
+	}
+	
+	private void writeText(DataOutputStream out, String text) throws IOException
+	{
+		byte[] bytes = text.getBytes(UTF8);
+		writeHeader(out, MAJOR_TEXT, bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Write an initial byte with the smallest argument encoding
+	 */
+	private void writeHeader(DataOutputStream out, int major, long argument) throws IOException
+	{
+		int type = major << 5;
+		if(argument < 24)
+		{
+			out.write(type | (int) argument);
+		} else if(argument <= 0xff)
+		{
+			out.write(type | 24);
+			out.write((int) argument);
+		} else if(argument <= 0xffff)
+		{
+			out.write(type | 25);
+			out.writeShort((int) argument);
+		} else if(argument <= 0xffffffffL)
+		{
+			out.write(type | 26);
+			out.writeInt((int) argument);
+		} else
+		{
+			out.write(type | 27);
+			out.writeLong(argument);
+		}
+	}
+}
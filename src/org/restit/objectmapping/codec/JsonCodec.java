@@ -0,0 +1,41 @@
+package org.restit.objectmapping.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.restit.network.ContentType;
+import org.restit.objectmapping.RestItMapper;
+
+/**
+ * The default codec. Maps JSON with Gson and returns text responses, like HTML or XML, as raw strings.
+ *
+ */
+public class JsonCodec implements RestItCodec {
+
+	private static final String[] CONTENT_TYPES = { ContentType.JSON, ContentType.TEXT_HTML, ContentType.TEXT_PLAIN, ContentType.XML };
+	
+	@Override
+	public String[] getContentTypes()
+	{
+		return CONTENT_TYPES.clone();
+	}
+
+	@Override
+	public boolean isTextual()
+	{
+		return true;
+	}
+
+	@Override
+	public Object decode(InputStream stream, String charset) throws IOException
+	{
+		return RestItMapper.parseResponse(stream, charset);
+	}
+
+	@Override
+	public void encode(Object object, OutputStream stream, String charset) throws IOException
+	{
+		RestItMapper.writeObject(object, stream, charset);
+	}
+}
@@ -0,0 +1,44 @@
+package org.restit.objectmapping.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads responses and writes request bodies in one wire format. Codecs are registered with RestItMapper, which
+ *  picks one per response by its Content-Type. The Accept header of every request lists the content types of the
+ *  registered codecs.
+ *
+ */
+public interface RestItCodec {
+
+	/**
+	 * Get the content types this codec reads and writes. The first one is used for request bodies
+	 * @return
+	 */
+	String[] getContentTypes();
+	
+	/**
+	 * Is this a text format. Only text formats get a charset in the Content-Type of request bodies
+	 * @return
+	 */
+	boolean isTextual();
+	
+	/**
+	 * Map a response to a registered POJO, or a list of them
+	 * @param stream The response stream
+	 * @param charset The charset of the response, for text formats
+	 * @return The mapped object, or the response in its raw form if no class is registered for its root key
+	 * @throws IOException
+	 */
+	Object decode(InputStream stream, String charset) throws IOException;
+	
+	/**
+	 * Write a registered object under its json key
+	 * @param object The object to write
+	 * @param stream The stream to write to. It is flushed but not closed
+	 * @param charset The charset to use, for text formats
+	 * @throws IOException
+	 */
+	void encode(Object object, OutputStream stream, String charset) throws IOException;
+}
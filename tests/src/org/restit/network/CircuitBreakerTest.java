@@ -0,0 +1,196 @@
+package org.restit.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * State changes of the per-host circuits of a CircuitBreaker
+ *
+ */
+public class CircuitBreakerTest extends TestCase {
+
+	private static final String HOST = "http://example.com:80";
+	private static final String OTHER_HOST = "http://example.org:80";
+
+	private CircuitBreaker circuitBreaker;
+	private List<String> events;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		this.circuitBreaker = new CircuitBreaker();
+		this.circuitBreaker.setConsecutiveFailureThreshold(3);
+		this.circuitBreaker.setWindowSize(10);
+		this.circuitBreaker.setMinimumRequests(4);
+		this.circuitBreaker.setFailureRateThreshold(0.5);
+		this.circuitBreaker.setOpenDuration(50);
+
+		this.events = new ArrayList<String>();
+		this.circuitBreaker.addListener(new CircuitBreakerListener() {
+			@Override
+			public void onStateChanged(String host, CircuitBreaker.State previous, CircuitBreaker.State state) {
+				events.add(previous + "->" + state);
+			}
+		});
+	}
+
+	private void request(String host, boolean success) throws CircuitOpenException
+	{
+		this.circuitBreaker.acquire(host).record(success);
+	}
+
+	private void open(String host) throws CircuitOpenException
+	{
+		for(int i = 0; i < this.circuitBreaker.getConsecutiveFailureThreshold(); i++)
+		{
+			request(host, false);
+		}
+	}
+
+	public void testConsecutiveFailuresOpenTheCircuit() throws Exception
+	{
+		request(HOST, false);
+		request(HOST, false);
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState(HOST));
+
+		request(HOST, false);
+		assertEquals(CircuitBreaker.State.OPEN, this.circuitBreaker.getState(HOST));
+		assertEquals(1, this.circuitBreaker.getOpenedCount());
+		assertEquals("[CLOSED->OPEN]", this.events.toString());
+	}
+
+	public void testSuccessResetsTheConsecutiveFailures() throws Exception
+	{
+		this.circuitBreaker.setMinimumRequests(100);
+		for(int i = 0; i < 5; i++)
+		{
+			request(HOST, false);
+			request(HOST, false);
+			request(HOST, true);
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState(HOST));
+	}
+
+	public void testFailureRateOpensTheCircuit() throws Exception
+	{
+		this.circuitBreaker.setConsecutiveFailureThreshold(100);
+		request(HOST, true);
+		request(HOST, false);
+		request(HOST, true);
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState(HOST));
+
+		//2 of 4 failed
+		request(HOST, false);
+		assertEquals(CircuitBreaker.State.OPEN, this.circuitBreaker.getState(HOST));
+	}
+
+	public void testFailureRateNeedsTheMinimumRequests() throws Exception
+	{
+		this.circuitBreaker.setConsecutiveFailureThreshold(100);
+		this.circuitBreaker.setMinimumRequests(10);
+		request(HOST, false);
+		request(HOST, false);
+		request(HOST, true);
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState(HOST));
+	}
+
+	public void testOpenCircuitFailsFast() throws Exception
+	{
+		open(HOST);
+		try
+		{
+			this.circuitBreaker.acquire(HOST);
+			fail("The open circuit let a request through");
+		} catch (CircuitOpenException e)
+		{
+			assertEquals(HOST, e.getHost());
+			assertEquals(CircuitBreaker.State.OPEN, e.getState());
+			assertTrue(e.getRetryAfter() > 0 && e.getRetryAfter() <= 50);
+		}
+		assertEquals(1, this.circuitBreaker.getRejectedCount());
+	}
+
+	public void testHostsHaveTheirOwnCircuits() throws Exception
+	{
+		open(HOST);
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState(OTHER_HOST));
+		this.circuitBreaker.acquire(OTHER_HOST).record(true);
+	}
+
+	public void testSuccessfulProbeClosesTheCircuit() throws Exception
+	{
+		open(HOST);
+		Thread.sleep(60);
+
+		CircuitBreaker.Permit probe = this.circuitBreaker.acquire(HOST);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, this.circuitBreaker.getState(HOST));
+		probe.record(true);
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState(HOST));
+		assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", this.events.toString());
+	}
+
+	public void testFailedProbeOpensTheCircuitAgain() throws Exception
+	{
+		open(HOST);
+		Thread.sleep(60);
+
+		this.circuitBreaker.acquire(HOST).record(false);
+		assertEquals(CircuitBreaker.State.OPEN, this.circuitBreaker.getState(HOST));
+		assertEquals(2, this.circuitBreaker.getOpenedCount());
+		assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN]", this.events.toString());
+	}
+
+	public void testHalfOpenLimitsTheProbes() throws Exception
+	{
+		this.circuitBreaker.setHalfOpenProbes(2);
+		open(HOST);
+		Thread.sleep(60);
+
+		CircuitBreaker.Permit first = this.circuitBreaker.acquire(HOST);
+		CircuitBreaker.Permit second = this.circuitBreaker.acquire(HOST);
+		try
+		{
+			this.circuitBreaker.acquire(HOST);
+			fail("The half open circuit let a third probe through");
+		} catch (CircuitOpenException e)
+		{
+			assertEquals(CircuitBreaker.State.HALF_OPEN, e.getState());
+			assertEquals(0, e.getRetryAfter());
+		}
+
+		//every probe has to succeed
+		first.record(true);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, this.circuitBreaker.getState(HOST));
+		second.record(true);
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState(HOST));
+	}
+
+	public void testPermitRecordsOneOutcome() throws Exception
+	{
+		open(HOST);
+		Thread.sleep(60);
+
+		//a response and a later failure of its body count once
+		CircuitBreaker.Permit probe = this.circuitBreaker.acquire(HOST);
+		probe.record(true);
+		probe.record(false);
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState(HOST));
+		assertEquals(1, this.circuitBreaker.getOpenedCount());
+	}
+
+	public void testResetClosesEveryCircuit() throws Exception
+	{
+		open(HOST);
+		this.circuitBreaker.reset();
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState(HOST));
+		assertEquals("[CLOSED->OPEN, OPEN->CLOSED]", this.events.toString());
+
+		//the failures before the reset are forgotten
+		request(HOST, false);
+		request(HOST, false);
+		assertEquals(CircuitBreaker.State.CLOSED, this.circuitBreaker.getState(HOST));
+	}
+}
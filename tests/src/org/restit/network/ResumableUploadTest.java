@@ -0,0 +1,411 @@
+package org.restit.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Chunked uploads against a local stub server that confirms ranges, drops connections and finishes the upload
+ *
+ */
+public class ResumableUploadTest extends TestCase {
+
+	private static final byte[] CONTENT = "0123456789".getBytes();
+
+	private File directory;
+	private File file;
+	private File journalDirectory;
+	private StubServer server;
+	private RestItClient client;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		this.directory = new File(System.getProperty("java.io.tmpdir"), "ResumableUploadTest-" + System.nanoTime());
+		this.journalDirectory = new File(this.directory, "journal");
+		this.directory.mkdirs();
+
+		this.file = new File(this.directory, "upload.bin");
+		OutputStream out = new FileOutputStream(this.file);
+		out.write(CONTENT);
+		out.close();
+
+		this.server = new StubServer();
+		this.client = new RestItClient();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		this.server.close();
+		if(this.server.failure != null)
+			throw this.server.failure;
+		
+		delete(this.directory);
+		super.tearDown();
+	}
+
+	private ResumableUpload createUpload()
+	{
+		ResumableUpload upload = new ResumableUpload(this.client, this.server.getUrl(), this.file, this.journalDirectory);
+		upload.setChunkSize(4);
+		upload.setRetryDelay(1);
+		upload.setMaxRetries(2);
+		return upload;
+	}
+
+	public void testResumesAfterADroppedConnection() throws Exception
+	{
+		this.server.script = new Handler() {
+			@Override
+			public Response handle(int index, String contentRange, byte[] body) {
+				switch(index)
+				{
+				case 0:
+					assertEquals("bytes 0-3/10", contentRange);
+					return Response.partial(3);
+				case 1:
+					//stores half of the chunk before the connection drops
+					assertEquals("bytes 4-7/10", contentRange);
+					server.stored.setLength(6);
+					return null;
+				case 2:
+					assertEquals("bytes */10", contentRange);
+					assertEquals(0, body.length);
+					return Response.partial(5);
+				case 3:
+					assertEquals("bytes 6-9/10", contentRange);
+					return new Response(201, null, "done");
+				default:
+					throw new AssertionError("Unexpected request " + index);
+				}
+			}
+		};
+
+		final List<String> journalOffsets = Collections.synchronizedList(new ArrayList<String>());
+		final List<Long> progress = Collections.synchronizedList(new ArrayList<Long>());
+		ProgressListener listener = new ProgressListener() {
+			@Override
+			public void transferred(long num, long totalSize) {
+				assertEquals(CONTENT.length, totalSize);
+				progress.add(num);
+				journalOffsets.add(readJournalOffset());
+			}
+		};
+
+		ResumableUpload upload = createUpload();
+		Object response = upload.upload(listener);
+
+		assertEquals("done", response);
+		assertEquals(CONTENT.length, upload.getConfirmedOffset());
+		assertEquals(4, this.server.requestCount);
+		assertEquals(new String(CONTENT), this.server.stored.toString());
+
+		//the confirmed offsets went to the journal, which is gone once the upload finished
+		assertTrue(journalOffsets.toString(), journalOffsets.contains("4"));
+		assertTrue(journalOffsets.toString(), journalOffsets.contains("6"));
+		assertNull(readJournalOffset());
+
+		//the progress counts the bytes of earlier attempts and ends at the file length
+		assertTrue(progress.toString(), progress.contains(4L));
+		assertTrue(progress.toString(), progress.contains(6L));
+		assertEquals(Long.valueOf(CONTENT.length), progress.get(progress.size() - 1));
+		for(int i = 1; i < progress.size(); i++)
+		{
+			//a dropped chunk may fall back to the confirmed offset, but never below it
+			assertTrue(progress.toString(), progress.get(i) >= 4);
+		}
+	}
+
+	public void testContinuesFromTheJournal() throws Exception
+	{
+		this.server.script = new Handler() {
+			@Override
+			public Response handle(int index, String contentRange, byte[] body) {
+				switch(index)
+				{
+				case 0:
+					return Response.partial(3);
+				case 1:
+					//gone before the server answered
+					return null;
+				case 2:
+					//the next upload asks where to continue
+					assertEquals("bytes */10", contentRange);
+					return Response.partial(3);
+				case 3:
+					assertEquals("bytes 4-7/10", contentRange);
+					return Response.partial(7);
+				case 4:
+					assertEquals("bytes 8-9/10", contentRange);
+					return new Response(200, null, "done");
+				default:
+					throw new AssertionError("Unexpected request " + index);
+				}
+			}
+		};
+
+		ResumableUpload upload = createUpload();
+		upload.setMaxRetries(0);
+		try
+		{
+			upload.upload(null);
+			fail("The upload did not fail");
+		} catch (ServerErrorException e)
+		{
+			assertEquals("4", readJournalOffset());
+		}
+
+		//a new upload of the same file, as after a restart
+		assertEquals("done", createUpload().upload(null));
+		assertEquals(5, this.server.requestCount);
+		assertNull(readJournalOffset());
+	}
+
+	public void testGivesUpWhenChunksMakeNoProgress() throws Exception
+	{
+		this.server.script = new Handler() {
+			@Override
+			public Response handle(int index, String contentRange, byte[] body) {
+				//the server never stores more than the first chunk
+				server.stored.setLength(Math.min(server.stored.length(), 4));
+				return Response.partial(3);
+			}
+		};
+
+		ResumableUpload upload = createUpload();
+		try
+		{
+			upload.upload(null);
+			fail("The upload did not give up");
+		} catch (ServerErrorException e)
+		{
+			assertEquals(4, upload.getConfirmedOffset());
+		}
+
+		//the first chunk and the retries of the second
+		assertEquals(1 + upload.getMaxRetries() + 1, this.server.requestCount);
+		assertEquals("4", readJournalOffset());
+	}
+
+	private String readJournalOffset()
+	{
+		File[] journals = this.journalDirectory.listFiles();
+		if(journals == null)
+			return null;
+
+		for(File journal : journals)
+		{
+			if(!journal.getName().endsWith(".upload"))
+				continue;
+
+			Properties properties = new Properties();
+			try
+			{
+				InputStream in = new FileInputStream(journal);
+				try
+				{
+					properties.load(in);
+				} finally
+				{
+					in.close();
+				}
+			} catch (IOException e)
+			{
+				throw new AssertionError(e);
+			}
+			return properties.getProperty("offset");
+		}
+		return null;
+	}
+
+	private static void delete(File file)
+	{
+		File[] files = file.listFiles();
+		if(files != null)
+		{
+			for(File child : files)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Answers a request of the upload, or returns null to drop the connection
+	 */
+	private interface Handler {
+		Response handle(int index, String contentRange, byte[] body);
+	}
+
+	private static class Response {
+
+		final int status;
+		final String range;
+		final String body;
+
+		Response(int status, String range, String body)
+		{
+			this.status = status;
+			this.range = range;
+			this.body = body;
+		}
+
+		/**
+		 * A 308 confirming the bytes up to and including the last one
+		 */
+		static Response partial(long last)
+		{
+			return new Response(308, "bytes=0-" + last, null);
+		}
+	}
+
+	/**
+	 * An HTTP server on a local port that stores the bytes of the chunks and answers with a script, one connection
+	 *  per request
+	 *
+	 */
+	private static class StubServer implements Runnable {
+
+		final ServerSocket serverSocket;
+		final StringBuilder stored = new StringBuilder();
+		volatile Handler script;
+		volatile int requestCount;
+		volatile Error failure;
+
+		StubServer() throws IOException
+		{
+			this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+			Thread thread = new Thread(this, "StubServer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		String getUrl()
+		{
+			return "http://127.0.0.1:" + this.serverSocket.getLocalPort() + "/upload";
+		}
+
+		void close() throws IOException
+		{
+			this.serverSocket.close();
+		}
+
+		@Override
+		public void run()
+		{
+			while(!this.serverSocket.isClosed())
+			{
+				try
+				{
+					Socket socket = this.serverSocket.accept();
+					try
+					{
+						serve(socket);
+					} finally
+					{
+						socket.close();
+					}
+				} catch (IOException e)
+				{
+					//closed
+				} catch (Error e)
+				{
+					//a failed assertion, reported by tearDown()
+					if(this.failure == null)
+					{
+						this.failure = e;
+					}
+				}
+			}
+		}
+
+		private void serve(Socket socket) throws IOException
+		{
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			String contentRange = null;
+			int contentLength = 0;
+			for(String line = readLine(in); line.length() > 0; line = readLine(in))
+			{
+				int colon = line.indexOf(':');
+				if(colon < 0)
+					continue;
+
+				String name = line.substring(0, colon).trim();
+				String value = line.substring(colon + 1).trim();
+				if(name.equalsIgnoreCase("Content-Range"))
+				{
+					contentRange = value;
+				} else if(name.equalsIgnoreCase("Content-Length"))
+				{
+					contentLength = Integer.parseInt(value);
+				}
+			}
+
+			byte[] body = new byte[contentLength];
+			in.readFully(body);
+
+			synchronized(this.stored)
+			{
+				if(contentRange != null && !contentRange.startsWith("bytes *"))
+				{
+					int start = Integer.parseInt(contentRange.substring("bytes ".length(), contentRange.indexOf('-')));
+					this.stored.setLength(Math.min(this.stored.length(), start));
+					if(this.stored.length() == start)
+					{
+						this.stored.append(new String(body));
+					}
+				}
+			}
+
+			Response response = this.script.handle(this.requestCount++, contentRange, body);
+			if(response == null)
+				return;
+
+			byte[] responseBody = response.body != null ? response.body.getBytes() : new byte[0];
+			StringBuilder head = new StringBuilder();
+			head.append("HTTP/1.1 ").append(response.status).append(response.status == 308 ? " Resume Incomplete" : " OK").append("\r\n");
+			if(response.range != null)
+			{
+				head.append("Range: ").append(response.range).append("\r\n");
+			}
+			head.append("Content-Type: text/plain\r\n");
+			head.append("Content-Length: ").append(responseBody.length).append("\r\n");
+			head.append("Connection: close\r\n\r\n");
+
+			OutputStream out = socket.getOutputStream();
+			out.write(head.toString().getBytes());
+			out.write(responseBody);
+			out.flush();
+		}
+
+		private static String readLine(InputStream in) throws IOException
+		{
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			for(int b = in.read(); b != -1 && b != '\n'; b = in.read())
+			{
+				if(b != '\r')
+				{
+					line.write(b);
+				}
+			}
+			return line.toString();
+		}
+	}
+}
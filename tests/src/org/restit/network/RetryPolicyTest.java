@@ -0,0 +1,140 @@
+package org.restit.network;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+import junit.framework.TestCase;
+
+import org.apache.http.client.ClientProtocolException;
+import org.restit.model.ServerError;
+
+/**
+ * Backoff, Retry-After and the failures and methods a RetryPolicy retries
+ *
+ */
+public class RetryPolicyTest extends TestCase {
+
+	private RetryPolicy retryPolicy;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		this.retryPolicy = new RetryPolicy();
+		this.retryPolicy.setMaxAttempts(5);
+		this.retryPolicy.setInitialDelay(100);
+		this.retryPolicy.setMultiplier(2);
+		this.retryPolicy.setMaxDelay(1000);
+		this.retryPolicy.setJitter(0);
+	}
+
+	private static ServerErrorException status(int status, long retryAfter)
+	{
+		ServerError error = new ServerError("status " + status);
+		error.setServerCode(status);
+		ServerErrorException exception = new ServerErrorException(error);
+		exception.setRetryAfter(retryAfter);
+		return exception;
+	}
+
+	public void testBackoffGrowsUpToTheMaximum()
+	{
+		assertEquals(100, this.retryPolicy.getBackoff(1));
+		assertEquals(200, this.retryPolicy.getBackoff(2));
+		assertEquals(400, this.retryPolicy.getBackoff(3));
+		assertEquals(800, this.retryPolicy.getBackoff(4));
+		assertEquals(1000, this.retryPolicy.getBackoff(5));
+		assertEquals(1000, this.retryPolicy.getBackoff(30));
+	}
+
+	public void testJitterStaysWithinTheBackoff()
+	{
+		this.retryPolicy.setJitter(0.5);
+		for(int i = 0; i < 100; i++)
+		{
+			long backoff = this.retryPolicy.getBackoff(3);
+			assertTrue(String.valueOf(backoff), backoff > 200 && backoff <= 400);
+		}
+	}
+
+	public void testJitterIsClamped()
+	{
+		this.retryPolicy.setJitter(3);
+		assertEquals(1.0, this.retryPolicy.getJitter());
+		this.retryPolicy.setJitter(-1);
+		assertEquals(0.0, this.retryPolicy.getJitter());
+	}
+
+	public void testConnectionFailuresAreRetried()
+	{
+		assertEquals(100, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, new SocketTimeoutException()));
+		assertEquals(200, this.retryPolicy.getRetryDelay(RequestMethod.GET, 2, new SocketException()));
+		assertEquals(400, this.retryPolicy.getRetryDelay(RequestMethod.GET, 3, new EOFException()));
+	}
+
+	public void testOtherFailuresAreNotRetried()
+	{
+		assertEquals(-1, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, new FileNotFoundException()));
+		assertEquals(-1, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, new ClientProtocolException()));
+		assertEquals(-1, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, status(400, -1)));
+		assertEquals(-1, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, status(500, -1)));
+	}
+
+	public void testReportedConnectionFailuresAreRetried()
+	{
+		ServerErrorException reported = new ServerErrorException(new SocketTimeoutException());
+		assertEquals(100, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, reported));
+
+		reported = new ServerErrorException(new IOException("broken"));
+		assertEquals(-1, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, reported));
+	}
+
+	public void testOverloadedStatusesAreRetried()
+	{
+		assertEquals(100, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, status(429, -1)));
+		assertEquals(100, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, status(502, -1)));
+		assertEquals(200, this.retryPolicy.getRetryDelay(RequestMethod.GET, 2, status(503, -1)));
+		assertEquals(400, this.retryPolicy.getRetryDelay(RequestMethod.GET, 3, status(504, -1)));
+	}
+
+	public void testRetryAfterReplacesTheBackoff()
+	{
+		assertEquals(5000, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, status(503, 5000)));
+		assertEquals(0, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, status(429, 0)));
+	}
+
+	public void testTooLongRetryAfterIsNotWaitedFor()
+	{
+		this.retryPolicy.setMaxRetryAfter(10 * 1000);
+		assertEquals(10 * 1000, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, status(503, 10 * 1000)));
+		assertEquals(-1, this.retryPolicy.getRetryDelay(RequestMethod.GET, 1, status(503, 10 * 1000 + 1)));
+	}
+
+	public void testGivesUpAfterTheLastAttempt()
+	{
+		assertTrue(this.retryPolicy.getRetryDelay(RequestMethod.GET, 4, new SocketTimeoutException()) >= 0);
+		assertEquals(-1, this.retryPolicy.getRetryDelay(RequestMethod.GET, 5, new SocketTimeoutException()));
+		assertEquals(-1, this.retryPolicy.getRetryDelay(RequestMethod.GET, 5, status(503, 0)));
+	}
+
+	public void testNoRetries()
+	{
+		RetryPolicy noRetries = RetryPolicy.noRetries();
+		assertEquals(1, noRetries.getMaxAttempts());
+		assertEquals(-1, noRetries.getRetryDelay(RequestMethod.GET, 1, new SocketTimeoutException()));
+	}
+
+	public void testOnlyIdempotentMethodsAreRetried()
+	{
+		assertTrue(this.retryPolicy.getRetryDelay(RequestMethod.PUT, 1, new SocketException()) >= 0);
+		assertTrue(this.retryPolicy.getRetryDelay(RequestMethod.DELETE, 1, new SocketException()) >= 0);
+		assertEquals(-1, this.retryPolicy.getRetryDelay(RequestMethod.POST, 1, new SocketException()));
+		assertEquals(-1, this.retryPolicy.getRetryDelay(RequestMethod.POST, 1, status(503, -1)));
+
+		this.retryPolicy.setRetryNonIdempotent(true);
+		assertEquals(100, this.retryPolicy.getRetryDelay(RequestMethod.POST, 1, new SocketException()));
+	}
+}
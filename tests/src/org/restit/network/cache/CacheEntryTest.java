@@ -0,0 +1,173 @@
+package org.restit.network.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Freshness (RFC 7234 section 4.2) and Vary matching of stored responses
+ *
+ */
+public class CacheEntryTest extends TestCase {
+
+	private long now;
+	private Properties metadata;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		this.now = System.currentTimeMillis();
+		this.metadata = new Properties();
+		this.metadata.setProperty(CacheEntry.URL, "http://example.com/users");
+		this.metadata.setProperty(CacheEntry.RESPONSE_TIME, String.valueOf(this.now));
+		this.metadata.setProperty(CacheEntry.DATE, String.valueOf(this.now));
+	}
+
+	private CacheEntry entry()
+	{
+		return new CacheEntry("key", this.metadata, null);
+	}
+
+	private static Map<String, String> headers(String... namesAndValues)
+	{
+		Map<String, String> headers = new HashMap<String, String>();
+		for(int i = 0; i < namesAndValues.length; i += 2)
+		{
+			headers.put(namesAndValues[i], namesAndValues[i + 1]);
+		}
+		return headers;
+	}
+
+	public void testMaxAgeIsFreshUntilItPasses()
+	{
+		this.metadata.setProperty(CacheEntry.CACHE_CONTROL, "public, max-age=60");
+		assertEquals(60 * 1000, entry().getFreshnessLifetime());
+		assertTrue(entry().isFresh(null));
+
+		this.metadata.setProperty(CacheEntry.RESPONSE_TIME, String.valueOf(this.now - 61 * 1000));
+		this.metadata.setProperty(CacheEntry.DATE, String.valueOf(this.now - 61 * 1000));
+		assertFalse(entry().isFresh(null));
+	}
+
+	public void testMaxAgeWinsOverExpires()
+	{
+		this.metadata.setProperty(CacheEntry.CACHE_CONTROL, "max-age=10");
+		this.metadata.setProperty(CacheEntry.EXPIRES, String.valueOf(this.now + 3600 * 1000));
+		assertEquals(10 * 1000, entry().getFreshnessLifetime());
+	}
+
+	public void testExpiresIsCountedFromTheDate()
+	{
+		long date = this.now - 5000;
+		this.metadata.setProperty(CacheEntry.DATE, String.valueOf(date));
+		this.metadata.setProperty(CacheEntry.EXPIRES, String.valueOf(date + 30 * 1000));
+		assertEquals(30 * 1000, entry().getFreshnessLifetime());
+
+		//expired before it was served
+		this.metadata.setProperty(CacheEntry.EXPIRES, String.valueOf(date - 1000));
+		assertEquals(0, entry().getFreshnessLifetime());
+		assertFalse(entry().isFresh(null));
+	}
+
+	public void testHeuristicFreshnessIsATenthOfTheLastModifiedAge()
+	{
+		this.metadata.setProperty(CacheEntry.LAST_MODIFIED_TIME, String.valueOf(this.now - 100 * 1000));
+		assertEquals(10 * 1000, entry().getFreshnessLifetime());
+	}
+
+	public void testWithoutFreshnessInformationTheResponseIsStale()
+	{
+		assertEquals(0, entry().getFreshnessLifetime());
+		assertFalse(entry().isFresh(null));
+	}
+
+	public void testNoCacheResponseIsNeverFresh()
+	{
+		this.metadata.setProperty(CacheEntry.CACHE_CONTROL, "no-cache, max-age=600");
+		assertEquals(0, entry().getFreshnessLifetime());
+		assertFalse(entry().isFresh(null));
+	}
+
+	public void testBrokenMaxAgeIsStale()
+	{
+		this.metadata.setProperty(CacheEntry.CACHE_CONTROL, "max-age=soon");
+		assertEquals(0, entry().getFreshnessLifetime());
+	}
+
+	public void testAgeHeaderCountsTowardsTheCurrentAge()
+	{
+		this.metadata.setProperty(CacheEntry.CACHE_CONTROL, "max-age=60");
+		this.metadata.setProperty(CacheEntry.AGE, "50");
+		assertTrue(entry().getCurrentAge(this.now) >= 50 * 1000);
+		assertTrue(entry().isFresh(null));
+
+		this.metadata.setProperty(CacheEntry.AGE, "61");
+		assertFalse(entry().isFresh(null));
+	}
+
+	public void testApparentAgeUsesTheLaterOfDateAndAge()
+	{
+		//the server clock is 20 seconds behind the response time
+		this.metadata.setProperty(CacheEntry.DATE, String.valueOf(this.now - 20 * 1000));
+		this.metadata.setProperty(CacheEntry.AGE, "5");
+		assertEquals(20 * 1000, entry().getCurrentAge(this.now));
+		assertEquals(30 * 1000, entry().getCurrentAge(this.now + 10 * 1000));
+	}
+
+	public void testRequestCanAskForRevalidation()
+	{
+		this.metadata.setProperty(CacheEntry.CACHE_CONTROL, "max-age=60");
+		assertTrue(entry().isFresh(headers("Accept", "application/json")));
+		assertFalse(entry().isFresh(headers("Cache-Control", "no-cache")));
+		assertFalse(entry().isFresh(headers("Pragma", "no-cache")));
+	}
+
+	public void testRequestMaxAgeLimitsTheFreshness()
+	{
+		this.metadata.setProperty(CacheEntry.CACHE_CONTROL, "max-age=60");
+		this.metadata.setProperty(CacheEntry.AGE, "30");
+		assertTrue(entry().isFresh(headers("Cache-Control", "max-age=45")));
+		assertFalse(entry().isFresh(headers("Cache-Control", "max-age=20")));
+		assertFalse(entry().isFresh(headers("Cache-Control", "max-age=0")));
+	}
+
+	public void testWithoutVaryEveryRequestMatches()
+	{
+		assertTrue(entry().matchesVary(null));
+		assertTrue(entry().matchesVary(headers("Accept", "text/plain")));
+	}
+
+	public void testVaryMatchesTheStoredRequestHeaders()
+	{
+		this.metadata.setProperty(CacheEntry.VARY_PREFIX + "Accept", "application/json");
+		assertTrue(entry().matchesVary(headers("Accept", "application/json")));
+		assertFalse(entry().matchesVary(headers("Accept", "application/cbor")));
+		assertFalse(entry().matchesVary(null));
+	}
+
+	public void testVaryOnAHeaderTheRequestDidNotSend()
+	{
+		this.metadata.setProperty(CacheEntry.VARY_PREFIX + "Authorization", "");
+		assertTrue(entry().matchesVary(headers("Accept", "application/json")));
+		assertTrue(entry().matchesVary(null));
+		assertFalse(entry().matchesVary(headers("Authorization", "Bearer abc")));
+	}
+
+	public void testVaryHeaderNamesAreCaseInsensitive()
+	{
+		this.metadata.setProperty(CacheEntry.VARY_PREFIX + "accept-encoding", "gzip, deflate");
+		assertTrue(entry().matchesVary(headers("Accept-Encoding", "gzip, deflate")));
+		assertFalse(entry().matchesVary(headers("ACCEPT-ENCODING", "identity")));
+	}
+
+	public void testVaryOnSeveralHeaders()
+	{
+		this.metadata.setProperty(CacheEntry.VARY_PREFIX + "Accept", "application/json");
+		this.metadata.setProperty(CacheEntry.VARY_PREFIX + "Accept-Language", "en");
+		assertTrue(entry().matchesVary(headers("Accept", "application/json", "Accept-Language", "en")));
+		assertFalse(entry().matchesVary(headers("Accept", "application/json", "Accept-Language", "fr")));
+	}
+}
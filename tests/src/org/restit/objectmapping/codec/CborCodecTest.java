@@ -0,0 +1,232 @@
+package org.restit.objectmapping.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.restit.objectmapping.RestItMapper;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Decoding of every CBOR (RFC 7049) item kind, the argument sizes of the encoder and round trips of POJOs
+ *
+ */
+public class CborCodecTest extends TestCase {
+
+	private CborCodec codec;
+
+	public static class Value {
+		long v;
+
+		public Value()
+		{
+		}
+
+		Value(long v)
+		{
+			this.v = v;
+		}
+	}
+
+	public static class Sample {
+		int count;
+		long big;
+		long smallest;
+		double ratio;
+		float half;
+		String text;
+		boolean flag;
+		List<String> tags;
+		Value child;
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		this.codec = new CborCodec();
+		RestItMapper.addClass("cborValue", Value.class);
+		RestItMapper.addClass("cborSample", Sample.class);
+	}
+
+	private static byte[] bytes(int... values)
+	{
+		byte[] bytes = new byte[values.length];
+		for(int i = 0; i < values.length; i++)
+		{
+			bytes[i] = (byte) values[i];
+		}
+		return bytes;
+	}
+
+	private Object decode(byte[] bytes) throws IOException
+	{
+		return this.codec.decode(new ByteArrayInputStream(bytes), null);
+	}
+
+	private JsonElement item(int... values) throws IOException
+	{
+		return (JsonElement) decode(bytes(values));
+	}
+
+	private byte[] encode(Object object) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		this.codec.encode(object, out, null);
+		return out.toByteArray();
+	}
+
+	public void testIntegersAtEveryArgumentSize() throws Exception
+	{
+		assertEquals(23, item(0x17).getAsLong());
+		assertEquals(255, item(0x18, 0xff).getAsLong());
+		assertEquals(256, item(0x19, 0x01, 0x00).getAsLong());
+		assertEquals(65536, item(0x1a, 0x00, 0x01, 0x00, 0x00).getAsLong());
+		assertEquals(4294967295L, item(0x1a, 0xff, 0xff, 0xff, 0xff).getAsLong());
+		assertEquals(4294967296L, item(0x1b, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00).getAsLong());
+	}
+
+	public void testEncoderUsesTheSmallestArgument() throws Exception
+	{
+		//a map with the key "cborValue", a map with the key "v" and the number
+		int header = 1 + 10 + 1 + 2;
+		assertEquals(header + 1, encode(new Value(23)).length);
+		assertEquals(header + 2, encode(new Value(24)).length);
+		assertEquals(header + 3, encode(new Value(256)).length);
+		assertEquals(header + 5, encode(new Value(65536)).length);
+		assertEquals(header + 9, encode(new Value(4294967296L)).length);
+		assertEquals(header + 3, encode(new Value(-257)).length);
+	}
+
+	public void testNegativeAndUnsigned64BitIntegers() throws Exception
+	{
+		assertEquals(-1, item(0x20).getAsLong());
+		assertEquals(-100, item(0x38, 0x63).getAsLong());
+		assertEquals(-1000, item(0x39, 0x03, 0xe7).getAsLong());
+		assertEquals(Long.MIN_VALUE, item(0x3b, 0x7f, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff).getAsLong());
+
+		//beyond the range of a long
+		assertEquals(new BigInteger("18446744073709551615"), item(0x1b, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff).getAsBigInteger());
+		assertEquals(new BigInteger("-18446744073709551616"), item(0x3b, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff).getAsBigInteger());
+	}
+
+	public void testHalfSingleAndDoubleFloats() throws Exception
+	{
+		assertEquals(0.0, item(0xf9, 0x00, 0x00).getAsDouble());
+		assertEquals(1.0, item(0xf9, 0x3c, 0x00).getAsDouble());
+		assertEquals(-4.0, item(0xf9, 0xc4, 0x00).getAsDouble());
+		assertEquals(65504.0, item(0xf9, 0x7b, 0xff).getAsDouble());
+		assertEquals(5.960464477539063e-8, item(0xf9, 0x00, 0x01).getAsDouble(), 1e-20);
+		assertEquals(Double.POSITIVE_INFINITY, item(0xf9, 0x7c, 0x00).getAsDouble());
+		assertTrue(Double.isNaN(item(0xf9, 0x7e, 0x00).getAsDouble()));
+
+		assertEquals(100000.0, item(0xfa, 0x47, 0xc3, 0x50, 0x00).getAsDouble());
+		assertEquals(1.1, item(0xfb, 0x3f, 0xf1, 0x99, 0x99, 0x99, 0x99, 0x99, 0x9a).getAsDouble());
+	}
+
+	public void testIndefiniteLengthStrings() throws Exception
+	{
+		//"strea" and "ming"
+		assertEquals("streaming", item(0x7f, 0x65, 's', 't', 'r', 'e', 'a', 0x64, 'm', 'i', 'n', 'g', 0xff).getAsString());
+
+		JsonArray bytes = item(0x5f, 0x42, 0x01, 0x02, 0x41, 0x03, 0xff).getAsJsonArray();
+		assertEquals("[1,2,3]", bytes.toString());
+	}
+
+	public void testIndefiniteLengthArraysAndMaps() throws Exception
+	{
+		assertEquals("[1,[2,3],[4,5]]", item(0x9f, 0x01, 0x82, 0x02, 0x03, 0x9f, 0x04, 0x05, 0xff, 0xff).toString());
+		assertEquals("[]", item(0x9f, 0xff).toString());
+
+		JsonObject map = item(0xbf, 0x61, 'a', 0x01, 0x61, 'b', 0x9f, 0x02, 0x03, 0xff, 0xff).getAsJsonObject();
+		assertEquals(1, map.get("a").getAsInt());
+		assertEquals("[2,3]", map.get("b").toString());
+	}
+
+	public void testTagsAreSkipped() throws Exception
+	{
+		//an epoch date and a URI
+		assertEquals(1363896240, item(0xc1, 0x1a, 0x51, 0x4b, 0x67, 0xb0).getAsLong());
+		assertEquals("http://a.b", item(0xd8, 0x20, 0x6a, 'h', 't', 't', 'p', ':', '/', '/', 'a', '.', 'b').getAsString());
+
+		//a bignum tag on a byte string still yields its bytes
+		assertEquals("[1]", item(0xc2, 0x41, 0x01).toString());
+	}
+
+	public void testRootArrayIsMappedElementByElement() throws Exception
+	{
+		byte[] response = bytes(0xa1, 0x69, 'c', 'b', 'o', 'r', 'V', 'a', 'l', 'u', 'e',
+				0x9f, 0xa1, 0x61, 'v', 0x01, 0xa1, 0x61, 'v', 0x19, 0x01, 0x00, 0xff);
+
+		List<?> values = (List<?>) decode(response);
+		assertEquals(2, values.size());
+		assertEquals(1, ((Value) values.get(0)).v);
+		assertEquals(256, ((Value) values.get(1)).v);
+	}
+
+	public void testRoundTrip() throws Exception
+	{
+		Sample sample = new Sample();
+		sample.count = -70000;
+		sample.big = Long.MAX_VALUE;
+		sample.smallest = Long.MIN_VALUE;
+		sample.ratio = 0.1;
+		sample.half = 1.5f;
+		sample.text = "gr\u00fc\u00dfe \u2603";
+		sample.flag = true;
+		sample.tags = Arrays.asList("a", "", "c");
+		sample.child = new Value(42);
+
+		Sample decoded = (Sample) decode(encode(sample));
+		assertEquals(sample.count, decoded.count);
+		assertEquals(sample.big, decoded.big);
+		assertEquals(sample.smallest, decoded.smallest);
+		assertEquals(sample.ratio, decoded.ratio);
+		assertEquals(sample.half, decoded.half);
+		assertEquals(sample.text, decoded.text);
+		assertTrue(decoded.flag);
+		assertEquals(sample.tags, decoded.tags);
+		assertEquals(42, decoded.child.v);
+	}
+
+	public void testTruncatedStreamThrowsEOFException() throws Exception
+	{
+		byte[] encoded = encode(new Value(65536));
+		byte[][] truncated = {
+				bytes(0x19, 0x01),
+				bytes(0x63, 'a', 'b'),
+				bytes(0x82, 0x01),
+				bytes(0x9f, 0x01),
+				bytes(0x7f, 0x61, 'a'),
+				bytes(0xbf, 0x61, 'a'),
+				bytes(0xfb, 0x3f, 0xf1),
+				Arrays.copyOf(encoded, encoded.length - 1)
+		};
+
+		for(int i = 0; i < truncated.length; i++)
+		{
+			try
+			{
+				decode(truncated[i]);
+				fail("Truncated item " + i + " was decoded");
+			} catch (EOFException e)
+			{
+				//expected
+			}
+		}
+	}
+
+	public void testEmptyStreamIsNull() throws Exception
+	{
+		assertNull(decode(new byte[0]));
+	}
+}